@@ -25,6 +25,21 @@ public abstract class AbstractCouchDatabase {
    */
   @Nonnull
   public static final String PATH_SEGMENT_VIEW = "_view";
+  /**
+   * The path segment used for bulk updates
+   */
+  @Nonnull
+  public static final String PATH_SEGMENT_BULK_DOCS = "_bulk_docs";
+  /**
+   * The path segment used to access all docs
+   */
+  @Nonnull
+  public static final String PATH_SEGMENT_ALL_DOCS = "_all_docs";
+  /**
+   * The path segment used for the changes feed
+   */
+  @Nonnull
+  public static final String PATH_SEGMENT_CHANGES = "_changes";
   /**
    * Param for revision
    */
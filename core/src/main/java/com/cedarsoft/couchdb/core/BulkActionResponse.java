@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The response for one single document of a bulk action.
+ * Contains either an {@link ActionResponse} (if the action has been successful) or an {@link ActionFailedException}.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class BulkActionResponse {
+  @Nonnull
+  private final DocId id;
+  @Nullable
+  private final ActionResponse response;
+  @Nullable
+  private final ActionFailedException failure;
+
+  /**
+   * Creates a successful response
+   *
+   * @param response the response
+   */
+  public BulkActionResponse( @Nonnull ActionResponse response ) {
+    this( response.getId(), response, null );
+  }
+
+  /**
+   * Creates a failed response
+   *
+   * @param id      the doc id
+   * @param failure the failure
+   */
+  public BulkActionResponse( @Nonnull DocId id, @Nonnull ActionFailedException failure ) {
+    this( id, null, failure );
+  }
+
+  private BulkActionResponse( @Nonnull DocId id, @Nullable ActionResponse response, @Nullable ActionFailedException failure ) {
+    this.id = id;
+    this.response = response;
+    this.failure = failure;
+  }
+
+  /**
+   * Returns the doc id
+   *
+   * @return the doc id
+   */
+  @Nonnull
+  public DocId getId() {
+    return id;
+  }
+
+  /**
+   * Whether the action has been successful for this document
+   *
+   * @return true if the action has been successful, false otherwise
+   */
+  public boolean isSuccessful() {
+    return response != null;
+  }
+
+  /**
+   * Returns the response
+   *
+   * @return the response
+   *
+   * @throws ActionFailedException if the action has failed for this document
+   */
+  @Nonnull
+  public ActionResponse getResponse() throws ActionFailedException {
+    if ( response == null ) {
+      assert failure != null;
+      throw failure;
+    }
+    return response;
+  }
+
+  /**
+   * Returns the failure
+   *
+   * @return the failure or null if the action has been successful
+   */
+  @Nullable
+  public ActionFailedException getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkActionResponse{" +
+      "id=" + id +
+      ", response=" + response +
+      ", failure=" + failure +
+      '}';
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The result for one single key of a bulk fetch.
+ * Missing or deleted documents are reported per key.
+ *
+ * @param <T> the type of the object contained within the document
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class BulkDocResponse<T> {
+  /**
+   * The error for missing documents
+   */
+  @Nonnull
+  public static final String ERROR_NOT_FOUND = "not_found";
+  /**
+   * The reason for missing documents
+   */
+  @Nonnull
+  public static final String REASON_MISSING = "missing";
+  /**
+   * The reason for deleted documents
+   */
+  @Nonnull
+  public static final String REASON_DELETED = "deleted";
+
+  @Nonnull
+  private final DocId id;
+  @Nullable
+  private final CouchDoc<T> doc;
+  @Nullable
+  private final Revision rev;
+  private final boolean deleted;
+
+  /**
+   * Creates a response for a found document
+   *
+   * @param doc the document
+   */
+  public BulkDocResponse( @Nonnull CouchDoc<T> doc ) {
+    this( doc.getId(), doc, doc.getRev(), false );
+  }
+
+  /**
+   * Creates a new response
+   *
+   * @param id      the id (the key)
+   * @param doc     the doc (if there is one)
+   * @param rev     the revision (if there is one - deleted docs still have a revision)
+   * @param deleted whether the document has been deleted
+   */
+  public BulkDocResponse( @Nonnull DocId id, @Nullable CouchDoc<T> doc, @Nullable Revision rev, boolean deleted ) {
+    this.id = id;
+    this.doc = doc;
+    this.rev = rev;
+    this.deleted = deleted;
+  }
+
+  /**
+   * Returns the id that has been requested
+   *
+   * @return the id
+   */
+  @Nonnull
+  public DocId getId() {
+    return id;
+  }
+
+  /**
+   * Whether the document has been found
+   *
+   * @return true if the document has been found, false if it is missing or has been deleted
+   */
+  public boolean isFound() {
+    return doc != null;
+  }
+
+  /**
+   * Whether the document has been deleted
+   *
+   * @return true if the document has been deleted
+   */
+  public boolean isDeleted() {
+    return deleted;
+  }
+
+  /**
+   * Returns the revision.
+   * Deleted documents return the revision of the deletion
+   *
+   * @return the revision or null if the document has never existed
+   */
+  @Nullable
+  public Revision getRev() {
+    return rev;
+  }
+
+  /**
+   * Returns the document
+   *
+   * @return the document
+   *
+   * @throws ActionFailedException if the document is missing or has been deleted (the same exception as thrown for a single get)
+   */
+  @Nonnull
+  public CouchDoc<T> getDoc() throws ActionFailedException {
+    if ( doc == null ) {
+      //noinspection MagicNumber
+      throw new ActionFailedException( 404, ERROR_NOT_FOUND, deleted ? REASON_DELETED : REASON_MISSING, null );
+    }
+    return doc;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkDocResponse{" +
+      "id=" + id +
+      ", rev=" + rev +
+      ", deleted=" + deleted +
+      '}';
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One entry of the changes feed of a database
+ *
+ * @param <T> the type of the (optional) included document
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class Change<T> {
+  @Nonnull
+  private final String seq;
+  @Nonnull
+  private final DocId id;
+  @Nonnull
+  private final List<? extends Revision> revs;
+  private final boolean deleted;
+  @Nullable
+  private final CouchDoc<T> doc;
+
+  /**
+   * Creates a new change
+   *
+   * @param seq     the sequence (opaque - may be a number or a string depending on the server version)
+   * @param id      the id of the changed document
+   * @param revs    the leaf revisions
+   * @param deleted whether the document has been deleted
+   * @param doc     the document (only available if include_docs has been set and the doc has not been deleted)
+   */
+  public Change( @Nonnull String seq, @Nonnull DocId id, @Nonnull List<? extends Revision> revs, boolean deleted, @Nullable CouchDoc<T> doc ) {
+    this.seq = seq;
+    this.id = id;
+    this.revs = Collections.unmodifiableList( revs );
+    this.deleted = deleted;
+    this.doc = doc;
+  }
+
+  @Nonnull
+  public String getSeq() {
+    return seq;
+  }
+
+  @Nonnull
+  public DocId getId() {
+    return id;
+  }
+
+  @Nonnull
+  public List<? extends Revision> getRevs() {
+    return revs;
+  }
+
+  public boolean isDeleted() {
+    return deleted;
+  }
+
+  @Nullable
+  public CouchDoc<T> getDoc() {
+    return doc;
+  }
+
+  @Override
+  public String toString() {
+    return "Change{" +
+      "seq='" + seq + '\'' +
+      ", id=" + id +
+      ", revs=" + revs +
+      ", deleted=" + deleted +
+      '}';
+  }
+}
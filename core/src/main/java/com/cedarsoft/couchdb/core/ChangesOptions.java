@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Options for the changes feed
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ChangesOptions extends Options {
+  public static final String FEED = "feed";
+  public static final String SINCE = "since";
+  public static final String FILTER = "filter";
+  public static final String HEARTBEAT = "heartbeat";
+  public static final String TIMEOUT = "timeout";
+  public static final String STYLE = "style";
+
+  /**
+   * The feed types
+   */
+  public enum Feed {
+    NORMAL( "normal" ),
+    LONGPOLL( "longpoll" ),
+    CONTINUOUS( "continuous" );
+
+    @Nonnull
+    private final String param;
+
+    Feed( @Nonnull String param ) {
+      this.param = param;
+    }
+
+    @Nonnull
+    public String getParam() {
+      return param;
+    }
+  }
+
+  public ChangesOptions() {
+  }
+
+  public ChangesOptions( @Nullable Options options ) {
+    super( options );
+  }
+
+  @Nonnull
+  @Override
+  protected ChangesOptions put( @Nonnull String key, @Nonnull String value ) {
+    super.put( key, value );
+    return this;
+  }
+
+  @Nonnull
+  public ChangesOptions feed( @Nonnull Feed feed ) {
+    return put( FEED, feed.getParam() );
+  }
+
+  @Nonnull
+  public Feed getFeed() {
+    String feed = get( FEED );
+    for ( Feed candidate : Feed.values() ) {
+      if ( candidate.getParam().equals( feed ) ) {
+        return candidate;
+      }
+    }
+    return Feed.NORMAL;
+  }
+
+  /**
+   * Only changes after the given sequence are returned
+   *
+   * @param seq the sequence (as returned by the server)
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions since( @Nonnull String seq ) {
+    return put( SINCE, seq );
+  }
+
+  /**
+   * Returns only changes from the current sequence on
+   *
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions sinceNow() {
+    return put( SINCE, "now" );
+  }
+
+  /**
+   * Sets the filter function ("designdoc/filtername")
+   *
+   * @param filter the filter
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions filter( @Nonnull String filter ) {
+    return put( FILTER, filter );
+  }
+
+  /**
+   * Adds an additional query parameter that is passed to the filter function
+   *
+   * @param key   the key
+   * @param value the value
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions filterParam( @Nonnull String key, @Nonnull String value ) {
+    return put( key, value );
+  }
+
+  /**
+   * The server sends an empty line after the given period of inactivity (longpoll and continuous only)
+   *
+   * @param millis the heartbeat in milliseconds
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions heartbeat( long millis ) {
+    return put( HEARTBEAT, String.valueOf( millis ) );
+  }
+
+  /**
+   * Max period to wait for a change before the response is sent (longpoll and continuous only).
+   * Is ignored by the server if a heartbeat has been set.
+   *
+   * @param millis the timeout in milliseconds
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions timeout( long millis ) {
+    return put( TIMEOUT, String.valueOf( millis ) );
+  }
+
+  /**
+   * Returns all leaf revisions (including conflicts) instead of the winning revision only
+   *
+   * @return this
+   */
+  @Nonnull
+  public ChangesOptions allDocs() {
+    return put( STYLE, "all_docs" );
+  }
+
+  @Nonnull
+  @Override
+  public ChangesOptions includeDocs( boolean includeDocs ) {
+    return put( INCLUDE_DOCS, String.valueOf( includeDocs ) );
+  }
+
+  @Nonnull
+  @Override
+  public ChangesOptions limit( int limit ) {
+    return put( LIMIT, String.valueOf( limit ) );
+  }
+
+  @Nonnull
+  @Override
+  public ChangesOptions descending( boolean descending ) {
+    return put( DESCENDING, String.valueOf( descending ) );
+  }
+}
@@ -36,8 +36,11 @@ import com.google.common.io.ByteStreams;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -190,14 +193,34 @@ public class CouchDoc<T> extends RawCouchDoc {
      */
     @Nonnull
     public abstract byte[] getData();
+
+    /**
+     * Opens a stream that returns the data.
+     * Serializers should prefer this method over {@link #getData()} since it does not require a copy of the data.
+     *
+     * @return a new stream containing the data (must be closed by the caller)
+     *
+     * @throws IOException
+     */
+    @Nonnull
+    public InputStream openStream() throws IOException {
+      return new ByteArrayInputStream( getData() );
+    }
   }
 
   public static class StubbedAttachment extends Attachment {
     private final long length;
+    @Nullable
+    private final String digest;
 
     public StubbedAttachment( @Nonnull AttachmentId id, @Nonnull MediaType contentType, long length ) {
+      this( id, contentType, length, null );
+    }
+
+    public StubbedAttachment( @Nonnull AttachmentId id, @Nonnull MediaType contentType, long length, @Nullable String digest ) {
       super( id, contentType );
       this.length = length;
+      this.digest = digest;
     }
 
     @Override
@@ -205,6 +228,16 @@ public class CouchDoc<T> extends RawCouchDoc {
       return length;
     }
 
+    /**
+     * Returns the digest as reported by the server (e.g. "md5-1B2M2Y8AsgTpgAmY7PhCfg==")
+     *
+     * @return the digest or null if no digest is available
+     */
+    @Nullable
+    public String getDigest() {
+      return digest;
+    }
+
     @Nonnull
     @Override
     public byte[] getData() {
@@ -234,6 +267,12 @@ public class CouchDoc<T> extends RawCouchDoc {
       return data.clone();
     }
 
+    @Nonnull
+    @Override
+    public InputStream openStream() {
+      return new ByteArrayInputStream( data );
+    }
+
     @Override
     public boolean isInline() {
       return true;
@@ -244,4 +283,96 @@ public class CouchDoc<T> extends RawCouchDoc {
       throw new UnsupportedOperationException( "no length is available" );
     }
   }
+
+  /**
+   * An inline attachment whose data is read from a file or stream while the document is serialized.
+   * In contrast to {@link InlineAttachment} the data is never held in memory completely.
+   * <p>
+   * Attachments backed by a stream can only be serialized once.
+   */
+  public static class StreamingInlineAttachment extends Attachment {
+    @Nullable
+    private final Path path;
+    @Nullable
+    private InputStream content;
+    private final long length;
+
+    /**
+     * Creates an attachment that reads its data from the given file (each time it is serialized)
+     *
+     * @param id          the id
+     * @param contentType the content type
+     * @param path        the file
+     * @throws IOException
+     */
+    public StreamingInlineAttachment( @Nonnull AttachmentId id, @Nonnull MediaType contentType, @Nonnull Path path ) throws IOException {
+      super( id, contentType );
+      this.path = path;
+      this.content = null;
+      this.length = Files.size( path );
+    }
+
+    /**
+     * Creates an attachment that reads its data from the given stream (once)
+     *
+     * @param id          the id
+     * @param contentType the content type
+     * @param content     the content (is closed after the attachment has been serialized)
+     * @param length      the length of the content (-1 if unknown)
+     */
+    public StreamingInlineAttachment( @Nonnull AttachmentId id, @Nonnull MediaType contentType, @Nonnull InputStream content, long length ) {
+      super( id, contentType );
+      this.path = null;
+      this.content = content;
+      this.length = length;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized InputStream openStream() throws IOException {
+      if ( path != null ) {
+        return Files.newInputStream( path );
+      }
+
+      @Nullable InputStream stream = content;
+      if ( stream == null ) {
+        throw new IllegalStateException( "The stream of attachment <" + getId() + "> has been consumed already" );
+      }
+      content = null;
+      return stream;
+    }
+
+    /**
+     * Reads the complete data into memory. Consumes the stream (if the attachment is backed by a stream)
+     *
+     * @return the data
+     */
+    @Nonnull
+    @Override
+    public byte[] getData() {
+      try ( InputStream in = openStream() ) {
+        return ByteStreams.toByteArray( in );
+      } catch ( IOException e ) {
+        throw new RuntimeException( e );
+      }
+    }
+
+    @Override
+    public boolean isInline() {
+      return true;
+    }
+
+    @Override
+    public long getLength() {
+      if ( length < 0 ) {
+        throw new UnsupportedOperationException( "no length is available" );
+      }
+      return length;
+    }
+
+    @Nullable
+    public Path getPath() {
+      return path;
+    }
+  }
 }
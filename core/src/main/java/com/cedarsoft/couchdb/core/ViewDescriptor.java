@@ -59,6 +59,26 @@ public class ViewDescriptor {
     return viewId;
   }
 
+  @Override
+  public boolean equals( Object obj ) {
+    if ( this == obj ) {
+      return true;
+    }
+    if ( !( obj instanceof ViewDescriptor ) ) {
+      return false;
+    }
+
+    ViewDescriptor that = ( ViewDescriptor ) obj;
+    return designDocumentId.equals( that.designDocumentId ) && viewId.equals( that.viewId );
+  }
+
+  @Override
+  public int hashCode() {
+    int result = designDocumentId.hashCode();
+    result = 31 * result + viewId.hashCode();
+    return result;
+  }
+
   @Override
   public String toString() {
     return designDocumentId + " | " + viewId;
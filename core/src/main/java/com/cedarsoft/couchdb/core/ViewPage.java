@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.core;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a view that is read using keyset pagination.
+ * <p>
+ * Contains the position of the next page (start key and start key doc id). That position may be used
+ * to continue the scan later.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @param <D> the type of the document (if there is one)
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ViewPage<K, V, D> {
+  private final int index;
+  @Nonnull
+  private final List<Row<K, V, D>> rows;
+  @Nullable
+  private final Key nextStartKey;
+  @Nullable
+  private final String nextStartKeyDocId;
+
+  /**
+   * Creates a new page
+   *
+   * @param index             the index of the page (0 for the first page)
+   * @param rows              the rows
+   * @param nextStartKey      the start key of the next page (null if this is the last page)
+   * @param nextStartKeyDocId the start key doc id of the next page (null for reduced views or if this is the last page)
+   */
+  public ViewPage( int index, @Nonnull List<? extends Row<K, V, D>> rows, @Nullable Key nextStartKey, @Nullable String nextStartKeyDocId ) {
+    this.index = index;
+    this.rows = new ArrayList<>( rows );
+    this.nextStartKey = nextStartKey;
+    this.nextStartKeyDocId = nextStartKeyDocId;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  @Nonnull
+  public List<? extends Row<K, V, D>> getRows() {
+    return Collections.unmodifiableList( rows );
+  }
+
+  /**
+   * Returns whether there is another page after this one
+   *
+   * @return true if there is another page, false if this is the last page
+   */
+  public boolean hasNext() {
+    return nextStartKey != null;
+  }
+
+  @Nullable
+  public Key getNextStartKey() {
+    return nextStartKey;
+  }
+
+  @Nullable
+  public String getNextStartKeyDocId() {
+    return nextStartKeyDocId;
+  }
+
+  @Override
+  public String toString() {
+    return "ViewPage{" +
+      "index=" + index +
+      ", rows=" + rows.size() +
+      ", nextStartKey=" + nextStartKey +
+      ", nextStartKeyDocId='" + nextStartKeyDocId + '\'' +
+      '}';
+  }
+}
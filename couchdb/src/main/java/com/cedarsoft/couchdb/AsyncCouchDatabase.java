@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.cedarsoft.couchdb.core.ActionResponse;
+import com.cedarsoft.couchdb.core.BulkActionResponse;
+import com.cedarsoft.couchdb.core.BulkDocResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Asynchronous access to a {@link CouchDatabase}.
+ * <p>
+ * Each call is executed on the given executor and returns immediately. Failures (e.g. an
+ * {@link com.cedarsoft.couchdb.core.ActionFailedException}) are reported through the returned future.
+ * <p>
+ * The http transport itself is blocking. Therefore the number of requests that are in flight
+ * at the same time is limited by the number of threads of the executor and the size of the connection pool
+ * (see {@link TransportConfig}).
+ * <p>
+ * High fan-out callers should use virtual threads ({@link RequestExecutors#newVirtualThreadExecutor()})
+ * together with a {@link ConcurrencyLimiter} that bounds the number of requests per server.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AsyncCouchDatabase {
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final ListeningExecutorService executor;
+  @Nullable
+  private final ConcurrencyLimiter limiter;
+
+  /**
+   * Creates a new async database
+   *
+   * @param db       the database that is used to execute the requests
+   * @param executor the executor the requests are executed on
+   */
+  public AsyncCouchDatabase( @Nonnull CouchDatabase db, @Nonnull ExecutorService executor ) {
+    this( db, executor, null );
+  }
+
+  /**
+   * Creates a new async database
+   *
+   * @param db       the database that is used to execute the requests
+   * @param executor the executor the requests are executed on
+   * @param limiter  the (optional) limiter that bounds the number of concurrent requests
+   */
+  public AsyncCouchDatabase( @Nonnull CouchDatabase db, @Nonnull ExecutorService executor, @Nullable ConcurrencyLimiter limiter ) {
+    this.db = db;
+    this.executor = MoreExecutors.listeningDecorator( executor );
+    this.limiter = limiter;
+  }
+
+  @Nonnull
+  public <T> ListenableFuture<ActionResponse> putAsync( @Nonnull final CouchDoc<T> doc, @Nonnull final JacksonSerializer<? super T> serializer ) {
+    return submit( new Callable<ActionResponse>() {
+      @Override
+      public ActionResponse call() throws Exception {
+        return db.put( doc, serializer );
+      }
+    } );
+  }
+
+  @Nonnull
+  public <T> ListenableFuture<List<? extends BulkActionResponse>> putAllAsync( @Nonnull final Collection<? extends CouchDoc<T>> docs, @Nonnull final JacksonSerializer<? super T> serializer ) {
+    return submit( new Callable<List<? extends BulkActionResponse>>() {
+      @Override
+      public List<? extends BulkActionResponse> call() throws Exception {
+        return db.putAll( docs, serializer );
+      }
+    } );
+  }
+
+  @Nonnull
+  public <T> ListenableFuture<CouchDoc<T>> getAsync( @Nonnull final DocId id, @Nonnull final JacksonSerializer<T> serializer ) {
+    return submit( new Callable<CouchDoc<T>>() {
+      @Override
+      public CouchDoc<T> call() throws Exception {
+        return db.get( id, serializer );
+      }
+    } );
+  }
+
+  @Nonnull
+  public <T> ListenableFuture<List<? extends BulkDocResponse<T>>> getAllAsync( @Nonnull final Collection<? extends DocId> ids, @Nonnull final JacksonSerializer<T> serializer ) {
+    return submit( new Callable<List<? extends BulkDocResponse<T>>>() {
+      @Override
+      public List<? extends BulkDocResponse<T>> call() throws Exception {
+        return db.getAll( ids, serializer );
+      }
+    } );
+  }
+
+  @Nonnull
+  public <K, V> ListenableFuture<ViewResponse<K, V, Void>> queryAsync( @Nonnull final ViewDescriptor viewDescriptor, @Nonnull final JacksonSerializer<? super K> keySerializer, @Nonnull final JacksonSerializer<? super V> valueSerializer, @Nullable final Options options ) {
+    return submit( new Callable<ViewResponse<K, V, Void>>() {
+      @Override
+      public ViewResponse<K, V, Void> call() throws Exception {
+        return db.query( viewDescriptor, keySerializer, valueSerializer, options );
+      }
+    } );
+  }
+
+  @Nonnull
+  public <K, V, D> ListenableFuture<ViewResponse<K, V, D>> queryAsync( @Nonnull final ViewDescriptor viewDescriptor, @Nonnull final JacksonSerializer<? super K> keySerializer, @Nonnull final JacksonSerializer<? super V> valueSerializer, @Nonnull final JacksonSerializer<? extends D> docSerializer, @Nullable final Options options ) {
+    return submit( new Callable<ViewResponse<K, V, D>>() {
+      @Override
+      public ViewResponse<K, V, D> call() throws Exception {
+        return db.query( viewDescriptor, keySerializer, valueSerializer, docSerializer, options );
+      }
+    } );
+  }
+
+  @Nonnull
+  public ListenableFuture<ActionResponse> deleteAsync( @Nonnull final DocId id, @Nonnull final Revision revision ) {
+    return submit( new Callable<ActionResponse>() {
+      @Override
+      public ActionResponse call() throws Exception {
+        return db.delete( id, revision );
+      }
+    } );
+  }
+
+  /**
+   * Submits a custom request
+   *
+   * @param request the request
+   * @param <T>     the result type
+   * @return the future
+   */
+  @Nonnull
+  public <T> ListenableFuture<T> submit( @Nonnull final Callable<T> request ) {
+    if ( limiter == null ) {
+      return executor.submit( request );
+    }
+
+    return executor.submit( new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        return limiter.call( request );
+      }
+    } );
+  }
+
+  @Nonnull
+  public CouchDatabase getDb() {
+    return db;
+  }
+
+  @Nullable
+  public ConcurrencyLimiter getLimiter() {
+    return limiter;
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.AttachmentId;
+import com.cedarsoft.couchdb.core.DocId;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read only channel for an attachment.
+ * <p>
+ * The content is fetched in chunks using Range requests. Sequential reads continue the current chunk,
+ * changing the position discards the current chunk. Therefore only the parts that are actually read are downloaded.
+ * <p>
+ * The size is determined once when the channel is opened. Instances are not thread safe.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see CouchDatabase#openChannel(DocId, AttachmentId)
+ */
+public class AttachmentChannel implements SeekableByteChannel {
+  /**
+   * The default number of bytes that are requested at once
+   */
+  public static final long DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final DocId docId;
+  @Nonnull
+  private final AttachmentId attachmentId;
+  private final long size;
+  private final long chunkSize;
+
+  private long position;
+  private boolean open = true;
+
+  /**
+   * The stream for the current chunk
+   */
+  @Nullable
+  private InputStream chunk;
+  @Nullable
+  private ReadableByteChannel chunkChannel;
+  /**
+   * The position the current chunk stream is placed at
+   */
+  private long chunkPosition;
+  /**
+   * The end (exclusive) of the current chunk
+   */
+  private long chunkEnd;
+
+  /**
+   * Creates a new channel
+   *
+   * @param db           the database
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @param size         the size of the attachment
+   * @param chunkSize    the number of bytes that are requested at once
+   */
+  public AttachmentChannel( @Nonnull CouchDatabase db, @Nonnull DocId docId, @Nonnull AttachmentId attachmentId, long size, long chunkSize ) {
+    if ( size < 0 ) {
+      throw new IllegalArgumentException( "Invalid size <" + size + ">" );
+    }
+    if ( chunkSize <= 0 ) {
+      throw new IllegalArgumentException( "Invalid chunk size <" + chunkSize + ">" );
+    }
+    this.db = db;
+    this.docId = docId;
+    this.attachmentId = attachmentId;
+    this.size = size;
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public int read( ByteBuffer dst ) throws IOException {
+    verifyOpen();
+    if ( position >= size ) {
+      return -1;
+    }
+    if ( !dst.hasRemaining() ) {
+      return 0;
+    }
+
+    if ( chunkChannel == null || chunkPosition != position || chunkPosition >= chunkEnd ) {
+      openChunk();
+    }
+    assert chunkChannel != null;
+
+    //Do not read beyond the current chunk
+    int max = ( int ) Math.min( dst.remaining(), chunkEnd - chunkPosition );
+    ByteBuffer limited = dst.duplicate();
+    limited.limit( limited.position() + max );
+
+    int read = chunkChannel.read( limited );
+    if ( read < 0 ) {
+      throw new IOException( "Unexpected end of attachment <" + attachmentId + "> at <" + chunkPosition + ">" );
+    }
+
+    dst.position( dst.position() + read );
+    chunkPosition += read;
+    position += read;
+    return read;
+  }
+
+  private void openChunk() throws IOException {
+    closeChunk();
+
+    long length = Math.min( chunkSize, size - position );
+    try {
+      chunk = db.get( docId, attachmentId, position, length );
+    } catch ( ActionFailedException e ) {
+      throw new IOException( "Could not read range of <" + attachmentId + "> due to " + e.getMessage(), e );
+    }
+    chunkChannel = Channels.newChannel( chunk );
+    chunkPosition = position;
+    chunkEnd = position + length;
+  }
+
+  private void closeChunk() throws IOException {
+    @Nullable InputStream current = chunk;
+    chunk = null;
+    chunkChannel = null;
+    if ( current != null ) {
+      current.close();
+    }
+  }
+
+  @Override
+  public int write( ByteBuffer src ) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public long position() throws IOException {
+    verifyOpen();
+    return position;
+  }
+
+  @Override
+  public SeekableByteChannel position( long newPosition ) throws IOException {
+    verifyOpen();
+    if ( newPosition < 0 ) {
+      throw new IllegalArgumentException( "Invalid position <" + newPosition + ">" );
+    }
+    this.position = newPosition;
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    verifyOpen();
+    return size;
+  }
+
+  @Override
+  public SeekableByteChannel truncate( long size ) throws IOException {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if ( !open ) {
+      return;
+    }
+    open = false;
+    closeChunk();
+  }
+
+  private void verifyOpen() throws ClosedChannelException {
+    if ( !open ) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Nonnull
+  public DocId getDocId() {
+    return docId;
+  }
+
+  @Nonnull
+  public AttachmentId getAttachmentId() {
+    return attachmentId;
+  }
+
+  public long getChunkSize() {
+    return chunkSize;
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.sun.jersey.api.client.AbstractClientRequestAdapter;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientRequestAdapter;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Filter that requests gzip compressed responses (Accept-Encoding) and decodes them transparently.
+ * <p>
+ * Optionally the bodies of JSON requests (documents, bulk updates) are gzip compressed, too.
+ * Other request bodies (e.g. attachments) are sent unmodified - they are often compressed already.
+ * <p>
+ * This filter should be the first filter that is added to a client (Jersey calls the filter that has been added first last).
+ * Otherwise other filters see the compressed content.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see TransportConfig#compressResponses(boolean)
+ * @see TransportConfig#compressRequests(boolean)
+ */
+public class CompressionFilter extends ClientFilter {
+  @Nonnull
+  public static final String GZIP = "gzip";
+
+  private final boolean compressRequests;
+
+  /**
+   * Creates a new filter
+   *
+   * @param compressRequests whether the bodies of JSON requests are compressed
+   */
+  public CompressionFilter( boolean compressRequests ) {
+    this.compressRequests = compressRequests;
+  }
+
+  @Override
+  public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+    if ( !request.getHeaders().containsKey( HttpHeaders.ACCEPT_ENCODING ) ) {
+      request.getHeaders().add( HttpHeaders.ACCEPT_ENCODING, GZIP );
+    }
+
+    if ( compressRequests && request.getEntity() != null && isJson( request ) && !request.getHeaders().containsKey( HttpHeaders.CONTENT_ENCODING ) ) {
+      request.getHeaders().add( HttpHeaders.CONTENT_ENCODING, GZIP );
+      request.setAdapter( new GzipAdapter( request.getAdapter() ) );
+    }
+
+    ClientResponse response = getNext().handle( request );
+
+    @Nullable String contentEncoding = response.getHeaders().getFirst( HttpHeaders.CONTENT_ENCODING );
+    if ( response.hasEntity() && GZIP.equalsIgnoreCase( contentEncoding ) ) {
+      response.getHeaders().remove( HttpHeaders.CONTENT_ENCODING );
+      try {
+        response.setEntityInputStream( new GZIPInputStream( response.getEntityInputStream() ) );
+      } catch ( IOException e ) {
+        throw new ClientHandlerException( e );
+      }
+    }
+
+    return response;
+  }
+
+  private static boolean isJson( @Nonnull ClientRequest request ) {
+    @Nullable Object contentType = request.getHeaders().getFirst( HttpHeaders.CONTENT_TYPE );
+    if ( contentType == null ) {
+      return false;
+    }
+
+    MediaType mediaType = contentType instanceof MediaType ? ( MediaType ) contentType : MediaType.valueOf( contentType.toString() );
+    return MediaType.APPLICATION_JSON_TYPE.isCompatible( mediaType );
+  }
+
+  public boolean isCompressRequests() {
+    return compressRequests;
+  }
+
+  /**
+   * Compresses the request body
+   */
+  private static class GzipAdapter extends AbstractClientRequestAdapter {
+    private GzipAdapter( @Nonnull ClientRequestAdapter adapter ) {
+      super( adapter );
+    }
+
+    @Override
+    public OutputStream adapt( ClientRequest request, OutputStream out ) throws IOException {
+      return new GZIPOutputStream( getAdapter().adapt( request, out ) );
+    }
+  }
+}
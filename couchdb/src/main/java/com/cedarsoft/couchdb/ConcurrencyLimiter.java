@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of requests that are executed against one server at the same time.
+ * Callers that exceed the limit are blocked until a permit is available.
+ * <p>
+ * Blocking is cheap for virtual threads, therefore high fan-out callers may submit as many requests
+ * as they like without swamping the connection pool.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ConcurrencyLimiter {
+  @Nonnull
+  private final Semaphore semaphore;
+  private final int maxConcurrent;
+
+  public ConcurrencyLimiter( int maxConcurrent ) {
+    if ( maxConcurrent < 1 ) {
+      throw new IllegalArgumentException( "Invalid max concurrent <" + maxConcurrent + ">" );
+    }
+    this.maxConcurrent = maxConcurrent;
+    this.semaphore = new Semaphore( maxConcurrent, true );
+  }
+
+  /**
+   * Executes the given request as soon as a permit is available
+   *
+   * @param request the request
+   * @param <T>     the result type
+   * @return the result of the request
+   *
+   * @throws Exception if the request fails or the thread has been interrupted while waiting
+   */
+  public <T> T call( @Nonnull Callable<T> request ) throws Exception {
+    semaphore.acquire();
+    try {
+      return request.call();
+    } finally {
+      semaphore.release();
+    }
+  }
+
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  /**
+   * Returns the number of requests that are currently executed
+   *
+   * @return the number of requests in flight
+   */
+  public int getInFlight() {
+    return maxConcurrent - semaphore.availablePermits();
+  }
+
+  /**
+   * Returns an estimate of the number of callers waiting for a permit
+   *
+   * @return the number of waiting callers
+   */
+  public int getWaiting() {
+    return semaphore.getQueueLength();
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrencyLimiter{" +
+      "maxConcurrent=" + maxConcurrent +
+      ", inFlight=" + getInFlight() +
+      ", waiting=" + getWaiting() +
+      '}';
+  }
+}
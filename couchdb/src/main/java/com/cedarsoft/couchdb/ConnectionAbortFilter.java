@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Attaches the pooled connection to each response - therefore responses can be aborted.
+ * <p>
+ * Closing the entity stream of a response reads the remaining content to return the connection to the pool.
+ * This never finishes for continuous feeds and is expensive for large responses that are only read partially.
+ * {@link #abort(ClientResponse)} closes the connection instead and returns it to the pool immediately.
+ * <p>
+ * The connection is captured by a response interceptor that is registered using {@link #install(AbstractHttpClient)}.
+ * This filter must be the first filter that is added to the client (Jersey calls the filter that has been added first last).
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ConnectionAbortFilter extends ClientFilter {
+  /**
+   * The response property that contains the {@link ConnectionReleaseTrigger}
+   */
+  @Nonnull
+  public static final String PROPERTY_CONNECTION = ConnectionAbortFilter.class.getName() + ".connection";
+
+  /**
+   * Contains the connection of the latest response that has been received by the current thread
+   */
+  @Nonnull
+  private final ThreadLocal<ConnectionReleaseTrigger> currentConnection = new ThreadLocal<>();
+
+  /**
+   * Registers the response interceptor that captures the connections
+   *
+   * @param httpClient the http client
+   */
+  public void install( @Nonnull AbstractHttpClient httpClient ) {
+    httpClient.addResponseInterceptor( new HttpResponseInterceptor() {
+      @Override
+      public void process( HttpResponse response, HttpContext context ) {
+        @Nullable Object connection = context.getAttribute( ExecutionContext.HTTP_CONNECTION );
+        if ( connection instanceof ConnectionReleaseTrigger ) {
+          currentConnection.set( ( ConnectionReleaseTrigger ) connection );
+        }
+      }
+    } );
+  }
+
+  @Override
+  public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+    currentConnection.remove();
+    try {
+      ClientResponse response = getNext().handle( request );
+
+      @Nullable ConnectionReleaseTrigger connection = currentConnection.get();
+      if ( connection != null ) {
+        response.getProperties().put( PROPERTY_CONNECTION, connection );
+      }
+      return response;
+    } finally {
+      currentConnection.remove();
+    }
+  }
+
+  /**
+   * Aborts the connection of the given response. The connection is closed (without reading the remaining content)
+   * and returned to the pool.
+   * <p>
+   * May be called from any thread. Threads that are blocked while reading the response fail.
+   * Aborting a response that has been read (or aborted) already has no effect.
+   *
+   * @param response the response
+   * @return true if the connection has been aborted, false if the connection of the response can not be aborted
+   *
+   * @throws IOException
+   */
+  public static boolean abort( @Nonnull ClientResponse response ) throws IOException {
+    @Nullable ConnectionReleaseTrigger connection = getConnection( response );
+    if ( connection == null ) {
+      return false;
+    }
+
+    connection.abortConnection();
+    return true;
+  }
+
+  /**
+   * Returns the connection of the given response
+   *
+   * @param response the response
+   * @return the connection or null if the response has not been received using a client this filter has been installed for
+   */
+  @Nullable
+  public static ConnectionReleaseTrigger getConnection( @Nonnull ClientResponse response ) {
+    @Nullable Object connection = response.getProperties().get( PROPERTY_CONNECTION );
+    if ( connection instanceof ConnectionReleaseTrigger ) {
+      return ( ConnectionReleaseTrigger ) connection;
+    }
+    return null;
+  }
+}
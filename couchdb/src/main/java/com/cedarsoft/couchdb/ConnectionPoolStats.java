@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+/**
+ * Snapshot of the connection pool of a {@link HttpTransport}
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ConnectionPoolStats {
+  private final int leased;
+  private final int available;
+  private final int pending;
+  private final int max;
+
+  public ConnectionPoolStats( int leased, int available, int pending, int max ) {
+    this.leased = leased;
+    this.available = available;
+    this.pending = pending;
+    this.max = max;
+  }
+
+  /**
+   * Returns the number of connections that are currently in use
+   *
+   * @return the number of leased connections
+   */
+  public int getLeased() {
+    return leased;
+  }
+
+  /**
+   * Returns the number of idle connections that are kept alive in the pool
+   *
+   * @return the number of available connections
+   */
+  public int getAvailable() {
+    return available;
+  }
+
+  /**
+   * Returns the number of requests that are waiting for a connection
+   *
+   * @return the number of pending requests
+   */
+  public int getPending() {
+    return pending;
+  }
+
+  public int getMax() {
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionPoolStats{" +
+      "leased=" + leased +
+      ", available=" + available +
+      ", pending=" + pending +
+      ", max=" + max +
+      '}';
+  }
+}
@@ -35,6 +35,9 @@ import com.cedarsoft.couchdb.core.AbstractCouchDatabase;
 import com.cedarsoft.couchdb.core.ActionFailedException;
 import com.cedarsoft.couchdb.core.ActionResponse;
 import com.cedarsoft.couchdb.core.AttachmentId;
+import com.cedarsoft.couchdb.core.BulkActionResponse;
+import com.cedarsoft.couchdb.core.BulkDocResponse;
+import com.cedarsoft.couchdb.core.ChangesOptions;
 import com.cedarsoft.couchdb.core.CouchDoc;
 import com.cedarsoft.couchdb.core.DocId;
 import com.cedarsoft.couchdb.core.Options;
@@ -42,53 +45,124 @@ import com.cedarsoft.couchdb.core.Revision;
 import com.cedarsoft.couchdb.core.ViewDescriptor;
 import com.cedarsoft.couchdb.core.ViewResponse;
 import com.cedarsoft.couchdb.io.ActionResponseSerializer;
+import com.cedarsoft.couchdb.io.AllDocsSerializer;
+import com.cedarsoft.couchdb.io.AttachmentStubsSerializer;
+import com.cedarsoft.couchdb.io.BulkDocsSerializer;
+import com.cedarsoft.couchdb.io.ChangeIterator;
 import com.cedarsoft.couchdb.io.CouchDocSerializer;
+import com.cedarsoft.couchdb.io.LoggingInputStream;
+import com.cedarsoft.couchdb.io.RowIterator;
 import com.cedarsoft.couchdb.io.RowSerializer;
 import com.cedarsoft.couchdb.io.ViewResponseSerializer;
+import com.cedarsoft.couchdb.retry.RetryFilter;
+import com.cedarsoft.couchdb.trace.TraceContext;
 import com.cedarsoft.serialization.jackson.JacksonSerializer;
 import com.google.common.io.ByteStreams;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.filter.ClientFilter;
-import com.sun.jersey.client.apache4.ApacheHttpClient4;
-import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
-import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
  * Offers access methods for a couch database
  */
-public class CouchDatabase extends AbstractCouchDatabase {
+public class CouchDatabase extends AbstractCouchDatabase implements Closeable {
+  /**
+   * The max number of bytes that are transferred into a file channel at once
+   */
+  public static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+  /**
+   * The initial size of the buffer if the content length is unknown
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+  /**
+   * The max size of a buffer (some VMs reserve header words in an array)
+   */
+  public static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+  @Nonnull
+  public static final String HEADER_RANGE = "Range";
+  /**
+   * Used as Accept-Encoding for range requests - the ranges must refer to the stored bytes
+   */
+  @Nonnull
+  public static final String ENCODING_IDENTITY = "identity";
+
+  /**
+   * Creates a new database with its own pooled transport using the default {@link TransportConfig}.
+   * The transport does not start an eviction thread - therefore the database does not have to be closed.
+   * Closing the database releases the pooled connections.
+   *
+   * @param uri     the uri of the database
+   * @param filters the (optional) filters
+   * @return the database
+   */
   @Nonnull
   public static CouchDatabase create( @Nonnull URI uri, @Nullable ClientFilter... filters ) {
-    ClientConnectionManager connectionManager = new ThreadSafeClientConnManager();
-    DefaultApacheHttpClient4Config config = new DefaultApacheHttpClient4Config();
-    config.getProperties().put( ApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER, connectionManager );
+    return create( uri, TransportConfig.defaults().evictionInterval( 0, TimeUnit.MILLISECONDS ), filters );
+  }
 
-    Client client = ApacheHttpClient4.create( config );
+  /**
+   * Creates a new database with its own pooled transport.
+   * The transport is owned by the database: The database must be closed to stop the eviction thread and shut down the pool.
+   * Use {@link CouchServer#create(URI, TransportConfig, ClientFilter...)} to share one pool between several databases.
+   *
+   * @param uri     the uri of the database
+   * @param config  the transport config
+   * @param filters the (optional) filters
+   * @return the database
+   */
+  @Nonnull
+  public static CouchDatabase create( @Nonnull URI uri, @Nonnull TransportConfig config, @Nullable ClientFilter... filters ) {
+    HttpTransport transport = new HttpTransport( config, filters );
+    return new CouchDatabase( transport.getClient().resource( uri ), transport, true );
+  }
 
-    if ( filters != null ) {
-      for ( ClientFilter filter : filters ) {
-        client.addFilter( filter );
-      }
-    }
-    return create( client, uri );
+  /**
+   * Creates a new database that uses the given (shared) transport
+   *
+   * @param transport the transport
+   * @param uri       the uri of the database
+   * @return the database
+   */
+  @Nonnull
+  public static CouchDatabase create( @Nonnull HttpTransport transport, @Nonnull URI uri ) {
+    return new CouchDatabase( transport.getClient().resource( uri ), transport );
   }
 
   @Nonnull
@@ -105,16 +179,65 @@ public class CouchDatabase extends AbstractCouchDatabase {
   private final ViewResponseSerializer viewResponseSerializer;
   @Nonnull
   private final CouchDocSerializer couchDocSerializer = new CouchDocSerializer();
+  @Nonnull
+  private final BulkDocsSerializer bulkDocsSerializer = new BulkDocsSerializer( couchDocSerializer );
+  @Nonnull
+  private final AllDocsSerializer allDocsSerializer = new AllDocsSerializer( couchDocSerializer );
+  @Nonnull
+  private final AttachmentStubsSerializer attachmentStubsSerializer = new AttachmentStubsSerializer();
+  @Nullable
+  private final HttpTransport transport;
+  /**
+   * Whether the transport has been created for this database (and is closed with it)
+   */
+  private final boolean ownsTransport;
 
   /**
    * Creates a new database for the given db root
    * @param dbRoot the db root
    */
   public CouchDatabase(@Nonnull WebResource dbRoot) {
+    this( dbRoot, null );
+  }
+
+  /**
+   * Creates a new database for the given db root
+   * @param dbRoot the db root
+   * @param transport the transport the db root has been created with (if there is one)
+   */
+  public CouchDatabase( @Nonnull WebResource dbRoot, @Nullable HttpTransport transport ) {
+    this( dbRoot, transport, false );
+  }
+
+  private CouchDatabase( @Nonnull WebResource dbRoot, @Nullable HttpTransport transport, boolean ownsTransport ) {
     super( dbRoot );
+    this.transport = transport;
+    this.ownsTransport = ownsTransport;
     viewResponseSerializer = new ViewResponseSerializer( new RowSerializer( couchDocSerializer ) );
   }
 
+  /**
+   * Returns the pooled transport this database uses.
+   * Returns null if the database has been created using a custom client.
+   *
+   * @return the transport or null
+   */
+  @Nullable
+  public HttpTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Closes the transport if it has been created for this database (see {@link #create(URI, TransportConfig, ClientFilter...)}).
+   * Shared transports (e.g. of a {@link CouchServer}) are not closed.
+   */
+  @Override
+  public void close() {
+    if ( ownsTransport && transport != null ) {
+      transport.close();
+    }
+  }
+
   @Override
   @Nonnull
   public ActionResponse put( @Nonnull DocId id, @Nonnull InputStream content ) throws ActionFailedException {
@@ -140,14 +263,31 @@ public class CouchDatabase extends AbstractCouchDatabase {
    * @throws ActionFailedException
    */
   @Nonnull
-  public <T> ActionResponse put( @Nonnull CouchDoc<T> doc, @Nonnull JacksonSerializer<? super T> serializer ) throws ActionFailedException, IOException {
+  public <T> ActionResponse put( @Nonnull final CouchDoc<T> doc, @Nonnull final JacksonSerializer<? super T> serializer ) throws ActionFailedException, IOException {
     WebResource path = getDbRoot().path( doc.getId().asString() );
 
     if ( LOG.isLoggable( Level.FINE ) ) {
       LOG.fine( "PUT " + path.toString() );
     }
 
-    ClientResponse clientResponse = path.type( JSON_TYPE ).accept( JSON_TYPE ).put( ClientResponse.class, couchDocSerializer.serialize( doc, serializer ) );
+    //Updates of existing docs may be retried: The revision prevents duplicate writes (a repeated update fails with a conflict)
+    if ( doc.getRev() != null ) {
+      path.setProperty( RetryFilter.PROPERTY_IDEMPOTENT, true );
+    }
+
+    ClientResponse clientResponse;
+    if ( doc.hasInlineAttachments() ) {
+      //Stream the doc (chunked) - the inline attachments may be large. Therefore the doc must not be buffered
+      path.setProperty( ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, 0 );
+      clientResponse = path.type( JSON_TYPE ).accept( JSON_TYPE ).put( ClientResponse.class, new StreamingOutput() {
+        @Override
+        public void write( OutputStream output ) throws IOException, WebApplicationException {
+          couchDocSerializer.serialize( doc, serializer, output );
+        }
+      } );
+    } else {
+      clientResponse = path.type( JSON_TYPE ).accept( JSON_TYPE ).put( ClientResponse.class, couchDocSerializer.serialize( doc, serializer ) );
+    }
     ActionResponse actionResponse = ActionResponseSerializer.create( clientResponse );
 
     //Update the rev
@@ -156,6 +296,65 @@ public class CouchDatabase extends AbstractCouchDatabase {
     return actionResponse;
   }
 
+  /**
+   * Puts all documents using one single request (_bulk_docs).
+   * The docs are streamed through the serializer directly into the request.
+   * <p>
+   * The revisions of all successfully stored docs are updated.
+   * Failures for single docs do not fail the complete request. Instead they are contained within the
+   * returned responses.
+   *
+   * @param docs       the couch documents
+   * @param serializer the serializer that is used to serialize the objects contained within the documents
+   * @param <T>        the type
+   * @return the responses - one for each doc (in the same order as the docs)
+   *
+   * @throws ActionFailedException if the complete request has failed
+   */
+  @Nonnull
+  public <T> List<? extends BulkActionResponse> putAll( @Nonnull final Collection<? extends CouchDoc<T>> docs, @Nonnull final JacksonSerializer<? super T> serializer ) throws ActionFailedException, IOException {
+    WebResource path = getDbRoot().path( PATH_SEGMENT_BULK_DOCS );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "POST " + path.toString() + " (" + docs.size() + " docs)" );
+    }
+
+    //Use chunked encoding - otherwise the complete body is buffered before it is sent
+    path.setProperty( ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, 0 );
+    ClientResponse clientResponse = path.type( JSON_TYPE ).accept( JSON_TYPE ).post( ClientResponse.class, new StreamingOutput() {
+      @Override
+      public void write( OutputStream output ) throws IOException, WebApplicationException {
+        bulkDocsSerializer.serialize( docs, serializer, output );
+      }
+    } );
+
+    try {
+      ActionResponseSerializer.verifyNoError( clientResponse );
+
+      List<? extends BulkActionResponse> responses;
+      try ( InputStream in = clientResponse.getEntityInputStream() ) {
+        responses = bulkDocsSerializer.deserialize( clientResponse.getStatus(), getURI(), in );
+      }
+
+      if ( responses.size() != docs.size() ) {
+        throw new IllegalStateException( "Invalid response count. Expected <" + docs.size() + "> but was <" + responses.size() + ">" );
+      }
+
+      //Update the revs
+      Iterator<? extends BulkActionResponse> responsesIterator = responses.iterator();
+      for ( CouchDoc<T> doc : docs ) {
+        BulkActionResponse response = responsesIterator.next();
+        if ( response.isSuccessful() ) {
+          doc.setRev( response.getResponse().getRev() );
+        }
+      }
+
+      return responses;
+    } finally {
+      clientResponse.close();
+    }
+  }
+
   @Override
   @Nonnull
   public ActionResponse put( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull MediaType mediaType, @Nonnull InputStream content ) throws ActionFailedException {
@@ -196,6 +395,195 @@ public class CouchDatabase extends AbstractCouchDatabase {
     return ActionResponseSerializer.create( clientResponse );
   }
 
+  /**
+   * Puts the given file as attachment.
+   * The file is streamed directly from the file channel into the request (chunked) - it is never held in memory completely.
+   *
+   * @param docId        the doc id
+   * @param revision     the revision (null for new documents)
+   * @param attachmentId the attachment id
+   * @param mediaType    the media type
+   * @param file         the file
+   * @return the response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public ActionResponse put( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull final Path file ) throws ActionFailedException, IOException {
+    if ( !Files.isRegularFile( file ) ) {
+      throw new FileNotFoundException( "Not a file <" + file + ">" );
+    }
+
+    return putAttachment( docId, revision, attachmentId, mediaType, new StreamingOutput() {
+      @Override
+      public void write( OutputStream output ) throws IOException, WebApplicationException {
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+          WritableByteChannel target = Channels.newChannel( output );
+          long position = 0;
+          long size = channel.size();
+          while ( position < size ) {
+            position += channel.transferTo( position, size - position, target );
+          }
+        }
+      }
+    } );
+  }
+
+  /**
+   * Puts the remaining content of the given buffer as attachment.
+   * The position of the buffer is not modified.
+   *
+   * @param docId        the doc id
+   * @param revision     the revision (null for new documents)
+   * @param attachmentId the attachment id
+   * @param mediaType    the media type
+   * @param content      the content (e.g. a direct or mapped buffer)
+   * @return the response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public ActionResponse put( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull ByteBuffer content ) throws ActionFailedException, IOException {
+    final ByteBuffer source = content.duplicate();
+
+    return putAttachment( docId, revision, attachmentId, mediaType, new StreamingOutput() {
+      @Override
+      public void write( OutputStream output ) throws IOException, WebApplicationException {
+        WritableByteChannel target = Channels.newChannel( output );
+        while ( source.hasRemaining() ) {
+          target.write( source );
+        }
+      }
+    } );
+  }
+
+  /**
+   * Puts the given file as attachment - unless the existing attachment has the same content.
+   * The content is compared using the md5 digest of the file and the digest reported by the server.
+   *
+   * @param docId        the doc id
+   * @param revision     the revision (null for new documents)
+   * @param attachmentId the attachment id
+   * @param mediaType    the media type
+   * @param file         the file
+   * @return the response or null if the attachment is unchanged and therefore has not been uploaded
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nullable
+  public ActionResponse putIfChanged( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull Path file ) throws ActionFailedException, IOException {
+    return putIfChanged( docId, revision, attachmentId, mediaType, file, listExistingAttachments( docId, revision ) );
+  }
+
+  /**
+   * Puts the given file as attachment - unless the existing attachment has the same content.
+   * Use this method together with {@link #listAttachments(Collection)} to avoid one request per document.
+   *
+   * @param docId               the doc id
+   * @param revision            the revision (null for new documents)
+   * @param attachmentId        the attachment id
+   * @param mediaType           the media type
+   * @param file                the file
+   * @param existingAttachments the attachment stubs of the current revision of the document
+   * @return the response or null if the attachment is unchanged and therefore has not been uploaded
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nullable
+  public ActionResponse putIfChanged( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull Path file, @Nonnull Collection<? extends CouchDoc.StubbedAttachment> existingAttachments ) throws ActionFailedException, IOException {
+    if ( isUnchanged( existingAttachments, attachmentId, mediaType, CouchUtils.md5Digest( file ) ) ) {
+      return null;
+    }
+    return put( docId, revision, attachmentId, mediaType, file );
+  }
+
+  /**
+   * Puts the remaining content of the given buffer as attachment - unless the existing attachment has the same content.
+   *
+   * @param docId        the doc id
+   * @param revision     the revision (null for new documents)
+   * @param attachmentId the attachment id
+   * @param mediaType    the media type
+   * @param content      the content
+   * @return the response or null if the attachment is unchanged and therefore has not been uploaded
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nullable
+  public ActionResponse putIfChanged( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull ByteBuffer content ) throws ActionFailedException, IOException {
+    return putIfChanged( docId, revision, attachmentId, mediaType, content, listExistingAttachments( docId, revision ) );
+  }
+
+  /**
+   * Puts the remaining content of the given buffer as attachment - unless the existing attachment has the same content.
+   *
+   * @param docId               the doc id
+   * @param revision            the revision (null for new documents)
+   * @param attachmentId        the attachment id
+   * @param mediaType           the media type
+   * @param content             the content
+   * @param existingAttachments the attachment stubs of the current revision of the document
+   * @return the response or null if the attachment is unchanged and therefore has not been uploaded
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nullable
+  public ActionResponse putIfChanged( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull ByteBuffer content, @Nonnull Collection<? extends CouchDoc.StubbedAttachment> existingAttachments ) throws ActionFailedException, IOException {
+    if ( isUnchanged( existingAttachments, attachmentId, mediaType, CouchUtils.md5Digest( content ) ) ) {
+      return null;
+    }
+    return put( docId, revision, attachmentId, mediaType, content );
+  }
+
+  @Nonnull
+  private Collection<? extends CouchDoc.StubbedAttachment> listExistingAttachments( @Nonnull DocId docId, @Nullable Revision revision ) throws ActionFailedException, IOException {
+    //New documents do not have any attachments
+    if ( revision == null ) {
+      return Collections.emptyList();
+    }
+    return listAttachments( docId );
+  }
+
+  /**
+   * Returns true if the existing attachments contain an attachment with the given id, media type and digest.
+   * Digests that do not match (e.g. because the server reports the digest of the compressed content) result in an upload.
+   */
+  private static boolean isUnchanged( @Nonnull Collection<? extends CouchDoc.StubbedAttachment> existingAttachments, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull String digest ) {
+    for ( CouchDoc.StubbedAttachment existing : existingAttachments ) {
+      if ( existing.getId().equals( attachmentId ) ) {
+        return digest.equals( existing.getDigest() ) && mediaType.equals( existing.getContentType() );
+      }
+    }
+    return false;
+  }
+
+  @Nonnull
+  private ActionResponse putAttachment( @Nonnull DocId docId, @Nullable Revision revision, @Nonnull AttachmentId attachmentId, @Nonnull MediaType mediaType, @Nonnull StreamingOutput content ) throws ActionFailedException {
+    WebResource resource = getDbRoot()
+      .path( docId.asString() )
+      .path( attachmentId.asString() );
+
+    //Add the revision is necessary
+    if ( revision != null ) {
+      resource = resource.queryParam( PARAM_REV, revision.asString() );
+    }
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "PUT " + resource.toString() );
+    }
+
+    //Stream the content (chunked) instead of buffering it
+    resource.setProperty( ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, 0 );
+    ClientResponse clientResponse = resource.type( mediaType ).accept( JSON_TYPE ).put( ClientResponse.class, content );
+    return ActionResponseSerializer.create( clientResponse );
+  }
+
   @Override
   @Nonnull
   public ActionResponse post( @Nonnull InputStream content ) throws ActionFailedException {
@@ -255,8 +643,8 @@ public class CouchDatabase extends AbstractCouchDatabase {
       throw new IllegalArgumentException( Options.INCLUDE_DOCS + " is not supported without a doc serializer" );
     }
 
-    try ( InputStream stream = query( viewDescriptor, options ) ) {
-      return viewResponseSerializer.deserialize( keySerializer, valueSerializer, stream );
+    try ( RowIterator<K, V, Void> iterator = queryStream( viewDescriptor, keySerializer, valueSerializer, options ) ) {
+      return viewResponseSerializer.deserialize( iterator );
     }
   }
 
@@ -287,6 +675,61 @@ public class CouchDatabase extends AbstractCouchDatabase {
    */
   @Nonnull
   public <K, V, D> ViewResponse<K, V, D> query( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nonnull JacksonSerializer<? extends D> docSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
+    try ( RowIterator<K, V, D> iterator = queryStream( viewDescriptor, keySerializer, valueSerializer, docSerializer, options ) ) {
+      return viewResponseSerializer.deserialize( iterator );
+    }
+  }
+
+  /**
+   * Queries the given view and returns the rows lazily.
+   * In contrast to {@link #query(ViewDescriptor, JacksonSerializer, JacksonSerializer, Options)} the rows are not collected.
+   * Each row is deserialized when it is requested from the iterator. Therefore the memory consumption stays constant -
+   * independent of the size of the view.
+   * <p>
+   * The returned iterator must be closed to release the connection.
+   * If it is closed before all rows have been read, the connection is aborted (if a pooled transport is used) instead of reading the remaining rows.
+   * This method does *not* support included docs.
+   *
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to deserialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param options         the options for the query
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @return the (open) row iterator
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public <K, V> RowIterator<K, V, Void> queryStream( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
+    if ( options != null && options.isIncludeDocs() ) {
+      throw new IllegalArgumentException( Options.INCLUDE_DOCS + " is not supported without a doc serializer" );
+    }
+
+    return this.<K, V, Void>queryRows( viewDescriptor, keySerializer, valueSerializer, null, options );
+  }
+
+  /**
+   * Queries the given view and returns the rows lazily.
+   * This method supports included docs.
+   *
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to deserialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param docSerializer   the document serializer
+   * @param options         the options for the query - includeDocs(true) is added automatically
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @param <D>             the type of the document object
+   * @return the (open) row iterator
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   * @see #queryStream(ViewDescriptor, JacksonSerializer, JacksonSerializer, Options)
+   */
+  @Nonnull
+  public <K, V, D> RowIterator<K, V, D> queryStream( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nonnull JacksonSerializer<? extends D> docSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
     Options localOptions;
     if ( options != null && !options.isGroup() ) {
       localOptions = new Options( options ).includeDocs( true ); //force include docs
@@ -294,11 +737,67 @@ public class CouchDatabase extends AbstractCouchDatabase {
       localOptions = options;
     }
 
-    try ( InputStream stream = query( viewDescriptor, localOptions ) ) {
-      return viewResponseSerializer.deserialize( keySerializer, valueSerializer, docSerializer, stream );
+    return queryRows( viewDescriptor, keySerializer, valueSerializer, docSerializer, localOptions );
+  }
+
+  @Nonnull
+  private <K, V, D> RowIterator<K, V, D> queryRows( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> docSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
+    TraceContext traceContext = new TraceContext( options );
+    ClientResponse response = getResponse( traceContext.attachTo( viewPath( viewDescriptor, options ) ) );
+    InputStream stream = getEntityInputStream( response );
+    try {
+      //The connection is aborted if the iterator is closed early - otherwise the remaining rows would be read
+      RowIterator<K, V, D> iterator = viewResponseSerializer.deserializeIterator( keySerializer, valueSerializer, docSerializer, stream, ConnectionAbortFilter.getConnection( response ) );
+      traceContext.countRows( iterator );
+      return iterator;
+    } catch ( IOException | RuntimeException e ) {
+      stream.close();
+      throw e;
     }
   }
 
+  /**
+   * Returns an iterator over the pages of the given view.
+   * The pages are read using keyset pagination (startkey/startkey_docid) - therefore the cost per page stays the same
+   * for deep pages (in contrast to "skip").
+   * This method does *not* support included docs.
+   *
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to (de)serialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param options         the options for the query ("skip" is not supported, "limit" is overwritten)
+   * @param pageSize        the number of rows per page
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @return the paginator
+   */
+  @Nonnull
+  public <K, V> ViewPaginator<K, V, Void> paginate( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable Options options, int pageSize ) {
+    return new ViewPaginator<K, V, Void>( this, viewDescriptor, keySerializer, valueSerializer, null, options, pageSize );
+  }
+
+  /**
+   * Returns an iterator over the pages of the given view.
+   * This method supports included docs.
+   *
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to (de)serialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param docSerializer   the document serializer
+   * @param options         the options for the query - includeDocs(true) is added automatically
+   * @param pageSize        the number of rows per page
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @param <D>             the type of the document object
+   * @return the paginator
+   *
+   * @see #paginate(ViewDescriptor, JacksonSerializer, JacksonSerializer, Options, int)
+   */
+  @Nonnull
+  public <K, V, D> ViewPaginator<K, V, D> paginate( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nonnull JacksonSerializer<? extends D> docSerializer, @Nullable Options options, int pageSize ) {
+    return new ViewPaginator<K, V, D>( this, viewDescriptor, keySerializer, valueSerializer, docSerializer, options, pageSize );
+  }
+
   /**
    * Returns the document
    *
@@ -312,6 +811,186 @@ public class CouchDatabase extends AbstractCouchDatabase {
     return couchDocSerializer.deserialize( serializer, get( id ) );
   }
 
+  /**
+   * Returns the document only if it has been modified since the given revision (using If-None-Match).
+   *
+   * @param id            the id
+   * @param knownRevision the revision the caller already knows
+   * @param serializer    the serializer
+   * @param <T>           the object type
+   * @return the doc or null if the document has not been modified (304)
+   *
+   * @throws ActionFailedException
+   */
+  @Nullable
+  public <T> CouchDoc<T> getIfModified( @Nonnull DocId id, @Nonnull Revision knownRevision, @Nonnull JacksonSerializer<T> serializer ) throws ActionFailedException {
+    WebResource.Builder path = getDbRoot().path( id.asString() )
+      .accept( JSON_TYPE )
+      .header( HttpHeaders.IF_NONE_MATCH, new EntityTag( knownRevision.asString() ) );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "GET " + id + " (If-None-Match: " + knownRevision + ")" );
+    }
+
+    ClientResponse response = path.get( ClientResponse.class );
+    try {
+      if ( response.getStatus() == ClientResponse.Status.NOT_MODIFIED.getStatusCode() ) {
+        return null;
+      }
+
+      ActionResponseSerializer.verifyNoError( response );
+      return couchDocSerializer.deserialize( serializer, response.getEntityInputStream() );
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * Returns the documents for all given ids using one single request (_all_docs).
+   * Missing and deleted documents do not fail the complete request. Instead they are reported
+   * within the responses.
+   *
+   * @param ids        the ids
+   * @param serializer the serializer
+   * @param <T>        the object type
+   * @return the responses - one for each id (in the same order as the ids)
+   *
+   * @throws ActionFailedException if the complete request has failed
+   */
+  @Nonnull
+  public <T> List<? extends BulkDocResponse<T>> getAll( @Nonnull Collection<? extends DocId> ids, @Nonnull JacksonSerializer<T> serializer ) throws ActionFailedException, IOException {
+    WebResource path = getDbRoot().path( PATH_SEGMENT_ALL_DOCS ).queryParam( Options.INCLUDE_DOCS, String.valueOf( true ) );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "POST " + path.toString() + " (" + ids.size() + " keys)" );
+    }
+
+    ByteArrayOutputStream keys = new ByteArrayOutputStream();
+    allDocsSerializer.serializeKeys( ids, keys );
+
+    //Only reads - may be retried
+    path.setProperty( RetryFilter.PROPERTY_IDEMPOTENT, true );
+    ClientResponse clientResponse = path.type( JSON_TYPE ).accept( JSON_TYPE ).post( ClientResponse.class, keys.toByteArray() );
+    try {
+      ActionResponseSerializer.verifyNoError( clientResponse );
+
+      try ( InputStream in = clientResponse.getEntityInputStream() ) {
+        return allDocsSerializer.deserialize( serializer, in );
+      }
+    } finally {
+      clientResponse.close();
+    }
+  }
+
+  /**
+   * Returns the attachment stubs of the given document.
+   * Only the "_attachments" of the document are parsed - the wrapped object is skipped.
+   *
+   * @param docId the doc id
+   * @return the attachment stubs
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public List<? extends CouchDoc.StubbedAttachment> listAttachments( @Nonnull DocId docId ) throws ActionFailedException, IOException {
+    WebResource path = getDbRoot().path( docId.asString() );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "GET " + path.toString() + " (attachments)" );
+    }
+
+    ClientResponse clientResponse = path.accept( JSON_TYPE ).get( ClientResponse.class );
+    try {
+      ActionResponseSerializer.verifyNoError( clientResponse );
+
+      try ( InputStream in = clientResponse.getEntityInputStream() ) {
+        return attachmentStubsSerializer.deserialize( in );
+      }
+    } finally {
+      clientResponse.close();
+    }
+  }
+
+  /**
+   * Returns the attachment stubs for all given documents using one single request (_all_docs).
+   * Only the "_attachments" of the documents are parsed - the wrapped objects are skipped.
+   *
+   * @param ids the ids
+   * @return the stubs for each found document (in the same order as the ids). Missing and deleted documents are not contained
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public Map<DocId, List<? extends CouchDoc.StubbedAttachment>> listAttachments( @Nonnull Collection<? extends DocId> ids ) throws ActionFailedException, IOException {
+    WebResource path = getDbRoot().path( PATH_SEGMENT_ALL_DOCS ).queryParam( Options.INCLUDE_DOCS, String.valueOf( true ) );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "POST " + path.toString() + " (attachments for " + ids.size() + " keys)" );
+    }
+
+    ByteArrayOutputStream keys = new ByteArrayOutputStream();
+    allDocsSerializer.serializeKeys( ids, keys );
+
+    //Only reads - may be retried
+    path.setProperty( RetryFilter.PROPERTY_IDEMPOTENT, true );
+    ClientResponse clientResponse = path.type( JSON_TYPE ).accept( JSON_TYPE ).post( ClientResponse.class, keys.toByteArray() );
+    try {
+      ActionResponseSerializer.verifyNoError( clientResponse );
+
+      try ( InputStream in = clientResponse.getEntityInputStream() ) {
+        return attachmentStubsSerializer.deserializeAllDocs( in );
+      }
+    } finally {
+      clientResponse.close();
+    }
+  }
+
+  /**
+   * Opens the changes feed.
+   * <p>
+   * The returned iterator reads the changes lazily and must be closed to release the connection.
+   * For continuous feeds the iterator blocks until the next change arrives.
+   *
+   * @param options       the options (feed type, since, filter, heartbeat...)
+   * @param docSerializer the serializer for the included docs. If set, include_docs is added automatically
+   * @param <T>           the type of the included docs
+   * @return the (open) change iterator
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public <T> ChangeIterator<T> changes( @Nullable ChangesOptions options, @Nullable JacksonSerializer<T> docSerializer ) throws ActionFailedException, IOException {
+    ChangesOptions localOptions = new ChangesOptions( options );
+    if ( docSerializer != null ) {
+      localOptions.includeDocs( true );
+    }
+
+    MultivaluedMap<String, String> params = new MultivaluedMapImpl();
+    for ( Map.Entry<String, String> paramEntry : localOptions.getParams().entrySet() ) {
+      params.putSingle( paramEntry.getKey(), paramEntry.getValue() );
+    }
+    WebResource path = getDbRoot().path( PATH_SEGMENT_CHANGES ).queryParams( params );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "GET " + path.toString() );
+    }
+
+    //Do not use get(WebResource): Continuous feeds must never be read completely
+    ClientResponse clientResponse = path.accept( JSON_TYPE ).get( ClientResponse.class );
+    ActionResponseSerializer.verifyNoError( clientResponse );
+
+    InputStream in = clientResponse.getEntityInputStream();
+    try {
+      return new ChangeIterator<>( couchDocSerializer, docSerializer, in, localOptions.getFeed() == ChangesOptions.Feed.CONTINUOUS, ConnectionAbortFilter.getConnection( clientResponse ) );
+    } catch ( IOException | RuntimeException e ) {
+      clientResponse.close();
+      throw e;
+    }
+  }
+
   @Override
   @Nonnull
   public ActionResponse delete( @Nonnull DocId id, @Nonnull Revision revision ) throws ActionFailedException {
@@ -372,6 +1051,19 @@ public class CouchDatabase extends AbstractCouchDatabase {
   @Override
   @Nonnull
   public InputStream get( @Nonnull WebResource resource ) throws ActionFailedException {
+    return getEntityInputStream( getResponse( resource ) );
+  }
+
+  /**
+   * Executes a GET request and verifies that no error has been returned
+   *
+   * @param resource the resource
+   * @return the (open) response
+   *
+   * @throws ActionFailedException
+   */
+  @Nonnull
+  private ClientResponse getResponse( @Nonnull WebResource resource ) throws ActionFailedException {
     long start = System.currentTimeMillis();
     if ( LOG.isLoggable( Level.FINE ) ) {
       LOG.fine( "GET " + resource.toString() );
@@ -383,19 +1075,14 @@ public class CouchDatabase extends AbstractCouchDatabase {
     }
 
     ActionResponseSerializer.verifyNoError( response );
+    return response;
+  }
 
+  @Nonnull
+  private static InputStream getEntityInputStream( @Nonnull ClientResponse response ) {
+    //Only the first bytes are kept in memory - the response is still streamed to the caller
     if ( LOG.isLoggable( Level.FINER ) ) {
-      try {
-        byte[] content = ByteStreams.toByteArray( response.getEntityInputStream() );
-        if ( content.length > DEBUG_MAX_LENGTH ) {
-          LOG.finer( "Showing first " + DEBUG_MAX_LENGTH + " bytes:\n" + new String( content ).substring( 0, DEBUG_MAX_LENGTH ) + "..." );
-        } else {
-          LOG.finer( new String( content ) );
-        }
-        return new ByteArrayInputStream( content );
-      } catch ( IOException e ) {
-        throw new RuntimeException( e );
-      }
+      return new LoggingInputStream( response.getEntityInputStream(), LOG, Level.FINER, DEBUG_MAX_LENGTH );
     }
 
     return response.getEntityInputStream();
@@ -407,9 +1094,289 @@ public class CouchDatabase extends AbstractCouchDatabase {
     return get( getDbRoot().path( docId.asString() ).path( attachmentId.asString() ) );
   }
 
+  /**
+   * Returns a part of the attachment (using a Range request).
+   * If the server ignores the range (e.g. for compressed attachments), the skipped bytes are read and discarded.
+   * The rest of the attachment is not read in that case: The connection is aborted when the stream is closed (if a pooled transport is used).
+   * <p>
+   * If the offset is at or beyond the end of the attachment, an empty stream is returned - whether the server supports the range or not.
+   *
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @param offset       the offset of the first byte
+   * @param length       the (max) number of bytes. Less bytes are returned if the attachment ends earlier
+   * @return the input stream that contains the requested part (empty if the offset is beyond the end of the attachment)
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public InputStream get( @Nonnull DocId docId, @Nonnull AttachmentId attachmentId, long offset, long length ) throws ActionFailedException, IOException {
+    if ( offset < 0 || length <= 0 ) {
+      throw new IllegalArgumentException( "Invalid range <" + offset + "> - <" + length + ">" );
+    }
+
+    WebResource resource = getDbRoot().path( docId.asString() ).path( attachmentId.asString() );
+    String range = "bytes=" + offset + "-" + ( offset + length - 1 );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "GET " + resource.toString() + " (" + HEADER_RANGE + ": " + range + ")" );
+    }
+
+    final ClientResponse response = resource
+      .header( HEADER_RANGE, range )
+      .header( HttpHeaders.ACCEPT_ENCODING, ENCODING_IDENTITY )
+      .get( ClientResponse.class );
+
+    //The offset is beyond the end of the attachment: Same result as if the range had been ignored
+    if ( response.getStatus() == ClientResponse.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode() ) {
+      response.close();
+      return new ByteArrayInputStream( new byte[0] );
+    }
+    ActionResponseSerializer.verifyNoError( response );
+
+    InputStream in = response.getEntityInputStream();
+    if ( response.getStatus() == ClientResponse.Status.PARTIAL_CONTENT.getStatusCode() ) {
+      return ByteStreams.limit( in, length );
+    }
+
+    //The range has been ignored - the complete attachment is sent
+    try {
+      ByteStreams.skipFully( in, offset );
+    } catch ( EOFException ignore ) {
+      //The offset is beyond the end of the attachment
+    } catch ( IOException | RuntimeException e ) {
+      response.close();
+      throw e;
+    }
+
+    //Closing would read the remaining attachment (behind the requested range) - unless the range covers the end
+    int totalLength = response.getLength();
+    if ( totalLength >= 0 && offset + length >= totalLength ) {
+      return ByteStreams.limit( in, length );
+    }
+
+    return new FilterInputStream( ByteStreams.limit( in, length ) ) {
+      @Override
+      public void close() throws IOException {
+        if ( !ConnectionAbortFilter.abort( response ) ) {
+          super.close();
+          return;
+        }
+
+        try {
+          super.close();
+        } catch ( IOException ignore ) {
+          //The connection has been shut down - closing the remaining stream is expected to fail
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the length of the attachment (using a HEAD request)
+   *
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @return the length of the attachment in bytes or -1 if the server has not reported the length
+   *
+   * @throws ActionFailedException
+   */
+  public long getLength( @Nonnull DocId docId, @Nonnull AttachmentId attachmentId ) throws ActionFailedException {
+    WebResource.Builder path = getDbRoot()
+      .path( docId.asString() )
+      .path( attachmentId.asString() )
+      .header( HttpHeaders.ACCEPT_ENCODING, ENCODING_IDENTITY );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "HEAD " + docId + "/" + attachmentId );
+    }
+
+    ClientResponse response = path.head();
+    try {
+      ActionResponseSerializer.verifyNoError( response );
+      return response.getLength();
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * Opens a read only channel for the attachment.
+   * Each read fetches (at most) the next chunk using a Range request. Therefore a reader may jump
+   * to any position without downloading the complete attachment.
+   *
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @return the channel
+   *
+   * @throws ActionFailedException
+   */
+  @Nonnull
+  public AttachmentChannel openChannel( @Nonnull DocId docId, @Nonnull AttachmentId attachmentId ) throws ActionFailedException {
+    long length = getLength( docId, attachmentId );
+    if ( length < 0 ) {
+      throw new IllegalStateException( "Length of attachment <" + attachmentId + "> is unknown" );
+    }
+    return new AttachmentChannel( this, docId, attachmentId, length, AttachmentChannel.DEFAULT_CHUNK_SIZE );
+  }
+
+  /**
+   * Writes the attachment into the given file. An existing file is replaced.
+   *
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @param target       the target file
+   * @return the number of bytes that have been written
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  public long get( @Nonnull DocId docId, @Nonnull AttachmentId attachmentId, @Nonnull Path target ) throws ActionFailedException, IOException {
+    try ( FileChannel channel = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+      return get( docId, attachmentId, channel );
+    }
+  }
+
+  /**
+   * Writes the attachment into the given file channel (starting at the current position of the channel).
+   * The content is transferred directly from the response into the channel.
+   *
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @param target       the target channel (is not closed). Must not be positioned beyond its size
+   * @return the number of bytes that have been written
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   * @throws IllegalArgumentException if the channel is positioned beyond its size (nothing could be transferred)
+   */
+  public long get( @Nonnull DocId docId, @Nonnull AttachmentId attachmentId, @Nonnull FileChannel target ) throws ActionFailedException, IOException {
+    long start = target.position();
+    long size = target.size();
+    if ( start > size ) {
+      throw new IllegalArgumentException( "Position <" + start + "> is beyond the size <" + size + "> of the channel" );
+    }
+
+    try ( InputStream in = get( docId, attachmentId ) ) {
+      ReadableByteChannel source = Channels.newChannel( in );
+
+      long position = start;
+      long transferred;
+      while ( ( transferred = target.transferFrom( source, position, TRANSFER_CHUNK_SIZE ) ) > 0 ) {
+        position += transferred;
+      }
+
+      target.position( position );
+      return position - start;
+    }
+  }
+
+  /**
+   * Reads the attachment into a (direct) byte buffer.
+   *
+   * @param docId        the doc id
+   * @param attachmentId the attachment id
+   * @return the buffer (flipped - ready to be read)
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   * @throws IllegalStateException if the attachment is larger than {@link #MAX_BUFFER_SIZE}
+   */
+  @Nonnull
+  public ByteBuffer getBuffer( @Nonnull DocId docId, @Nonnull AttachmentId attachmentId ) throws ActionFailedException, IOException {
+    WebResource resource = getDbRoot().path( docId.asString() ).path( attachmentId.asString() );
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "GET " + resource.toString() );
+    }
+
+    ClientResponse response = resource.get( ClientResponse.class );
+    try {
+      ActionResponseSerializer.verifyNoError( response );
+
+      try ( InputStream in = response.getEntityInputStream() ) {
+        ReadableByteChannel source = Channels.newChannel( in );
+
+        //The length is only a hint (e.g. the length of the compressed content). One additional byte avoids growing the buffer just to detect the end of the stream
+        int length = response.getLength();
+        ByteBuffer buffer = ByteBuffer.allocateDirect( length >= 0 ? ( int ) Math.min( length + 1L, MAX_BUFFER_SIZE ) : DEFAULT_BUFFER_SIZE );
+        while ( source.read( buffer ) >= 0 ) {
+          if ( !buffer.hasRemaining() ) {
+            if ( buffer.capacity() >= MAX_BUFFER_SIZE ) {
+              //The buffer can not grow any more - only the end of the stream is acceptable
+              if ( in.read() < 0 ) {
+                break;
+              }
+              throw new IllegalStateException( "Attachment <" + attachmentId + "> is larger than the max buffer size <" + MAX_BUFFER_SIZE + ">" );
+            }
+
+            ByteBuffer larger = ByteBuffer.allocateDirect( ( int ) Math.min( buffer.capacity() * 2L, MAX_BUFFER_SIZE ) );
+            buffer.flip();
+            larger.put( buffer );
+            buffer = larger;
+          }
+        }
+
+        buffer.flip();
+        return buffer;
+      }
+    } finally {
+      response.close();
+    }
+  }
+
   @Override
   @Nonnull
   public InputStream query( @Nonnull ViewDescriptor viewDescriptor, @Nullable Options options ) throws ActionFailedException {
+    return get( new TraceContext( options ).attachTo( viewPath( viewDescriptor, options ) ) );
+  }
+
+  /**
+   * Queries the given view only if the view has changed since the given ETag (using If-None-Match).
+   * CouchDB derives the ETag of a view from the update sequence of its index.
+   * <p>
+   * The complete response is read into memory.
+   *
+   * @param viewDescriptor describes the view
+   * @param options        the options for the query
+   * @param knownETag      the (unquoted) ETag of the response the caller already knows (null to query unconditionally)
+   * @return the content or null if the view has not been modified (304)
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nullable
+  public TaggedContent queryIfModified( @Nonnull ViewDescriptor viewDescriptor, @Nullable Options options, @Nullable String knownETag ) throws ActionFailedException, IOException {
+    WebResource viewPath = new TraceContext( options ).attachTo( viewPath( viewDescriptor, options ) );
+    WebResource.Builder builder = viewPath.accept( JSON_TYPE );
+    if ( knownETag != null ) {
+      builder.header( HttpHeaders.IF_NONE_MATCH, new EntityTag( knownETag ) );
+    }
+
+    if ( LOG.isLoggable( Level.FINE ) ) {
+      LOG.fine( "GET " + viewPath.toString() + " (If-None-Match: " + knownETag + ")" );
+    }
+
+    ClientResponse response = builder.get( ClientResponse.class );
+    try {
+      if ( knownETag != null && response.getStatus() == ClientResponse.Status.NOT_MODIFIED.getStatusCode() ) {
+        return null;
+      }
+
+      ActionResponseSerializer.verifyNoError( response );
+
+      @Nullable EntityTag entityTag = response.getEntityTag();
+      try ( InputStream in = response.getEntityInputStream() ) {
+        return new TaggedContent( ByteStreams.toByteArray( in ), entityTag == null ? null : entityTag.getValue() );
+      }
+    } finally {
+      response.close();
+    }
+  }
+
+  @Nonnull
+  private WebResource viewPath( @Nonnull ViewDescriptor viewDescriptor, @Nullable Options options ) {
     WebResource viewPath = getDbRoot().path( PATH_SEGMENT_DESIGN ).path( viewDescriptor.getDesignDocumentId() ).path( PATH_SEGMENT_VIEW ).path( viewDescriptor.getViewId() );
 
     if ( options != null ) {
@@ -420,7 +1387,6 @@ public class CouchDatabase extends AbstractCouchDatabase {
 
       viewPath = viewPath.queryParams( params );
     }
-
-    return get( viewPath );
+    return viewPath;
   }
 }
@@ -35,15 +35,102 @@ import com.cedarsoft.couchdb.core.BasicCouchServer;
 import com.cedarsoft.couchdb.io.ActionResponseSerializer;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.filter.ClientFilter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
  */
-public class CouchServer extends BasicCouchServer {
+public class CouchServer extends BasicCouchServer implements Closeable {
+  /**
+   * Creates a new server with a pooled transport.
+   * All databases returned by {@link #getDatabase(String)} share the connection pool of this server.
+   *
+   * @param serverUri the server uri
+   * @param config    the transport config
+   * @param filters   the (optional) filters
+   * @return the server
+   */
+  @Nonnull
+  public static CouchServer create( @Nonnull URI serverUri, @Nonnull TransportConfig config, @Nullable ClientFilter... filters ) {
+    HttpTransport transport = new HttpTransport( config, filters );
+    return new CouchServer( transport.getClient().resource( serverUri ), transport );
+  }
+
+  @Nullable
+  private final HttpTransport transport;
+
   public CouchServer( @Nonnull WebResource root ) {
+    this( root, null );
+  }
+
+  public CouchServer( @Nonnull WebResource root, @Nullable HttpTransport transport ) {
     super( root );
+    this.transport = transport;
+  }
+
+  /**
+   * Returns a database object that shares the client (and therefore the connection pool) of this server.
+   * Does *not* create the database on the server.
+   *
+   * @param dbName the database name
+   * @return the database
+   */
+  @Nonnull
+  public CouchDatabase getDatabase( @Nonnull String dbName ) {
+    return new CouchDatabase( root.path( dbName ), transport );
+  }
+
+  /**
+   * Returns an asynchronous database that shares the connection pool of this server.
+   * All asynchronous databases of this server share one {@link ConcurrencyLimiter} (if the server has a pooled transport).
+   *
+   * @param dbName   the database name
+   * @param executor the executor (e.g. {@link RequestExecutors#newVirtualThreadExecutor()})
+   * @return the asynchronous database
+   */
+  @Nonnull
+  public AsyncCouchDatabase getAsyncDatabase( @Nonnull String dbName, @Nonnull ExecutorService executor ) {
+    return new AsyncCouchDatabase( getDatabase( dbName ), executor, transport == null ? null : transport.getLimiter() );
+  }
+
+  /**
+   * Returns the pooled transport (if this server has been created with one)
+   *
+   * @return the transport or null
+   */
+  @Nullable
+  public HttpTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Returns the current connection pool statistics
+   *
+   * @return the statistics
+   * @throws IllegalStateException if this server has not been created with a pooled transport
+   */
+  @Nonnull
+  public ConnectionPoolStats getPoolStats() throws IllegalStateException {
+    if ( transport == null ) {
+      throw new IllegalStateException( "No pooled transport available" );
+    }
+    return transport.getStats();
+  }
+
+  /**
+   * Closes the transport (if there is one). All databases that share the transport can no longer be used.
+   */
+  @Override
+  public void close() {
+    if ( transport != null ) {
+      transport.close();
+    }
   }
 
   public void deleteDatabase( @Nonnull String dbName ) throws ActionFailedException {
@@ -1,10 +1,23 @@
 package com.cedarsoft.couchdb;
 
+import com.cedarsoft.couchdb.core.Key;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.cedarsoft.serialization.jackson.JacksonSupport;
 import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Charsets;
+import com.sun.jersey.core.util.Base64;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.List;
 
@@ -12,6 +25,12 @@ import java.util.List;
  * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
  */
 public class CouchUtils {
+  /**
+   * The prefix of md5 digests of attachments
+   */
+  @Nonnull
+  public static final String DIGEST_PREFIX_MD5 = "md5-";
+
   private CouchUtils() {
   }
 
@@ -24,4 +43,75 @@ public class CouchUtils {
       return ( Collection<? extends String> ) dbs;
     }
   }
+
+  /**
+   * Serializes the given (deserialized) key of a row. The returned key can be used for queries (e.g. as start key)
+   *
+   * @param key           the key
+   * @param keySerializer the serializer for the key
+   * @param <K>           the type of the key
+   * @return the key
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public static <K> Key toKey( @Nonnull K key, @Nonnull JacksonSerializer<? super K> keySerializer ) throws IOException {
+    StringWriter out = new StringWriter();
+    try ( JsonGenerator generator = JacksonSupport.getJsonFactory().createJsonGenerator( out ) ) {
+      keySerializer.serialize( key, generator );
+    }
+    return new Key( out.toString() );
+  }
+
+  /**
+   * Calculates the digest for the given file - in the format that is used by CouchDB for attachments ("md5-" + base64)
+   *
+   * @param file the file
+   * @return the digest
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public static String md5Digest( @Nonnull Path file ) throws IOException {
+    MessageDigest digest = createMd5();
+
+    try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+      ByteBuffer buffer = ByteBuffer.allocate( 64 * 1024 );
+      while ( channel.read( buffer ) >= 0 ) {
+        buffer.flip();
+        digest.update( buffer );
+        buffer.clear();
+      }
+    }
+
+    return toDigestString( digest );
+  }
+
+  /**
+   * Calculates the digest for the remaining content of the given buffer - in the format that is used by CouchDB for attachments ("md5-" + base64).
+   * The position of the buffer is not modified.
+   *
+   * @param content the content
+   * @return the digest
+   */
+  @Nonnull
+  public static String md5Digest( @Nonnull ByteBuffer content ) {
+    MessageDigest digest = createMd5();
+    digest.update( content.duplicate() );
+    return toDigestString( digest );
+  }
+
+  @Nonnull
+  private static MessageDigest createMd5() {
+    try {
+      return MessageDigest.getInstance( "MD5" );
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new RuntimeException( e );
+    }
+  }
+
+  @Nonnull
+  private static String toDigestString( @Nonnull MessageDigest digest ) {
+    return DIGEST_PREFIX_MD5 + new String( Base64.encode( digest.digest() ), Charsets.US_ASCII );
+  }
 }
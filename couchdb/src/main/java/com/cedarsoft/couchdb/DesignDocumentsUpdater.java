@@ -37,7 +37,6 @@ import com.cedarsoft.couchdb.core.View;
 import com.cedarsoft.couchdb.io.ActionResponseSerializer;
 import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
 import com.cedarsoft.serialization.jackson.JacksonSupport;
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
@@ -82,7 +81,7 @@ public class DesignDocumentsUpdater {
   public static String createJson( @Nonnull DesignDocument designDocument, @Nullable Revision revision ) throws IOException {
     //noinspection TypeMayBeWeakened
     StringWriter writer = new StringWriter();
-    JsonGenerator generator = new JsonFactory().createJsonGenerator( writer );
+    JsonGenerator generator = JacksonSupport.getJsonFactory().createJsonGenerator( writer );
     generator.writeStartObject();
 
     generator.writeStringField( "_id", designDocument.getId() );
@@ -170,9 +169,8 @@ public class DesignDocumentsUpdater {
         throw new IllegalStateException( "Invalid response: " + response.getStatus() + ": " + response.getEntity( String.class ) );
       }
 
-      JsonFactory jsonFactory = JacksonSupport.getJsonFactory();
       try ( InputStream entityInputStream = response.getEntityInputStream() ) {
-        JsonParser parser = jsonFactory.createJsonParser( entityInputStream );
+        JsonParser parser = JacksonSupport.getJsonFactory().createJsonParser( entityInputStream );
         JacksonParserWrapper wrapper = new JacksonParserWrapper( parser );
 
         wrapper.nextToken( JsonToken.START_OBJECT );
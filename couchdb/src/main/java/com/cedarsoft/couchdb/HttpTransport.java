@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.cedarsoft.couchdb.circuit.CircuitBreakerFilter;
+import com.cedarsoft.couchdb.circuit.CircuitBreakerPolicy;
+import com.cedarsoft.couchdb.metrics.CouchMetrics;
+import com.cedarsoft.couchdb.metrics.MetricsFilter;
+import com.cedarsoft.couchdb.retry.RetryFilter;
+import com.cedarsoft.couchdb.retry.RetryPolicy;
+import com.cedarsoft.couchdb.trace.RequestTracer;
+import com.cedarsoft.couchdb.trace.TracingFilter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
+import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pooled http transport. Owns the jersey client and the connection pool.
+ * One transport should be shared by all databases of one server.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class HttpTransport implements Closeable {
+  @Nonnull
+  private final TransportConfig config;
+  @Nonnull
+  private final PoolingClientConnectionManager connectionManager;
+  @Nonnull
+  private final ApacheHttpClient4 client;
+  @Nullable
+  private final ScheduledExecutorService evictor;
+  @Nonnull
+  private final ConcurrencyLimiter limiter;
+  @Nullable
+  private final CircuitBreakerFilter circuitBreakerFilter;
+
+  public HttpTransport( @Nonnull TransportConfig config, @Nullable ClientFilter... filters ) {
+    this.config = new TransportConfig( config );
+
+    connectionManager = new PoolingClientConnectionManager();
+    connectionManager.setMaxTotal( this.config.getMaxTotal() );
+    connectionManager.setDefaultMaxPerRoute( this.config.getMaxPerRoute() );
+    limiter = new ConcurrencyLimiter( this.config.getMaxConcurrentRequests() );
+
+    HttpParams httpParams = new BasicHttpParams();
+    HttpConnectionParams.setTcpNoDelay( httpParams, this.config.isTcpNoDelay() );
+    HttpConnectionParams.setConnectionTimeout( httpParams, toInt( this.config.getConnectTimeout() ) );
+    HttpConnectionParams.setSoTimeout( httpParams, toInt( this.config.getReadTimeout() ) );
+
+    DefaultApacheHttpClient4Config clientConfig = new DefaultApacheHttpClient4Config();
+    clientConfig.getProperties().put( ApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER, connectionManager );
+    clientConfig.getProperties().put( ApacheHttpClient4Config.PROPERTY_HTTP_PARAMS, httpParams );
+
+    client = ApacheHttpClient4.create( clientConfig );
+
+    HttpClient httpClient = client.getClientHandler().getHttpClient();
+    if ( httpClient instanceof AbstractHttpClient ) {
+      ( ( AbstractHttpClient ) httpClient ).setKeepAliveStrategy( new FallbackKeepAliveStrategy( this.config.getKeepAlive() ) );
+
+      //Added first: Is called last - therefore the connection is attached to the response directly
+      ConnectionAbortFilter connectionAbortFilter = new ConnectionAbortFilter();
+      connectionAbortFilter.install( ( AbstractHttpClient ) httpClient );
+      client.addFilter( connectionAbortFilter );
+    }
+
+    //Added before all other filters: Jersey calls the filters in reverse order. Therefore the bytes are counted as transferred over the wire
+    @Nullable CouchMetrics metrics = this.config.getMetrics();
+    if ( metrics != null ) {
+      client.addFilter( new MetricsFilter( metrics ) );
+    }
+
+    @Nullable RequestTracer tracer = this.config.getTracer();
+    if ( tracer != null ) {
+      client.addFilter( new TracingFilter( tracer ) );
+    }
+
+    //Must be added before the custom filters: Jersey calls the filters in reverse order. Therefore the other filters see the decompressed content
+    if ( this.config.isCompressResponses() ) {
+      client.addFilter( new CompressionFilter( this.config.isCompressRequests() ) );
+    }
+
+    if ( filters != null ) {
+      for ( ClientFilter filter : filters ) {
+        client.addFilter( filter );
+      }
+    }
+
+    //Before the retry filter: Each attempt is recorded and rejected requests are not retried
+    @Nullable CircuitBreakerPolicy circuitBreaker = this.config.getCircuitBreaker();
+    if ( circuitBreaker != null ) {
+      circuitBreakerFilter = new CircuitBreakerFilter( circuitBreaker );
+      client.addFilter( circuitBreakerFilter );
+    } else {
+      circuitBreakerFilter = null;
+    }
+
+    //Must be added last: Is called first - therefore each attempt passes all other filters
+    @Nullable RetryPolicy retryPolicy = this.config.getRetryPolicy();
+    if ( retryPolicy != null ) {
+      client.addFilter( new RetryFilter( retryPolicy, metrics ) );
+    }
+
+    if ( this.config.getEvictionInterval() > 0 ) {
+      evictor = Executors.newSingleThreadScheduledExecutor( new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "couchdb-connection-evictor-%d" ).build() );
+      evictor.scheduleWithFixedDelay( new Runnable() {
+        @Override
+        public void run() {
+          evictConnections();
+        }
+      }, this.config.getEvictionInterval(), this.config.getEvictionInterval(), TimeUnit.MILLISECONDS );
+    } else {
+      evictor = null;
+    }
+  }
+
+  /**
+   * Closes expired connections and connections that have been idle for longer than the configured idle timeout
+   */
+  public void evictConnections() {
+    connectionManager.closeExpiredConnections();
+    if ( config.getIdleTimeout() > 0 ) {
+      connectionManager.closeIdleConnections( config.getIdleTimeout(), TimeUnit.MILLISECONDS );
+    }
+  }
+
+  /**
+   * Returns the statistics for all routes of the pool
+   *
+   * @return the pool statistics
+   */
+  @Nonnull
+  public ConnectionPoolStats getStats() {
+    PoolStats stats = connectionManager.getTotalStats();
+    return new ConnectionPoolStats( stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax() );
+  }
+
+  /**
+   * Returns the limiter that should be used by all (asynchronous) callers of this transport
+   *
+   * @return the limiter
+   */
+  @Nonnull
+  public ConcurrencyLimiter getLimiter() {
+    return limiter;
+  }
+
+  /**
+   * Returns the circuit breakers
+   *
+   * @return the circuit breaker filter or null if no circuit breaker has been configured
+   */
+  @Nullable
+  public CircuitBreakerFilter getCircuitBreakerFilter() {
+    return circuitBreakerFilter;
+  }
+
+  @Nonnull
+  public Client getClient() {
+    return client;
+  }
+
+  @Nonnull
+  public TransportConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * Stops the eviction thread and shuts down the connection pool
+   */
+  @Override
+  public void close() {
+    if ( evictor != null ) {
+      evictor.shutdownNow();
+    }
+    client.destroy();
+    connectionManager.shutdown();
+  }
+
+  private static int toInt( long millis ) {
+    return ( int ) Math.min( millis, Integer.MAX_VALUE );
+  }
+
+  /**
+   * Uses the Keep-Alive header of the server if there is one and falls back to the configured duration otherwise
+   */
+  private static class FallbackKeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+    private final long keepAlive;
+
+    private FallbackKeepAliveStrategy( long keepAlive ) {
+      this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public long getKeepAliveDuration( HttpResponse response, HttpContext context ) {
+      long duration = super.getKeepAliveDuration( response, context );
+      if ( duration > 0 ) {
+        return duration;
+      }
+      return keepAlive;
+    }
+  }
+}
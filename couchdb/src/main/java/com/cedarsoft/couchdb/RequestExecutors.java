@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors for {@link AsyncCouchDatabase}.
+ * <p>
+ * Virtual threads are looked up at runtime since the project is compiled for older JVMs.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RequestExecutors {
+  @Nullable
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactoryMethod();
+
+  private RequestExecutors() {
+  }
+
+  /**
+   * Returns whether the current JVM supports virtual threads
+   *
+   * @return true if virtual threads are supported, false otherwise
+   */
+  public static boolean isVirtualThreadsSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each request.
+   * Falls back to an (unbounded) cached thread pool if the JVM does not support virtual threads.
+   * <p>
+   * Since this executor is unbounded, it should be combined with a {@link ConcurrencyLimiter}.
+   *
+   * @return the executor
+   */
+  @Nonnull
+  public static ExecutorService newVirtualThreadExecutor() {
+    if ( NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null ) {
+      try {
+        return ( ExecutorService ) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke( null );
+      } catch ( IllegalAccessException | InvocationTargetException e ) {
+        throw new IllegalStateException( "Could not create virtual thread executor", e );
+      }
+    }
+
+    return Executors.newCachedThreadPool( new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "couchdb-request-%d" ).build() );
+  }
+
+  @Nullable
+  private static Method findVirtualThreadFactoryMethod() {
+    try {
+      return Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+    } catch ( NoSuchMethodException ignore ) {
+      return null;
+    }
+  }
+}
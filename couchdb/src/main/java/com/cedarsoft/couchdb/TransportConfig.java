@@ -0,0 +1,379 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.cedarsoft.couchdb.circuit.CircuitBreakerPolicy;
+import com.cedarsoft.couchdb.metrics.CouchMetrics;
+import com.cedarsoft.couchdb.retry.RetryPolicy;
+import com.cedarsoft.couchdb.trace.RequestTracer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for the pooled http transport that is used to talk to a couch server.
+ * All durations are stored in milliseconds. A value of 0 disables the corresponding timeout.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class TransportConfig {
+  public static final int DEFAULT_MAX_TOTAL = 100;
+  public static final int DEFAULT_MAX_PER_ROUTE = 100;
+  public static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis( 30 );
+  public static final long DEFAULT_CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis( 10 );
+  public static final long DEFAULT_READ_TIMEOUT = TimeUnit.SECONDS.toMillis( 60 );
+  public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis( 30 );
+  public static final long DEFAULT_EVICTION_INTERVAL = TimeUnit.SECONDS.toMillis( 5 );
+
+  private int maxTotal = DEFAULT_MAX_TOTAL;
+  private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+  private long keepAlive = DEFAULT_KEEP_ALIVE;
+  private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+  private long readTimeout = DEFAULT_READ_TIMEOUT;
+  private boolean tcpNoDelay = true;
+  private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private long evictionInterval = DEFAULT_EVICTION_INTERVAL;
+  private int maxConcurrentRequests = DEFAULT_MAX_TOTAL;
+  private boolean compressResponses;
+  private boolean compressRequests;
+  @Nullable
+  private CouchMetrics metrics;
+  @Nullable
+  private RequestTracer tracer;
+  @Nullable
+  private RetryPolicy retryPolicy;
+  @Nullable
+  private CircuitBreakerPolicy circuitBreaker;
+
+  @Nonnull
+  public static TransportConfig defaults() {
+    return new TransportConfig();
+  }
+
+  public TransportConfig() {
+  }
+
+  public TransportConfig( @Nonnull TransportConfig config ) {
+    this.maxTotal = config.maxTotal;
+    this.maxPerRoute = config.maxPerRoute;
+    this.keepAlive = config.keepAlive;
+    this.connectTimeout = config.connectTimeout;
+    this.readTimeout = config.readTimeout;
+    this.tcpNoDelay = config.tcpNoDelay;
+    this.idleTimeout = config.idleTimeout;
+    this.evictionInterval = config.evictionInterval;
+    this.maxConcurrentRequests = config.maxConcurrentRequests;
+    this.compressResponses = config.compressResponses;
+    this.compressRequests = config.compressRequests;
+    this.metrics = config.metrics;
+    this.tracer = config.tracer;
+    this.retryPolicy = config.retryPolicy;
+    this.circuitBreaker = config.circuitBreaker;
+  }
+
+  /**
+   * Sets the max number of connections in the pool (for all routes)
+   *
+   * @param maxTotal the max number of connections
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig maxTotal( int maxTotal ) {
+    if ( maxTotal < 1 ) {
+      throw new IllegalArgumentException( "Invalid max total <" + maxTotal + ">" );
+    }
+    this.maxTotal = maxTotal;
+    return this;
+  }
+
+  /**
+   * Sets the max number of connections per route (host/port combination)
+   *
+   * @param maxPerRoute the max number of connections per route
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig maxPerRoute( int maxPerRoute ) {
+    if ( maxPerRoute < 1 ) {
+      throw new IllegalArgumentException( "Invalid max per route <" + maxPerRoute + ">" );
+    }
+    this.maxPerRoute = maxPerRoute;
+    return this;
+  }
+
+  /**
+   * Sets how long an idle connection is kept alive if the server does not send a Keep-Alive header
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig keepAlive( long duration, @Nonnull TimeUnit unit ) {
+    this.keepAlive = toMillis( duration, unit );
+    return this;
+  }
+
+  @Nonnull
+  public TransportConfig connectTimeout( long duration, @Nonnull TimeUnit unit ) {
+    this.connectTimeout = toMillis( duration, unit );
+    return this;
+  }
+
+  @Nonnull
+  public TransportConfig readTimeout( long duration, @Nonnull TimeUnit unit ) {
+    this.readTimeout = toMillis( duration, unit );
+    return this;
+  }
+
+  @Nonnull
+  public TransportConfig tcpNoDelay( boolean tcpNoDelay ) {
+    this.tcpNoDelay = tcpNoDelay;
+    return this;
+  }
+
+  /**
+   * Connections that have been idle for longer than the given duration are closed by the eviction thread
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig idleTimeout( long duration, @Nonnull TimeUnit unit ) {
+    this.idleTimeout = toMillis( duration, unit );
+    return this;
+  }
+
+  /**
+   * Sets the interval the eviction thread checks for idle and expired connections.
+   * 0 disables the eviction thread.
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig evictionInterval( long duration, @Nonnull TimeUnit unit ) {
+    this.evictionInterval = toMillis( duration, unit );
+    return this;
+  }
+
+  /**
+   * Sets the max number of requests that are executed at the same time using the {@link ConcurrencyLimiter} of the transport.
+   * Should not be larger than the max number of connections per route.
+   *
+   * @param maxConcurrentRequests the max number of concurrent requests
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig maxConcurrentRequests( int maxConcurrentRequests ) {
+    if ( maxConcurrentRequests < 1 ) {
+      throw new IllegalArgumentException( "Invalid max concurrent requests <" + maxConcurrentRequests + ">" );
+    }
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    return this;
+  }
+
+  /**
+   * Requests gzip compressed responses (Accept-Encoding) and decodes them transparently.
+   * Useful for slow links, since JSON compresses very well.
+   *
+   * @param compressResponses whether compressed responses are requested
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig compressResponses( boolean compressResponses ) {
+    this.compressResponses = compressResponses;
+    return this;
+  }
+
+  /**
+   * Compresses the bodies of JSON requests (documents, bulk updates) using gzip (Content-Encoding).
+   * Implies {@link #compressResponses(boolean)}.
+   *
+   * @param compressRequests whether JSON requests are compressed
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig compressRequests( boolean compressRequests ) {
+    this.compressRequests = compressRequests;
+    return this;
+  }
+
+  /**
+   * Reports the latency, the transferred bytes and the status of each request to the given metrics
+   *
+   * @param metrics the metrics (null to disable)
+   * @return this
+   *
+   * @see com.cedarsoft.couchdb.metrics.InMemoryCouchMetrics
+   */
+  @Nonnull
+  public TransportConfig metrics( @Nullable CouchMetrics metrics ) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Notifies the given tracer about the start, the first byte and the completion of each request
+   *
+   * @param tracer the tracer (null to disable)
+   * @return this
+   *
+   * @see com.cedarsoft.couchdb.trace.SlowRequestLog
+   */
+  @Nonnull
+  public TransportConfig tracer( @Nullable RequestTracer tracer ) {
+    this.tracer = tracer;
+    return this;
+  }
+
+  /**
+   * Retries idempotent requests after transient failures.
+   * The retries are reported to the {@link #metrics(CouchMetrics)} (if configured).
+   *
+   * @param retryPolicy the retry policy (null to disable retries)
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig retryPolicy( @Nullable RetryPolicy retryPolicy ) {
+    this.retryPolicy = retryPolicy;
+    return this;
+  }
+
+  /**
+   * Adds a circuit breaker for each endpoint. Requests to an endpoint that fails or stalls fail fast
+   * instead of blocking the threads and the connection pool.
+   *
+   * @param circuitBreaker the circuit breaker policy (null to disable the circuit breakers)
+   * @return this
+   */
+  @Nonnull
+  public TransportConfig circuitBreaker( @Nullable CircuitBreakerPolicy circuitBreaker ) {
+    this.circuitBreaker = circuitBreaker;
+    return this;
+  }
+
+  public int getMaxTotal() {
+    return maxTotal;
+  }
+
+  public int getMaxPerRoute() {
+    return maxPerRoute;
+  }
+
+  public long getKeepAlive() {
+    return keepAlive;
+  }
+
+  public long getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public long getReadTimeout() {
+    return readTimeout;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  public long getEvictionInterval() {
+    return evictionInterval;
+  }
+
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public boolean isCompressResponses() {
+    return compressResponses || compressRequests;
+  }
+
+  public boolean isCompressRequests() {
+    return compressRequests;
+  }
+
+  @Nullable
+  public CouchMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Nullable
+  public RequestTracer getTracer() {
+    return tracer;
+  }
+
+  @Nullable
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  @Nullable
+  public CircuitBreakerPolicy getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  private static long toMillis( long duration, @Nonnull TimeUnit unit ) {
+    if ( duration < 0 ) {
+      throw new IllegalArgumentException( "Invalid duration <" + duration + ">" );
+    }
+    return unit.toMillis( duration );
+  }
+
+  @Override
+  public String toString() {
+    return "TransportConfig{" +
+      "maxTotal=" + maxTotal +
+      ", maxPerRoute=" + maxPerRoute +
+      ", keepAlive=" + keepAlive +
+      ", connectTimeout=" + connectTimeout +
+      ", readTimeout=" + readTimeout +
+      ", tcpNoDelay=" + tcpNoDelay +
+      ", idleTimeout=" + idleTimeout +
+      ", evictionInterval=" + evictionInterval +
+      ", maxConcurrentRequests=" + maxConcurrentRequests +
+      ", compressResponses=" + compressResponses +
+      ", compressRequests=" + compressRequests +
+      ", metrics=" + metrics +
+      ", tracer=" + tracer +
+      ", retryPolicy=" + retryPolicy +
+      ", circuitBreaker=" + circuitBreaker +
+      '}';
+  }
+}
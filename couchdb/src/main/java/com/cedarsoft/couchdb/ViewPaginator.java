@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Key;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.Row;
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.cedarsoft.couchdb.core.ViewPage;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.couchdb.io.CouchDocSerializer;
+import com.cedarsoft.couchdb.io.RowSerializer;
+import com.cedarsoft.couchdb.io.ViewResponseSerializer;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.util.List;
+
+/**
+ * Iterates over the pages of a view using keyset pagination.
+ * <p>
+ * Each page is requested using the key (and doc id) of the first row of that page as "startkey" (and "startkey_docid").
+ * One additional row is fetched per request - it is the first row of the next page. In contrast to "skip" the cost
+ * of a page does not depend on its position within the view.
+ * <p>
+ * The key serializer must be able to serialize the keys, since the keys are sent back to the server.
+ * Rows are only guaranteed to be unique if the view contains doc ids (i.e. the view is not reduced)
+ * or the keys are unique (e.g. grouped reduced views).
+ * <p>
+ * Failures are reported as RuntimeException (containing the cause).
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @param <D> the type of the document (if there is one)
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see CouchDatabase#paginate(ViewDescriptor, JacksonSerializer, JacksonSerializer, Options, int)
+ */
+public class ViewPaginator<K, V, D> extends AbstractIterator<ViewPage<K, V, D>> {
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final ViewDescriptor viewDescriptor;
+  @Nonnull
+  private final JacksonSerializer<? super K> keySerializer;
+  @Nonnull
+  private final JacksonSerializer<? super V> valueSerializer;
+  @Nullable
+  private final JacksonSerializer<? extends D> docSerializer;
+  @Nonnull
+  private final Options options;
+  private final int pageSize;
+
+  @Nonnull
+  private final ViewResponseSerializer viewResponseSerializer = new ViewResponseSerializer( new RowSerializer( new CouchDocSerializer() ) );
+
+  @Nullable
+  private Key nextStartKey;
+  @Nullable
+  private String nextStartKeyDocId;
+  private int nextIndex;
+  private boolean finished;
+
+  /**
+   * Creates a new paginator
+   *
+   * @param db              the database
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to (de)serialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param docSerializer   the (optional) document serializer. If set, include_docs is added automatically
+   * @param options         the options for the query ("skip" is not supported, "limit" is overwritten)
+   * @param pageSize        the number of rows per page
+   */
+  public ViewPaginator( @Nonnull CouchDatabase db, @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> docSerializer, @Nullable Options options, int pageSize ) {
+    if ( pageSize < 1 ) {
+      throw new IllegalArgumentException( "Invalid page size <" + pageSize + ">" );
+    }
+    if ( options != null && options.get( Options.SKIP ) != null ) {
+      throw new IllegalArgumentException( Options.SKIP + " is not supported" );
+    }
+    if ( docSerializer == null && options != null && options.isIncludeDocs() ) {
+      throw new IllegalArgumentException( Options.INCLUDE_DOCS + " is not supported without a doc serializer" );
+    }
+
+    this.db = db;
+    this.viewDescriptor = viewDescriptor;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.docSerializer = docSerializer;
+    this.options = new Options( options );
+    this.pageSize = pageSize;
+
+    if ( docSerializer != null && !this.options.isGroup() ) {
+      this.options.includeDocs( true ); //force include docs
+    }
+
+    //Continue at the given position
+    @Nullable String startKey = this.options.get( Options.STARTKEY );
+    if ( startKey != null ) {
+      this.nextStartKey = new Key( startKey );
+      this.nextStartKeyDocId = this.options.get( Options.STARTKEY_DOCID );
+    }
+  }
+
+  /**
+   * Continues the scan at the position of a page that has been returned earlier
+   *
+   * @param startKey      the start key (see {@link ViewPage#getNextStartKey()})
+   * @param startKeyDocId the start key doc id (see {@link ViewPage#getNextStartKeyDocId()})
+   * @return this
+   */
+  @Nonnull
+  public ViewPaginator<K, V, D> startAt( @Nonnull Key startKey, @Nullable String startKeyDocId ) {
+    this.nextStartKey = startKey;
+    this.nextStartKeyDocId = startKeyDocId;
+    return this;
+  }
+
+  @Override
+  protected ViewPage<K, V, D> computeNext() {
+    if ( finished ) {
+      return endOfData();
+    }
+
+    try {
+      List<? extends Row<K, V, D>> rows = queryNextRows();
+
+      if ( rows.isEmpty() && nextIndex > 0 ) {
+        finished = true;
+        return endOfData();
+      }
+
+      if ( rows.size() <= pageSize ) {
+        finished = true;
+        return new ViewPage<>( nextIndex++, rows, null, null );
+      }
+
+      //The additional row is the first row of the next page
+      Row<K, V, D> first = rows.get( pageSize );
+      nextStartKey = CouchUtils.toKey( first.getKey(), keySerializer );
+      @Nullable DocId id = first.getId();
+      nextStartKeyDocId = id == null ? null : URLDecoder.decode( id.asString(), Charsets.UTF_8.name() );
+
+      return new ViewPage<>( nextIndex++, rows.subList( 0, pageSize ), nextStartKey, nextStartKeyDocId );
+    } catch ( ActionFailedException | IOException e ) {
+      finished = true;
+      throw new RuntimeException( "Could not query page " + nextIndex + " of " + viewDescriptor + " due to " + e.getMessage(), e );
+    }
+  }
+
+  @Nonnull
+  private List<? extends Row<K, V, D>> queryNextRows() throws ActionFailedException, IOException {
+    Options pageOptions = new Options( options ).limit( pageSize + 1 );
+    if ( nextStartKey != null ) {
+      pageOptions.startKey( nextStartKey );
+      if ( nextStartKeyDocId != null ) {
+        pageOptions.startKeyDocId( nextStartKeyDocId );
+      }
+    }
+
+    try ( InputStream in = db.query( viewDescriptor, pageOptions ) ) {
+      ViewResponse<K, V, D> response = viewResponseSerializer.deserialize( keySerializer, valueSerializer, docSerializer, in );
+      return response.getRows();
+    }
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+}
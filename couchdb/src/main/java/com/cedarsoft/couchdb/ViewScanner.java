@@ -0,0 +1,392 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.Key;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.Row;
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.cedarsoft.couchdb.io.RowIterator;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scans a complete view using several concurrent requests.
+ * <p>
+ * The key space is split into ranges ("startkey"/"endkey") at the given split points. The split points are either
+ * provided by the caller (e.g. known prefixes) or sampled from the view ({@link #sampleSplitPoints(int)}).
+ * Each range is streamed using its own connection - therefore the number of ranges that are scanned at the same
+ * time is limited by the executor and the connection pool.
+ * <p>
+ * The rows can be delivered
+ * <ul>
+ * <li>unordered: The consumer is called concurrently from the threads of the executor as soon as a row arrives</li>
+ * <li>ordered: The consumer is called from the calling thread in key order. The rows of later ranges
+ * are buffered (up to {@link #queueSize(int)} rows per range) until all previous ranges have been consumed</li>
+ * </ul>
+ * Included docs, "skip", "limit" and "descending" are not supported.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ViewScanner<K, V> {
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  /**
+   * The interval (in milliseconds) blocked workers and consumers check for cancellation/failures
+   */
+  private static final long POLL_INTERVAL = 100;
+
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final ViewDescriptor viewDescriptor;
+  @Nonnull
+  private final JacksonSerializer<? super K> keySerializer;
+  @Nonnull
+  private final JacksonSerializer<? super V> valueSerializer;
+  @Nonnull
+  private final Options options;
+  @Nonnull
+  private final ExecutorService executor;
+
+  private int queueSize = DEFAULT_QUEUE_SIZE;
+
+  /**
+   * Creates a new scanner
+   *
+   * @param db              the database
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to (de)serialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param options         the (optional) options. A start key and end key limit the scanned key space
+   * @param executor        the executor the ranges are scanned on
+   */
+  public ViewScanner( @Nonnull CouchDatabase db, @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable Options options, @Nonnull ExecutorService executor ) {
+    if ( options != null ) {
+      for ( String unsupported : new String[]{Options.SKIP, Options.LIMIT, Options.STARTKEY_DOCID, Options.ENDKEY_DOCID} ) {
+        if ( options.get( unsupported ) != null ) {
+          throw new IllegalArgumentException( unsupported + " is not supported" );
+        }
+      }
+      if ( Boolean.TRUE.toString().equals( options.get( Options.DESCENDING ) ) ) {
+        throw new IllegalArgumentException( Options.DESCENDING + " is not supported" );
+      }
+      if ( options.isIncludeDocs() ) {
+        throw new IllegalArgumentException( Options.INCLUDE_DOCS + " is not supported" );
+      }
+    }
+
+    this.db = db;
+    this.viewDescriptor = viewDescriptor;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.options = new Options( options );
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the max number of rows that are buffered per range when scanning ordered
+   *
+   * @param queueSize the queue size
+   * @return this
+   */
+  @Nonnull
+  public ViewScanner<K, V> queueSize( int queueSize ) {
+    if ( queueSize < 1 ) {
+      throw new IllegalArgumentException( "Invalid queue size <" + queueSize + ">" );
+    }
+    this.queueSize = queueSize;
+    return this;
+  }
+
+  /**
+   * Samples split points that divide the view into (roughly) equally sized ranges.
+   * <p>
+   * Each split point is read using one request with "skip". Therefore sampling is only cheap compared to the scan itself.
+   * Reduced views and options containing an end key are not supported.
+   *
+   * @param partitions the number of ranges
+   * @return the split points (at most partitions - 1)
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public List<Key> sampleSplitPoints( int partitions ) throws ActionFailedException, IOException {
+    if ( partitions < 1 ) {
+      throw new IllegalArgumentException( "Invalid partitions <" + partitions + ">" );
+    }
+    if ( options.get( Options.ENDKEY ) != null ) {
+      throw new IllegalArgumentException( Options.ENDKEY + " is not supported for sampling" );
+    }
+
+    int totalRows;
+    int offset;
+    try ( RowIterator<K, V, Void> iterator = db.queryStream( viewDescriptor, keySerializer, valueSerializer, new Options( options ).limit( 0 ) ) ) {
+      totalRows = iterator.getTotalRows();
+      offset = iterator.getOffset();
+    }
+    if ( totalRows < 0 || offset < 0 ) {
+      throw new IllegalStateException( "Could not sample " + viewDescriptor + ": No total rows available" );
+    }
+
+    int rows = totalRows - offset;
+    List<Key> splitPoints = new ArrayList<>();
+    for ( int i = 1; i < partitions; i++ ) {
+      int skip = ( int ) ( ( long ) rows * i / partitions );
+      try ( RowIterator<K, V, Void> iterator = db.queryStream( viewDescriptor, keySerializer, valueSerializer, new Options( options ).skip( skip ).limit( 1 ) ) ) {
+        if ( !iterator.hasNext() ) {
+          break;
+        }
+
+        Key splitPoint = CouchUtils.toKey( iterator.next().getKey(), keySerializer );
+        //Skip duplicates - the resulting ranges would be empty
+        if ( splitPoints.isEmpty() || !splitPoints.get( splitPoints.size() - 1 ).equals( splitPoint ) ) {
+          splitPoints.add( splitPoint );
+        }
+      }
+    }
+    return splitPoints;
+  }
+
+  /**
+   * Creates the options for the ranges that are defined by the given split points.
+   * Each split point is the (inclusive) start of one range and the (exclusive) end of the previous range.
+   *
+   * @param splitPoints the split points (must be sorted by the view collation)
+   * @return the options for each range (splitPoints.size() + 1 entries)
+   */
+  @Nonnull
+  public List<Options> createRanges( @Nonnull List<? extends Key> splitPoints ) {
+    List<Options> ranges = new ArrayList<>();
+
+    for ( int i = 0; i <= splitPoints.size(); i++ ) {
+      Options range = new Options( options );
+      if ( i > 0 ) {
+        range.startKey( splitPoints.get( i - 1 ) );
+      }
+      if ( i < splitPoints.size() ) {
+        range.endKey( splitPoints.get( i ) ).inclusiveEnd( false );
+      }
+      ranges.add( range );
+    }
+
+    return ranges;
+  }
+
+  /**
+   * Scans the ranges concurrently. The consumer is called from the threads of the executor and therefore must be thread safe.
+   *
+   * @param splitPoints the split points (see {@link #createRanges(List)})
+   * @param consumer    the consumer
+   * @return the number of scanned rows
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public long scanUnordered( @Nonnull List<? extends Key> splitPoints, @Nonnull final RowConsumer<K, V> consumer ) throws ActionFailedException, IOException, InterruptedException {
+    CompletionService<Long> completionService = new ExecutorCompletionService<>( executor );
+    List<Future<Long>> futures = new ArrayList<>();
+
+    try {
+      for ( final Options range : createRanges( splitPoints ) ) {
+        futures.add( completionService.submit( new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            long count = 0;
+            try ( RowIterator<K, V, Void> iterator = db.queryStream( viewDescriptor, keySerializer, valueSerializer, range ) ) {
+              while ( iterator.hasNext() ) {
+                verifyNotInterrupted();
+                consumer.consume( iterator.next() );
+                count++;
+              }
+            }
+            return count;
+          }
+        } ) );
+      }
+
+      //Fail as soon as the first range fails
+      long count = 0;
+      for ( int i = 0; i < futures.size(); i++ ) {
+        count += getResult( completionService.take() );
+      }
+      return count;
+    } finally {
+      cancel( futures );
+    }
+  }
+
+  /**
+   * Scans the ranges concurrently. The consumer is called from the current thread in key order.
+   *
+   * @param splitPoints the split points (see {@link #createRanges(List)})
+   * @param consumer    the consumer
+   * @return the number of scanned rows
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public long scanOrdered( @Nonnull List<? extends Key> splitPoints, @Nonnull RowConsumer<K, V> consumer ) throws ActionFailedException, IOException, InterruptedException {
+    List<BlockingQueue<Optional<Row<K, V, Void>>>> queues = new ArrayList<>();
+    List<Future<Void>> futures = new ArrayList<>();
+    final AtomicBoolean cancelled = new AtomicBoolean();
+
+    try {
+      for ( final Options range : createRanges( splitPoints ) ) {
+        final BlockingQueue<Optional<Row<K, V, Void>>> queue = new ArrayBlockingQueue<>( queueSize );
+        queues.add( queue );
+
+        futures.add( executor.submit( new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try ( RowIterator<K, V, Void> iterator = db.queryStream( viewDescriptor, keySerializer, valueSerializer, range ) ) {
+              while ( iterator.hasNext() ) {
+                offer( queue, Optional.of( iterator.next() ), cancelled );
+              }
+            }
+            //Marks the end of the range. Failed ranges do not add the marker - the failure is detected by the consumer
+            offer( queue, Optional.<Row<K, V, Void>>absent(), cancelled );
+            return null;
+          }
+        } ) );
+      }
+
+      //The ranges are sorted - therefore consuming one range after the other results in key order
+      long count = 0;
+      for ( int i = 0; i < queues.size(); i++ ) {
+        BlockingQueue<Optional<Row<K, V, Void>>> queue = queues.get( i );
+        Future<Void> future = futures.get( i );
+
+        Optional<Row<K, V, Void>> row;
+        while ( ( row = take( queue, future ) ).isPresent() ) {
+          consumer.consume( row.get() );
+          count++;
+        }
+
+        //Fails if the range has failed
+        getResult( future );
+      }
+      return count;
+    } finally {
+      //Workers that are blocked on a full queue stop within the poll interval
+      cancelled.set( true );
+      cancel( futures );
+      for ( BlockingQueue<?> queue : queues ) {
+        queue.clear();
+      }
+    }
+  }
+
+  /**
+   * Adds the element to the queue. Waits while the queue is full - until the scan has been cancelled.
+   */
+  private static <T> void offer( @Nonnull BlockingQueue<T> queue, @Nonnull T element, @Nonnull AtomicBoolean cancelled ) throws InterruptedException, InterruptedIOException {
+    do {
+      if ( cancelled.get() ) {
+        throw new InterruptedIOException( "Scan has been aborted" );
+      }
+    } while ( !queue.offer( element, POLL_INTERVAL, TimeUnit.MILLISECONDS ) );
+  }
+
+  /**
+   * Takes the next element from the queue of the given range.
+   * A failed range does not add the end marker - therefore the worker is checked while waiting.
+   */
+  @Nonnull
+  private static <T> Optional<T> take( @Nonnull BlockingQueue<Optional<T>> queue, @Nonnull Future<?> worker ) throws ActionFailedException, IOException, InterruptedException {
+    while ( true ) {
+      @Nullable Optional<T> element = queue.poll( POLL_INTERVAL, TimeUnit.MILLISECONDS );
+      if ( element != null ) {
+        return element;
+      }
+
+      //A successful worker adds the end marker before it finishes
+      if ( worker.isDone() && queue.isEmpty() ) {
+        getResult( worker );
+        return Optional.absent();
+      }
+    }
+  }
+
+  private static void verifyNotInterrupted() throws InterruptedIOException {
+    if ( Thread.currentThread().isInterrupted() ) {
+      throw new InterruptedIOException( "Scan has been aborted" );
+    }
+  }
+
+  private static <T> T getResult( @Nonnull Future<T> future ) throws ActionFailedException, IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch ( ExecutionException e ) {
+      Throwable cause = e.getCause();
+      Throwables.propagateIfInstanceOf( cause, ActionFailedException.class );
+      Throwables.propagateIfInstanceOf( cause, IOException.class );
+      Throwables.propagateIfInstanceOf( cause, InterruptedException.class );
+      throw Throwables.propagate( cause );
+    }
+  }
+
+  private static void cancel( @Nonnull List<? extends Future<?>> futures ) {
+    for ( Future<?> future : futures ) {
+      future.cancel( true );
+    }
+  }
+
+  @Nonnull
+  public ViewDescriptor getViewDescriptor() {
+    return viewDescriptor;
+  }
+}
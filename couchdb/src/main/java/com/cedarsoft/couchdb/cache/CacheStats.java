@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.cache;
+
+/**
+ * Statistics of a cache
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class CacheStats {
+  private final long hits;
+  private final long misses;
+  private final long revalidations;
+  private final long evictions;
+  private final long size;
+
+  public CacheStats( long hits, long misses, long revalidations, long evictions, long size ) {
+    this.hits = hits;
+    this.misses = misses;
+    this.revalidations = revalidations;
+    this.evictions = evictions;
+    this.size = size;
+  }
+
+  /**
+   * Returns the number of requests that have been answered from the cache (including successful revalidations)
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of requests that required the complete document to be fetched from the server
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of revalidations (conditional requests).
+   * Each revalidation results either in a hit (304) or a miss.
+   *
+   * @return the number of revalidations
+   */
+  public long getRevalidations() {
+    return revalidations;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public double getHitRate() {
+    long requests = hits + misses;
+    if ( requests == 0 ) {
+      return 1.0;
+    }
+    return ( double ) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{" +
+      "hits=" + hits +
+      ", misses=" + misses +
+      ", revalidations=" + revalidations +
+      ", evictions=" + evictions +
+      ", size=" + size +
+      '}';
+  }
+}
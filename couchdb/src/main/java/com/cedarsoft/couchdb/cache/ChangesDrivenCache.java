@@ -0,0 +1,351 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.cache;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.changes.ChangeListener;
+import com.cedarsoft.couchdb.changes.ChangesFeed;
+import com.cedarsoft.couchdb.changes.InMemoryCheckpointStore;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.Change;
+import com.cedarsoft.couchdb.core.ChangesOptions;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.couchdb.io.ChangeIterator;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache for documents and view results that is kept up to date by the changes feed of the database.
+ * <p>
+ * Reads are answered locally without any round trip. Documents are evicted as soon as a change for their id
+ * arrives. View results are evicted on any change, since every change may affect every view.
+ * <p>
+ * The staleness is bounded by the lag of the feed (see {@link #getLag()}). Reads bypass the cache while the lag exceeds
+ * the max staleness (see {@link #DEFAULT_MAX_STALENESS}). Reads also bypass the cache while the feed is not running.
+ * <p>
+ * If the feed fails, the cache is cleared and bypassed until the feed has reconnected.
+ * <p>
+ * The cached documents and view responses are shared between all callers and must not be modified.
+ *
+ * @param <T> the type of the cached documents
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ChangesDrivenCache<T> {
+  @Nonnull
+  private static final Logger LOG = Logger.getLogger( ChangesDrivenCache.class.getName() );
+
+  public static final long DEFAULT_HEARTBEAT = TimeUnit.SECONDS.toMillis( 5 );
+  /**
+   * A connected feed receives a heartbeat at least every {@link #DEFAULT_HEARTBEAT}
+   */
+  public static final long DEFAULT_MAX_STALENESS = DEFAULT_HEARTBEAT * 3;
+
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final JacksonSerializer<T> serializer;
+  @Nonnull
+  private final Cache<DocId, CouchDoc<T>> docs;
+  @Nonnull
+  private final Cache<ViewKey, ViewResponse<?, ?, ?>> views;
+  @Nonnull
+  private final InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+  @Nonnull
+  private final ChangesFeed<Void> feed;
+
+  /**
+   * Is incremented for each change. Used to detect changes that arrive while a value is loaded
+   */
+  @Nonnull
+  private final AtomicLong changeCounter = new AtomicLong();
+  @Nonnull
+  private final AtomicLong hits = new AtomicLong();
+  @Nonnull
+  private final AtomicLong misses = new AtomicLong();
+
+  private volatile long maxStaleness = DEFAULT_MAX_STALENESS;
+  /**
+   * The time the feed has failed the last time. The cache is bypassed until the feed has received data after that time
+   */
+  private volatile long failedAt;
+
+  /**
+   * Creates a new cache. The cache must be started using {@link #start(Executor)}
+   *
+   * @param db             the database
+   * @param serializer     the serializer for the documents
+   * @param maxDocs        the max number of cached documents
+   * @param maxViewResults the max number of cached view results
+   */
+  public ChangesDrivenCache( @Nonnull CouchDatabase db, @Nonnull JacksonSerializer<T> serializer, long maxDocs, long maxViewResults ) {
+    this.db = db;
+    this.serializer = serializer;
+    this.docs = CacheBuilder.newBuilder().maximumSize( maxDocs ).recordStats().build();
+    this.views = CacheBuilder.newBuilder().maximumSize( maxViewResults ).build();
+    this.feed = new ChangesFeed<Void>( db, null, new ChangesOptions().feed( ChangesOptions.Feed.CONTINUOUS ).heartbeat( DEFAULT_HEARTBEAT ), checkpointStore );
+  }
+
+  /**
+   * Reads bypass the cache while the lag of the feed is larger than the given duration.
+   * Defaults to {@link #DEFAULT_MAX_STALENESS}.
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public ChangesDrivenCache<T> maxStaleness( long duration, @Nonnull TimeUnit unit ) {
+    this.maxStaleness = unit.toMillis( duration );
+    return this;
+  }
+
+  /**
+   * Subscribes to the changes feed (from the current sequence on) and runs the feed on the given executor.
+   *
+   * @param executor the executor the feed is run on
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  public void start( @Nonnull Executor executor ) throws ActionFailedException, IOException {
+    //Fetch the current sequence - all entries that are cached from now on are kept up to date by the feed
+    try ( ChangeIterator<Void> iterator = db.<Void>changes( new ChangesOptions().descending( true ).limit( 1 ), null ) ) {
+      while ( iterator.hasNext() ) {
+        iterator.next();
+      }
+
+      @Nullable String lastSeq = iterator.getLastSeq();
+      if ( lastSeq != null ) {
+        checkpointStore.store( lastSeq );
+      }
+    }
+    invalidateAll();
+
+    feed.start( executor, new ChangeListener<Void>() {
+      @Override
+      public void changed( @Nonnull Change<Void> change ) {
+        changeCounter.incrementAndGet();
+        docs.invalidate( change.getId() );
+        views.invalidateAll();
+      }
+
+      @Override
+      public void failed( @Nonnull Exception e ) {
+        LOG.log( Level.FINE, "Changes feed failed", e );
+        //Changes are not received until the feed has reconnected
+        failedAt = System.currentTimeMillis();
+        invalidateAll();
+      }
+    } );
+  }
+
+  public void stop() {
+    feed.stop();
+  }
+
+  /**
+   * Returns the document. Is answered locally if the document has been cached before.
+   *
+   * @param id the id
+   * @return the document
+   *
+   * @throws ActionFailedException
+   */
+  @Nonnull
+  public CouchDoc<T> get( @Nonnull DocId id ) throws ActionFailedException {
+    if ( !isFresh() ) {
+      misses.incrementAndGet();
+      return db.get( id, serializer );
+    }
+
+    @Nullable CouchDoc<T> cached = docs.getIfPresent( id );
+    if ( cached != null ) {
+      hits.incrementAndGet();
+      return cached;
+    }
+
+    misses.incrementAndGet();
+    long counter = changeCounter.get();
+    CouchDoc<T> doc = db.get( id, serializer );
+    storeIfUnchanged( docs, id, doc, counter );
+    return doc;
+  }
+
+  /**
+   * Queries the view. The result is answered locally if it has been cached before.
+   *
+   * @param viewDescriptor  the view descriptor
+   * @param keySerializer   the key serializer
+   * @param valueSerializer the value serializer
+   * @param options         the options
+   * @param <K>             the key type
+   * @param <V>             the value type
+   * @return the view response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public <K, V> ViewResponse<K, V, Void> query( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
+    if ( !isFresh() ) {
+      misses.incrementAndGet();
+      return db.query( viewDescriptor, keySerializer, valueSerializer, options );
+    }
+
+    ViewKey key = new ViewKey( viewDescriptor, options, keySerializer.getClass(), valueSerializer.getClass() );
+    @Nullable ViewResponse<?, ?, ?> cached = views.getIfPresent( key );
+    if ( cached != null ) {
+      hits.incrementAndGet();
+      //noinspection unchecked
+      return ( ViewResponse<K, V, Void> ) cached;
+    }
+
+    misses.incrementAndGet();
+    long counter = changeCounter.get();
+    ViewResponse<K, V, Void> response = db.query( viewDescriptor, keySerializer, valueSerializer, options );
+    storeIfUnchanged( views, key, response, counter );
+    return response;
+  }
+
+  /**
+   * Caches the loaded value - but only if no change has arrived since the counter has been read.
+   * Otherwise the value might be outdated already.
+   * <p>
+   * A change that arrives while the value is stored might have been applied (invalidated) before the put.
+   * Therefore the counter is verified again afterwards and the value is removed if the counter has moved.
+   *
+   * @param cache   the cache
+   * @param key     the key
+   * @param value   the loaded value
+   * @param counter the value of the change counter before the value has been loaded
+   */
+  private <K, V> void storeIfUnchanged( @Nonnull Cache<K, V> cache, @Nonnull K key, @Nonnull V value, long counter ) {
+    if ( changeCounter.get() != counter ) {
+      return;
+    }
+
+    cache.put( key, value );
+
+    //The listener increments the counter before it invalidates. Therefore either the invalidation follows the put or the change is detected here
+    if ( changeCounter.get() != counter ) {
+      cache.asMap().remove( key, value );
+    }
+  }
+
+  /**
+   * Returns the lag of the feed: The time since the feed has received a change or heartbeat the last time.
+   *
+   * @return the lag in milliseconds or -1 if the feed has not been connected yet
+   */
+  public long getLag() {
+    long lastActivity = feed.getLastActivity();
+    if ( lastActivity == 0 ) {
+      return -1;
+    }
+    return Math.max( 0, System.currentTimeMillis() - lastActivity );
+  }
+
+  private boolean isFresh() {
+    if ( !feed.isRunning() ) {
+      return false;
+    }
+    //Not reconnected since the last failure
+    if ( feed.getLastActivity() <= failedAt ) {
+      return false;
+    }
+    long lag = getLag();
+    return lag >= 0 && lag <= maxStaleness;
+  }
+
+  public void invalidateAll() {
+    changeCounter.incrementAndGet();
+    docs.invalidateAll();
+    views.invalidateAll();
+  }
+
+  @Nonnull
+  public CacheStats getStats() {
+    return new CacheStats( hits.get(), misses.get(), 0, docs.stats().evictionCount(), docs.size() + views.size() );
+  }
+
+  @Nonnull
+  public ChangesFeed<Void> getFeed() {
+    return feed;
+  }
+
+  /**
+   * The key for a cached view result.
+   * Contains the serializer classes (not the instances) - callers usually create new serializers for each query
+   */
+  private static class ViewKey {
+    @Nonnull
+    private final Object[] parts;
+
+    private ViewKey( @Nonnull ViewDescriptor viewDescriptor, @Nullable Options options, @Nonnull Class<?> keySerializer, @Nonnull Class<?> valueSerializer ) {
+      //Sort the params - the order must not matter
+      Map<String, String> params = options == null ? new TreeMap<String, String>() : new TreeMap<>( options.getParams() );
+      this.parts = new Object[]{viewDescriptor.getDesignDocumentId(), viewDescriptor.getViewId(), params, keySerializer, valueSerializer};
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( !( o instanceof ViewKey ) ) {
+        return false;
+      }
+      return Arrays.equals( parts, ( ( ViewKey ) o ).parts );
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode( parts );
+    }
+  }
+}
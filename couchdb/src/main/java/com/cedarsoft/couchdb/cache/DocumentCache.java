@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.cache;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.ActionResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache for documents in front of {@link CouchDatabase#get(DocId, JacksonSerializer)}.
+ * <p>
+ * Cached documents are revalidated using If-None-Match. A "304 Not Modified" is counted as hit.
+ * Entries that have been validated within the last {@link #revalidateAfter(long, TimeUnit)} are returned
+ * without contacting the server at all.
+ * <p>
+ * Updates and deletions executed through this cache update the cache immediately.
+ * The returned documents are shared between all callers and must not be modified.
+ *
+ * @param <T> the type of the cached objects
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class DocumentCache<T> {
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final JacksonSerializer<T> serializer;
+  @Nonnull
+  private final Cache<DocId, Entry<T>> cache;
+
+  private volatile long revalidateAfter;
+
+  @Nonnull
+  private final AtomicLong hits = new AtomicLong();
+  @Nonnull
+  private final AtomicLong misses = new AtomicLong();
+  @Nonnull
+  private final AtomicLong revalidations = new AtomicLong();
+
+  /**
+   * Creates a cache that holds at most the given number of documents
+   *
+   * @param db         the database
+   * @param serializer the serializer
+   * @param maxSize    the max number of cached documents
+   */
+  public DocumentCache( @Nonnull CouchDatabase db, @Nonnull JacksonSerializer<T> serializer, long maxSize ) {
+    this.db = db;
+    this.serializer = serializer;
+    this.cache = CacheBuilder.newBuilder().maximumSize( maxSize ).recordStats().build();
+  }
+
+  /**
+   * Creates a cache that is bounded by the total weight of the cached documents
+   *
+   * @param db         the database
+   * @param serializer the serializer
+   * @param maxWeight  the max total weight
+   * @param weigher    calculates the weight of a document
+   */
+  public DocumentCache( @Nonnull CouchDatabase db, @Nonnull JacksonSerializer<T> serializer, long maxWeight, @Nonnull final Weigher<? super DocId, ? super CouchDoc<T>> weigher ) {
+    this.db = db;
+    this.serializer = serializer;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight( maxWeight )
+      .weigher( new Weigher<DocId, Entry<T>>() {
+        @Override
+        public int weigh( DocId key, Entry<T> value ) {
+          return weigher.weigh( key, value.doc );
+        }
+      } )
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Cached entries that have been validated within the given duration are returned without revalidation.
+   * The default (0) revalidates on each access.
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public DocumentCache<T> revalidateAfter( long duration, @Nonnull TimeUnit unit ) {
+    if ( duration < 0 ) {
+      throw new IllegalArgumentException( "Invalid duration <" + duration + ">" );
+    }
+    this.revalidateAfter = unit.toNanos( duration );
+    return this;
+  }
+
+  /**
+   * Returns the document - either from the cache or from the database
+   *
+   * @param id the id
+   * @return the document
+   *
+   * @throws ActionFailedException
+   */
+  @Nonnull
+  public CouchDoc<T> get( @Nonnull DocId id ) throws ActionFailedException {
+    @Nullable Entry<T> entry = cache.getIfPresent( id );
+    long now = System.nanoTime();
+
+    if ( entry == null ) {
+      misses.incrementAndGet();
+      CouchDoc<T> doc = db.get( id, serializer );
+      store( doc, now );
+      return doc;
+    }
+
+    if ( now - entry.validated < revalidateAfter ) {
+      hits.incrementAndGet();
+      return entry.doc;
+    }
+
+    revalidations.incrementAndGet();
+    @Nullable CouchDoc<T> modified;
+    try {
+      modified = db.getIfModified( id, entry.rev, serializer );
+    } catch ( ActionFailedException e ) {
+      cache.invalidate( id );
+      throw e;
+    }
+
+    if ( modified == null ) {
+      hits.incrementAndGet();
+      entry.validated = now;
+      return entry.doc;
+    }
+
+    misses.incrementAndGet();
+    store( modified, now );
+    return modified;
+  }
+
+  /**
+   * Puts the document to the database and updates the cache.
+   * The cache stores a copy of the document - later modifications of the given instance do not affect the cached entry.
+   *
+   * @param doc the document
+   * @return the response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public ActionResponse put( @Nonnull CouchDoc<T> doc ) throws ActionFailedException, IOException {
+    try {
+      ActionResponse response = db.put( doc, serializer );
+      store( copy( doc, response.getRev() ), System.nanoTime() );
+      return response;
+    } catch ( ActionFailedException | IOException | RuntimeException e ) {
+      cache.invalidate( doc.getId() );
+      throw e;
+    }
+  }
+
+  /**
+   * Deletes the document and removes it from the cache
+   *
+   * @param id       the id
+   * @param revision the revision
+   * @return the response
+   *
+   * @throws ActionFailedException
+   */
+  @Nonnull
+  public ActionResponse delete( @Nonnull DocId id, @Nonnull Revision revision ) throws ActionFailedException {
+    cache.invalidate( id );
+    return db.delete( id, revision );
+  }
+
+  /**
+   * Creates a copy of the given document that is independent of the caller's instance.
+   * The object is copied using the serializer. Attachments are replaced by stubs - as returned by the server.
+   *
+   * @param doc the document
+   * @param rev the revision of the copy
+   * @return the copy
+   */
+  @Nonnull
+  private CouchDoc<T> copy( @Nonnull CouchDoc<T> doc, @Nonnull Revision rev ) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.serialize( doc.getObject(), out );
+
+    CouchDoc<T> copy = new CouchDoc<>( doc.getId(), rev, serializer.deserialize( new ByteArrayInputStream( out.toByteArray() ) ) );
+    for ( CouchDoc.Attachment attachment : doc.getAttachments() ) {
+      @Nullable String digest = attachment instanceof CouchDoc.StubbedAttachment ? ( ( CouchDoc.StubbedAttachment ) attachment ).getDigest() : null;
+      copy.addAttachment( new CouchDoc.StubbedAttachment( attachment.getId(), attachment.getContentType(), attachment.getLength(), digest ) );
+    }
+    return copy;
+  }
+
+  private void store( @Nonnull CouchDoc<T> doc, long validated ) {
+    @Nullable Revision rev = doc.getRev();
+    if ( rev == null ) {
+      cache.invalidate( doc.getId() );
+      return;
+    }
+    cache.put( doc.getId(), new Entry<>( doc, rev, validated ) );
+  }
+
+  /**
+   * Removes the document from the cache
+   *
+   * @param id the id
+   */
+  public void invalidate( @Nonnull DocId id ) {
+    cache.invalidate( id );
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Nonnull
+  public CacheStats getStats() {
+    return new CacheStats( hits.get(), misses.get(), revalidations.get(), cache.stats().evictionCount(), cache.size() );
+  }
+
+  @Nonnull
+  public CouchDatabase getDb() {
+    return db;
+  }
+
+  private static class Entry<T> {
+    @Nonnull
+    private final CouchDoc<T> doc;
+    @Nonnull
+    private final Revision rev;
+    private volatile long validated;
+
+    private Entry( @Nonnull CouchDoc<T> doc, @Nonnull Revision rev, long validated ) {
+      this.doc = doc;
+      this.rev = rev;
+      this.validated = validated;
+    }
+  }
+}
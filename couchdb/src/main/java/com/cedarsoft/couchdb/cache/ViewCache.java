@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.cache;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.TaggedContent;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.couchdb.io.CouchDocSerializer;
+import com.cedarsoft.couchdb.io.RowSerializer;
+import com.cedarsoft.couchdb.io.ViewResponseSerializer;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache for view results in front of {@link CouchDatabase#query(ViewDescriptor, JacksonSerializer, JacksonSerializer, Options)}.
+ * <p>
+ * The cache is keyed by the view descriptor and the options (the order of the params does not matter).
+ * The raw responses are cached - independent of the serializers. Each call deserializes a new view response,
+ * therefore the returned objects are never shared between callers.
+ * <p>
+ * Cached responses are revalidated using the ETag of the view (If-None-Match). CouchDB changes that ETag whenever the
+ * index is updated. A "304 Not Modified" is counted as hit. Responses that have been validated within the last
+ * {@link #revalidateAfter(long, TimeUnit)} are returned without contacting the server at all.
+ * <p>
+ * The cache is bounded by the total size (in bytes) of the cached responses. The least recently used responses are evicted first.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ViewCache {
+  @Nonnull
+  private final CouchDatabase db;
+  @Nonnull
+  private final ViewResponseSerializer viewResponseSerializer = new ViewResponseSerializer( new RowSerializer( new CouchDocSerializer() ) );
+  @Nonnull
+  private final Cache<ViewKey, Entry> cache;
+
+  private volatile long revalidateAfter;
+
+  @Nonnull
+  private final AtomicLong hits = new AtomicLong();
+  @Nonnull
+  private final AtomicLong misses = new AtomicLong();
+  @Nonnull
+  private final AtomicLong revalidations = new AtomicLong();
+
+  /**
+   * Creates a new view cache
+   *
+   * @param db       the database
+   * @param maxBytes the max total size (in bytes) of all cached responses
+   */
+  public ViewCache( @Nonnull CouchDatabase db, long maxBytes ) {
+    this.db = db;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight( maxBytes )
+      .weigher( new Weigher<ViewKey, Entry>() {
+        @Override
+        public int weigh( ViewKey key, Entry value ) {
+          return value.content.getContent().length;
+        }
+      } )
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Cached responses that have been validated within the given duration are returned without revalidation.
+   * The default (0) revalidates on each access.
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public ViewCache revalidateAfter( long duration, @Nonnull TimeUnit unit ) {
+    if ( duration < 0 ) {
+      throw new IllegalArgumentException( "Invalid duration <" + duration + ">" );
+    }
+    this.revalidateAfter = unit.toNanos( duration );
+    return this;
+  }
+
+  /**
+   * Queries the view
+   *
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to deserialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param options         the options for the query
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @return the response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public <K, V> ViewResponse<K, V, Void> query( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
+    if ( options != null && options.isIncludeDocs() ) {
+      throw new IllegalArgumentException( Options.INCLUDE_DOCS + " is not supported without a doc serializer" );
+    }
+
+    try ( InputStream in = queryContent( viewDescriptor, options ).openStream() ) {
+      return viewResponseSerializer.deserialize( keySerializer, valueSerializer, in );
+    }
+  }
+
+  /**
+   * Queries the view. This method supports included docs.
+   *
+   * @param viewDescriptor  describes the view
+   * @param keySerializer   the serializer used to deserialize the key
+   * @param valueSerializer the serializer used to deserialize the value
+   * @param docSerializer   the document serializer
+   * @param options         the options for the query - includeDocs(true) is added automatically
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @param <D>             the type of the document object
+   * @return the response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public <K, V, D> ViewResponse<K, V, D> query( @Nonnull ViewDescriptor viewDescriptor, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nonnull JacksonSerializer<? extends D> docSerializer, @Nullable Options options ) throws ActionFailedException, IOException {
+    Options localOptions;
+    if ( options != null && !options.isGroup() ) {
+      localOptions = new Options( options ).includeDocs( true ); //force include docs
+    } else {
+      localOptions = options;
+    }
+
+    try ( InputStream in = queryContent( viewDescriptor, localOptions ).openStream() ) {
+      return viewResponseSerializer.deserialize( keySerializer, valueSerializer, docSerializer, in );
+    }
+  }
+
+  /**
+   * Returns the raw response of the view - either from the cache or from the database
+   *
+   * @param viewDescriptor describes the view
+   * @param options        the options for the query
+   * @return the content of the response
+   *
+   * @throws ActionFailedException
+   * @throws IOException
+   */
+  @Nonnull
+  public TaggedContent queryContent( @Nonnull ViewDescriptor viewDescriptor, @Nullable Options options ) throws ActionFailedException, IOException {
+    ViewKey key = new ViewKey( viewDescriptor, options );
+    @Nullable Entry entry = cache.getIfPresent( key );
+    long now = System.nanoTime();
+
+    if ( entry == null ) {
+      misses.incrementAndGet();
+      @Nullable TaggedContent content = db.queryIfModified( viewDescriptor, options, null );
+      assert content != null;
+      store( key, content, now );
+      return content;
+    }
+
+    if ( now - entry.validated < revalidateAfter ) {
+      hits.incrementAndGet();
+      return entry.content;
+    }
+
+    revalidations.incrementAndGet();
+    @Nullable TaggedContent modified;
+    try {
+      modified = db.queryIfModified( viewDescriptor, options, entry.content.getEtag() );
+    } catch ( ActionFailedException | IOException | RuntimeException e ) {
+      cache.invalidate( key );
+      throw e;
+    }
+
+    if ( modified == null ) {
+      hits.incrementAndGet();
+      entry.validated = now;
+      return entry.content;
+    }
+
+    misses.incrementAndGet();
+    store( key, modified, now );
+    return modified;
+  }
+
+  private void store( @Nonnull ViewKey key, @Nonnull TaggedContent content, long validated ) {
+    //Responses without ETag can not be revalidated
+    if ( content.getEtag() == null ) {
+      cache.invalidate( key );
+      return;
+    }
+    cache.put( key, new Entry( content, validated ) );
+  }
+
+  /**
+   * Removes all cached responses of the given view
+   *
+   * @param viewDescriptor the view descriptor
+   */
+  public void invalidate( @Nonnull ViewDescriptor viewDescriptor ) {
+    for ( ViewKey key : cache.asMap().keySet() ) {
+      if ( key.viewDescriptor.equals( viewDescriptor ) ) {
+        cache.invalidate( key );
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Nonnull
+  public CacheStats getStats() {
+    return new CacheStats( hits.get(), misses.get(), revalidations.get(), cache.stats().evictionCount(), cache.size() );
+  }
+
+  @Nonnull
+  public CouchDatabase getDb() {
+    return db;
+  }
+
+  /**
+   * The key for a cached view response
+   */
+  private static class ViewKey {
+    @Nonnull
+    private final ViewDescriptor viewDescriptor;
+    @Nonnull
+    private final SortedMap<String, String> params;
+
+    private ViewKey( @Nonnull ViewDescriptor viewDescriptor, @Nullable Options options ) {
+      this.viewDescriptor = viewDescriptor;
+      //Sort the params - the order must not matter
+      this.params = options == null ? new TreeMap<String, String>() : new TreeMap<>( options.getParams() );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      if ( this == obj ) {
+        return true;
+      }
+      if ( !( obj instanceof ViewKey ) ) {
+        return false;
+      }
+
+      ViewKey that = ( ViewKey ) obj;
+      return viewDescriptor.equals( that.viewDescriptor ) && params.equals( that.params );
+    }
+
+    @Override
+    public int hashCode() {
+      int result = viewDescriptor.hashCode();
+      result = 31 * result + params.hashCode();
+      return result;
+    }
+  }
+
+  private static class Entry {
+    @Nonnull
+    private final TaggedContent content;
+    private volatile long validated;
+
+    private Entry( @Nonnull TaggedContent content, long validated ) {
+      this.content = content;
+      this.validated = validated;
+    }
+  }
+}
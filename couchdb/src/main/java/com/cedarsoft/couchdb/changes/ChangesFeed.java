@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.changes;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.core.Change;
+import com.cedarsoft.couchdb.core.ChangesOptions;
+import com.cedarsoft.couchdb.io.ChangeIterator;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Consumes the changes feed of a database.
+ * <p>
+ * The feed resumes from the sequence stored within the {@link CheckpointStore}. The checkpoint is updated after
+ * each change has been processed by the listener - therefore changes are delivered at least once.
+ * <p>
+ * Longpoll and continuous feeds reconnect automatically. Failures are retried using an exponential backoff.
+ *
+ * @param <T> the type of the included documents
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ChangesFeed<T> {
+  @Nonnull
+  private static final Logger LOG = Logger.getLogger( ChangesFeed.class.getName() );
+
+  public static final long DEFAULT_MIN_BACKOFF = TimeUnit.SECONDS.toMillis( 1 );
+  public static final long DEFAULT_MAX_BACKOFF = TimeUnit.MINUTES.toMillis( 1 );
+
+  @Nonnull
+  private final CouchDatabase db;
+  @Nullable
+  private final JacksonSerializer<T> docSerializer;
+  @Nonnull
+  private final ChangesOptions options;
+  @Nonnull
+  private final CheckpointStore checkpointStore;
+
+  private long minBackoff = DEFAULT_MIN_BACKOFF;
+  private long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+  /**
+   * Is only set by {@link #start(Executor, ChangeListener)}/{@link #run(ChangeListener)} - therefore a stop is never overwritten
+   */
+  @Nonnull
+  private final AtomicBoolean running = new AtomicBoolean();
+  @Nullable
+  private volatile ChangeIterator<T> current;
+  private volatile long lastActivity;
+
+  /**
+   * Creates a new feed
+   *
+   * @param db              the database
+   * @param docSerializer   the serializer for the included docs (null if the docs shall not be included)
+   * @param options         the options (feed type, filter, heartbeat...). "since" is overwritten by the checkpoint
+   * @param checkpointStore the checkpoint store
+   */
+  public ChangesFeed( @Nonnull CouchDatabase db, @Nullable JacksonSerializer<T> docSerializer, @Nonnull ChangesOptions options, @Nonnull CheckpointStore checkpointStore ) {
+    this.db = db;
+    this.docSerializer = docSerializer;
+    this.options = new ChangesOptions( options );
+    this.checkpointStore = checkpointStore;
+  }
+
+  /**
+   * Sets the backoff that is used after failures. The backoff is doubled for each consecutive failure.
+   *
+   * @param min  the initial backoff
+   * @param max  the max backoff
+   * @param unit the unit
+   * @return this
+   */
+  @Nonnull
+  public ChangesFeed<T> backoff( long min, long max, @Nonnull TimeUnit unit ) {
+    if ( min < 0 || max < min ) {
+      throw new IllegalArgumentException( "Invalid backoff <" + min + "> - <" + max + ">" );
+    }
+    this.minBackoff = unit.toMillis( min );
+    this.maxBackoff = unit.toMillis( max );
+    return this;
+  }
+
+  /**
+   * Runs the feed on the given executor.
+   * If the feed is stopped before the executor runs it, it does not connect at all.
+   *
+   * @param executor the executor
+   * @param listener the listener
+   * @throws IllegalStateException if the feed is already running
+   */
+  public void start( @Nonnull Executor executor, @Nonnull final ChangeListener<T> listener ) {
+    if ( !running.compareAndSet( false, true ) ) {
+      throw new IllegalStateException( "Already running" );
+    }
+
+    try {
+      executor.execute( new Runnable() {
+        @Override
+        public void run() {
+          consume( listener );
+        }
+      } );
+    } catch ( RuntimeException e ) {
+      running.set( false );
+      throw e;
+    }
+  }
+
+  /**
+   * Consumes the feed within the current thread.
+   * Normal feeds return after all changes have been processed. Longpoll and continuous feeds run until {@link #stop()} is called.
+   *
+   * @param listener the listener
+   * @throws IllegalStateException if the feed is already running
+   */
+  public void run( @Nonnull ChangeListener<T> listener ) {
+    if ( !running.compareAndSet( false, true ) ) {
+      throw new IllegalStateException( "Already running" );
+    }
+    consume( listener );
+  }
+
+  private void consume( @Nonnull ChangeListener<T> listener ) {
+    long backoff = minBackoff;
+
+    //Checked on entry: The feed might have been stopped before the executor runs it
+    while ( running.get() ) {
+      try {
+        ChangesOptions requestOptions = new ChangesOptions( options );
+        @Nullable String since = checkpointStore.load();
+        if ( since != null ) {
+          requestOptions.since( since );
+        }
+
+        try ( ChangeIterator<T> iterator = db.changes( requestOptions, docSerializer ) ) {
+          current = iterator;
+          if ( !running.get() ) {
+            iterator.stop();
+          }
+          backoff = minBackoff;
+
+          while ( running.get() && iterator.hasNext() ) {
+            Change<T> change = iterator.next();
+            listener.changed( change );
+            checkpointStore.store( change.getSeq() );
+          }
+
+          //The last seq might be newer than the last change (e.g. if a filter is used)
+          @Nullable String lastSeq = iterator.getLastSeq();
+          if ( running.get() && lastSeq != null ) {
+            checkpointStore.store( lastSeq );
+          }
+        } finally {
+          lastActivity = getLastActivity();
+          current = null;
+        }
+
+        if ( options.getFeed() == ChangesOptions.Feed.NORMAL ) {
+          break;
+        }
+      } catch ( Exception e ) {
+        if ( !running.get() ) {
+          break;
+        }
+
+        LOG.log( Level.WARNING, "Changes feed for <" + db.getDbName() + "> failed. Reconnecting in " + backoff + " ms", e );
+        listener.failed( e );
+
+        try {
+          Thread.sleep( backoff );
+        } catch ( InterruptedException ignore ) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        backoff = Math.min( backoff * 2, maxBackoff );
+      }
+    }
+
+    running.set( false );
+  }
+
+  /**
+   * Stops the feed. The feed stops as soon as the current change has been processed.
+   * A feed that is waiting for the next change is stopped immediately if the database uses a pooled transport
+   * (the connection is aborted). Otherwise it stops as soon as the next change/heartbeat has been received.
+   */
+  public void stop() {
+    running.set( false );
+    @Nullable ChangeIterator<T> iterator = current;
+    if ( iterator != null ) {
+      iterator.stop();
+    }
+  }
+
+  /**
+   * Returns the time (System.currentTimeMillis()) the feed has received data (a change or a heartbeat) the last time.
+   * Since the server sends heartbeats while idle, "now - last activity" is an estimate for the lag of the feed.
+   *
+   * @return the time of the last activity or 0 if the feed has never been connected
+   */
+  public long getLastActivity() {
+    @Nullable ChangeIterator<T> iterator = current;
+    if ( iterator == null ) {
+      return lastActivity;
+    }
+    return Math.max( lastActivity, iterator.getLastActivity() );
+  }
+
+  public boolean isRunning() {
+    return running.get();
+  }
+
+  @Nonnull
+  public CheckpointStore getCheckpointStore() {
+    return checkpointStore;
+  }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.circuit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breaker for one endpoint.
+ * <p>
+ * Each request must acquire a permit using {@link #tryAcquire()} and report its outcome using
+ * {@link #record(long, boolean, long)}. Outcomes of requests that have been started before the last state change are ignored.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see CircuitBreakerPolicy
+ */
+public class CircuitBreaker {
+  /**
+   * The state of a circuit breaker
+   */
+  public enum State {
+    /**
+     * All requests are let through
+     */
+    CLOSED,
+    /**
+     * All requests fail fast
+     */
+    OPEN,
+    /**
+     * Only a limited number of probe requests are let through
+     */
+    HALF_OPEN
+  }
+
+  /**
+   * Returned by {@link #tryAcquire()} if the request is rejected
+   */
+  public static final long REJECTED = -1;
+
+  private static final byte OUTCOME_FAILURE = 1;
+  private static final byte OUTCOME_SLOW = 2;
+
+  @Nonnull
+  private final String endpoint;
+  @Nonnull
+  private final CircuitBreakerPolicy policy;
+  private final long slowCallNanos;
+  private final long openNanos;
+
+  /**
+   * The outcomes of the last requests (ring buffer)
+   */
+  @Nonnull
+  private final byte[] outcomes;
+  private int outcomeIndex;
+  private int outcomeCount;
+  private int failures;
+  private int slowCalls;
+
+  @Nonnull
+  private volatile State state = State.CLOSED;
+  /**
+   * Is incremented on each state change. Used to ignore outcomes of requests that have been started before
+   */
+  private long generation;
+  private long openedAt;
+  private int probesStarted;
+  private int probesSucceeded;
+
+  public CircuitBreaker( @Nonnull String endpoint, @Nonnull CircuitBreakerPolicy policy ) {
+    this.endpoint = endpoint;
+    this.policy = new CircuitBreakerPolicy( policy );
+    this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos( policy.getSlowCallDuration() );
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos( policy.getOpenDuration() );
+    this.outcomes = new byte[policy.getWindowSize()];
+  }
+
+  /**
+   * Tries to acquire a permit for a request
+   *
+   * @return the permit (that must be passed to {@link #record(long, boolean, long)}) or {@link #REJECTED}
+   */
+  public long tryAcquire() {
+    State previous;
+    State current;
+    long permit;
+
+    synchronized ( this ) {
+      previous = state;
+      if ( state == State.OPEN && System.nanoTime() - openedAt >= openNanos ) {
+        transition( State.HALF_OPEN );
+      }
+
+      switch ( state ) {
+        case CLOSED:
+          permit = generation;
+          break;
+        case HALF_OPEN:
+          if ( probesStarted < policy.getHalfOpenRequests() ) {
+            probesStarted++;
+            permit = generation;
+          } else {
+            permit = REJECTED;
+          }
+          break;
+        default:
+          permit = REJECTED;
+      }
+      current = state;
+    }
+
+    fireStateChanged( previous, current );
+    return permit;
+  }
+
+  /**
+   * Records the outcome of a request
+   *
+   * @param permit       the permit returned by {@link #tryAcquire()}
+   * @param failure      whether the request has failed
+   * @param latencyNanos the latency of the request
+   */
+  public void record( long permit, boolean failure, long latencyNanos ) {
+    State previous;
+    State current;
+
+    synchronized ( this ) {
+      if ( permit != generation ) {
+        return;
+      }
+
+      previous = state;
+      boolean slow = latencyNanos >= slowCallNanos;
+
+      if ( state == State.CLOSED ) {
+        addOutcome( ( byte ) ( ( failure ? OUTCOME_FAILURE : 0 ) | ( slow ? OUTCOME_SLOW : 0 ) ) );
+        if ( shouldOpen() ) {
+          transition( State.OPEN );
+        }
+      } else if ( state == State.HALF_OPEN ) {
+        if ( failure || slow ) {
+          transition( State.OPEN );
+        } else {
+          probesSucceeded++;
+          if ( probesSucceeded >= policy.getHalfOpenRequests() ) {
+            transition( State.CLOSED );
+          }
+        }
+      }
+      current = state;
+    }
+
+    fireStateChanged( previous, current );
+  }
+
+  private void addOutcome( byte outcome ) {
+    if ( outcomeCount == outcomes.length ) {
+      byte oldest = outcomes[outcomeIndex];
+      if ( ( oldest & OUTCOME_FAILURE ) != 0 ) {
+        failures--;
+      }
+      if ( ( oldest & OUTCOME_SLOW ) != 0 ) {
+        slowCalls--;
+      }
+    } else {
+      outcomeCount++;
+    }
+
+    outcomes[outcomeIndex] = outcome;
+    outcomeIndex = ( outcomeIndex + 1 ) % outcomes.length;
+    if ( ( outcome & OUTCOME_FAILURE ) != 0 ) {
+      failures++;
+    }
+    if ( ( outcome & OUTCOME_SLOW ) != 0 ) {
+      slowCalls++;
+    }
+  }
+
+  private boolean shouldOpen() {
+    if ( outcomeCount < policy.getMinimumRequests() ) {
+      return false;
+    }
+    return failures >= policy.getFailureRate() * outcomeCount || slowCalls >= policy.getSlowCallRate() * outcomeCount;
+  }
+
+  private void transition( @Nonnull State newState ) {
+    state = newState;
+    generation++;
+    outcomeIndex = 0;
+    outcomeCount = 0;
+    failures = 0;
+    slowCalls = 0;
+    probesStarted = 0;
+    probesSucceeded = 0;
+
+    if ( newState == State.OPEN ) {
+      openedAt = System.nanoTime();
+    }
+  }
+
+  private void fireStateChanged( @Nonnull State previous, @Nonnull State current ) {
+    if ( previous == current ) {
+      return;
+    }
+    @Nullable CircuitBreakerListener listener = policy.getListener();
+    if ( listener != null ) {
+      listener.stateChanged( endpoint, previous, current );
+    }
+  }
+
+  /**
+   * Forces the circuit breaker into the closed state
+   */
+  public void reset() {
+    State previous;
+    synchronized ( this ) {
+      previous = state;
+      transition( State.CLOSED );
+    }
+    fireStateChanged( previous, State.CLOSED );
+  }
+
+  @Nonnull
+  public State getState() {
+    return state;
+  }
+
+  @Nonnull
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker{" +
+      "endpoint='" + endpoint + '\'' +
+      ", state=" + state +
+      '}';
+  }
+}
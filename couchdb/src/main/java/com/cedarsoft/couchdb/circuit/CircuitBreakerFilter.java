@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.circuit;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Filter that holds one {@link CircuitBreaker} for each endpoint (scheme, host and port).
+ * <p>
+ * Requests to an endpoint with an open circuit fail fast with a {@link CircuitBreakerOpenException}.
+ * Requests that fail with an exception (connection failures, timeouts) or with the status codes 408, 429 or 5xx
+ * count as failures. The latency is measured until the response headers have been received.
+ * <p>
+ * The filter should be added before the {@link com.cedarsoft.couchdb.retry.RetryFilter}. Then each attempt is recorded
+ * and rejected requests are not retried.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see com.cedarsoft.couchdb.TransportConfig#circuitBreaker(CircuitBreakerPolicy)
+ */
+public class CircuitBreakerFilter extends ClientFilter {
+  @Nonnull
+  private final CircuitBreakerPolicy policy;
+  @Nonnull
+  private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+  public CircuitBreakerFilter( @Nonnull CircuitBreakerPolicy policy ) {
+    this.policy = new CircuitBreakerPolicy( policy );
+  }
+
+  @Override
+  public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+    String endpoint = getEndpoint( request.getURI() );
+    CircuitBreaker circuitBreaker = getCircuitBreaker( endpoint );
+
+    long permit = circuitBreaker.tryAcquire();
+    if ( permit == CircuitBreaker.REJECTED ) {
+      throw new CircuitBreakerOpenException( endpoint );
+    }
+
+    long start = System.nanoTime();
+    ClientResponse response;
+    try {
+      response = getNext().handle( request );
+    } catch ( RuntimeException e ) {
+      circuitBreaker.record( permit, true, System.nanoTime() - start );
+      throw e;
+    }
+
+    circuitBreaker.record( permit, isFailure( response.getStatus() ), System.nanoTime() - start );
+    return response;
+  }
+
+  private static boolean isFailure( int status ) {
+    return status >= 500 || status == 408 || status == 429;
+  }
+
+  /**
+   * Returns the circuit breaker for the given endpoint
+   *
+   * @param endpoint the endpoint (see {@link #getEndpoint(URI)})
+   * @return the circuit breaker
+   */
+  @Nonnull
+  public CircuitBreaker getCircuitBreaker( @Nonnull String endpoint ) {
+    @Nullable CircuitBreaker existing = circuitBreakers.get( endpoint );
+    if ( existing != null ) {
+      return existing;
+    }
+
+    CircuitBreaker created = new CircuitBreaker( endpoint, policy );
+    existing = circuitBreakers.putIfAbsent( endpoint, created );
+    return existing == null ? created : existing;
+  }
+
+  /**
+   * Returns the states of all endpoints
+   *
+   * @return a snapshot of the states
+   */
+  @Nonnull
+  public Map<String, CircuitBreaker.State> getStates() {
+    Map<String, CircuitBreaker.State> states = new HashMap<>();
+    for ( CircuitBreaker circuitBreaker : circuitBreakers.values() ) {
+      states.put( circuitBreaker.getEndpoint(), circuitBreaker.getState() );
+    }
+    return Collections.unmodifiableMap( states );
+  }
+
+  /**
+   * Returns the endpoint for the given uri. Credentials are not contained.
+   *
+   * @param uri the uri
+   * @return the endpoint (scheme, host and port)
+   */
+  @Nonnull
+  public static String getEndpoint( @Nonnull URI uri ) {
+    return uri.getScheme() + "://" + uri.getHost() + ( uri.getPort() < 0 ? "" : ":" + uri.getPort() );
+  }
+
+  @Nonnull
+  public CircuitBreakerPolicy getPolicy() {
+    return policy;
+  }
+}
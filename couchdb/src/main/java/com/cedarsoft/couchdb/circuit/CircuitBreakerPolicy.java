@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.circuit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for the circuit breakers (see {@link CircuitBreakerFilter}).
+ * <p>
+ * The outcomes of the last requests are recorded within a sliding window. The circuit is opened if the rate of
+ * failed or slow requests exceeds the thresholds. While open, all requests fail fast. After the open duration
+ * a few probe requests are let through (half open). If they succeed, the circuit is closed again.
+ * All durations are stored in milliseconds.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class CircuitBreakerPolicy {
+  public static final double DEFAULT_FAILURE_RATE = 0.5;
+  public static final long DEFAULT_SLOW_CALL_DURATION = TimeUnit.SECONDS.toMillis( 10 );
+  public static final double DEFAULT_SLOW_CALL_RATE = 0.5;
+  public static final int DEFAULT_WINDOW_SIZE = 100;
+  public static final int DEFAULT_MINIMUM_REQUESTS = 20;
+  public static final long DEFAULT_OPEN_DURATION = TimeUnit.SECONDS.toMillis( 30 );
+  public static final int DEFAULT_HALF_OPEN_REQUESTS = 3;
+
+  private double failureRate = DEFAULT_FAILURE_RATE;
+  private long slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+  private double slowCallRate = DEFAULT_SLOW_CALL_RATE;
+  private int windowSize = DEFAULT_WINDOW_SIZE;
+  private int minimumRequests = DEFAULT_MINIMUM_REQUESTS;
+  private long openDuration = DEFAULT_OPEN_DURATION;
+  private int halfOpenRequests = DEFAULT_HALF_OPEN_REQUESTS;
+  @Nullable
+  private CircuitBreakerListener listener;
+
+  @Nonnull
+  public static CircuitBreakerPolicy defaults() {
+    return new CircuitBreakerPolicy();
+  }
+
+  public CircuitBreakerPolicy() {
+  }
+
+  public CircuitBreakerPolicy( @Nonnull CircuitBreakerPolicy policy ) {
+    this.failureRate = policy.failureRate;
+    this.slowCallDuration = policy.slowCallDuration;
+    this.slowCallRate = policy.slowCallRate;
+    this.windowSize = policy.windowSize;
+    this.minimumRequests = policy.minimumRequests;
+    this.openDuration = policy.openDuration;
+    this.halfOpenRequests = policy.halfOpenRequests;
+    this.listener = policy.listener;
+  }
+
+  /**
+   * Sets the failure rate the circuit is opened at
+   *
+   * @param failureRate the failure rate (0 - 1)
+   * @return this
+   */
+  @Nonnull
+  public CircuitBreakerPolicy failureRate( double failureRate ) {
+    this.failureRate = verifyRate( failureRate );
+    return this;
+  }
+
+  /**
+   * Requests that take longer than the given duration are considered slow.
+   * The circuit is opened if the rate of slow requests reaches the given rate.
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @param rate     the rate of slow calls (0 - 1)
+   * @return this
+   */
+  @Nonnull
+  public CircuitBreakerPolicy slowCalls( long duration, @Nonnull TimeUnit unit, double rate ) {
+    if ( duration < 0 ) {
+      throw new IllegalArgumentException( "Invalid duration <" + duration + ">" );
+    }
+    this.slowCallDuration = unit.toMillis( duration );
+    this.slowCallRate = verifyRate( rate );
+    return this;
+  }
+
+  /**
+   * Sets the size of the sliding window
+   *
+   * @param size            the number of requests whose outcomes are recorded
+   * @param minimumRequests the minimum number of recorded requests before the rates are evaluated
+   * @return this
+   */
+  @Nonnull
+  public CircuitBreakerPolicy window( int size, int minimumRequests ) {
+    if ( size < 1 || minimumRequests < 1 || minimumRequests > size ) {
+      throw new IllegalArgumentException( "Invalid window <" + size + "> - <" + minimumRequests + ">" );
+    }
+    this.windowSize = size;
+    this.minimumRequests = minimumRequests;
+    return this;
+  }
+
+  /**
+   * Sets the duration the circuit stays open before probe requests are let through
+   *
+   * @param duration the duration
+   * @param unit     the unit
+   * @return this
+   */
+  @Nonnull
+  public CircuitBreakerPolicy openDuration( long duration, @Nonnull TimeUnit unit ) {
+    if ( duration < 0 ) {
+      throw new IllegalArgumentException( "Invalid duration <" + duration + ">" );
+    }
+    this.openDuration = unit.toMillis( duration );
+    return this;
+  }
+
+  /**
+   * Sets the number of probe requests that must succeed to close the circuit again
+   *
+   * @param halfOpenRequests the number of probe requests
+   * @return this
+   */
+  @Nonnull
+  public CircuitBreakerPolicy halfOpenRequests( int halfOpenRequests ) {
+    if ( halfOpenRequests < 1 ) {
+      throw new IllegalArgumentException( "Invalid half open requests <" + halfOpenRequests + ">" );
+    }
+    this.halfOpenRequests = halfOpenRequests;
+    return this;
+  }
+
+  /**
+   * Sets the listener that is notified about state changes
+   *
+   * @param listener the listener
+   * @return this
+   */
+  @Nonnull
+  public CircuitBreakerPolicy listener( @Nullable CircuitBreakerListener listener ) {
+    this.listener = listener;
+    return this;
+  }
+
+  private static double verifyRate( double rate ) {
+    if ( rate <= 0 || rate > 1 ) {
+      throw new IllegalArgumentException( "Invalid rate <" + rate + ">" );
+    }
+    return rate;
+  }
+
+  public double getFailureRate() {
+    return failureRate;
+  }
+
+  public long getSlowCallDuration() {
+    return slowCallDuration;
+  }
+
+  public double getSlowCallRate() {
+    return slowCallRate;
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  public int getMinimumRequests() {
+    return minimumRequests;
+  }
+
+  public long getOpenDuration() {
+    return openDuration;
+  }
+
+  public int getHalfOpenRequests() {
+    return halfOpenRequests;
+  }
+
+  @Nullable
+  public CircuitBreakerListener getListener() {
+    return listener;
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreakerPolicy{" +
+      "failureRate=" + failureRate +
+      ", slowCallDuration=" + slowCallDuration +
+      ", slowCallRate=" + slowCallRate +
+      ", windowSize=" + windowSize +
+      ", minimumRequests=" + minimumRequests +
+      ", openDuration=" + openDuration +
+      ", halfOpenRequests=" + halfOpenRequests +
+      '}';
+  }
+}
@@ -39,20 +39,33 @@ import com.cedarsoft.couchdb.core.UniqueId;
 import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
 import com.cedarsoft.serialization.jackson.JacksonSupport;
 import com.cedarsoft.version.VersionException;
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 import com.sun.jersey.api.client.ClientResponse;
-import org.apache.commons.io.input.TeeInputStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.WillClose;
 import javax.annotation.WillNotClose;
 import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class ActionResponseSerializer {
+  @Nonnull
+  private static final Logger LOG = Logger.getLogger( ActionResponseSerializer.class.getName() );
+
+  /**
+   * Only captures the raw bytes if debug logging is enabled
+   */
+  @Nonnull
+  private static final ActionResponseSerializer FAST = new ActionResponseSerializer( false );
 
   /**
    * Creates a new action response based on the given client response
@@ -66,7 +79,7 @@ public class ActionResponseSerializer {
   public static ActionResponse create( @WillClose @Nonnull ClientResponse response ) throws ActionFailedException {
     try {
       verifyNoError( response );
-      return new ActionResponseSerializer().deserialize( response );
+      return FAST.deserialize( response );
     } finally {
       response.close();
     }
@@ -100,31 +113,113 @@ public class ActionResponseSerializer {
   public static final String PROPERTY_REV = "rev";
   public static final String PROPERTY_OK = "ok";
 
+  private final boolean captureRaw;
+
+  /**
+   * Creates a serializer that always captures the raw bytes
+   */
+  public ActionResponseSerializer() {
+    this( true );
+  }
+
+  /**
+   * Creates a new serializer
+   *
+   * @param captureRaw whether the raw bytes are always captured (see {@link ActionResponse#getRaw()}).
+   *                   If false the raw bytes are only captured if debug logging is enabled.
+   */
+  public ActionResponseSerializer( boolean captureRaw ) {
+    this.captureRaw = captureRaw;
+  }
+
+  /**
+   * Deserializes the response.
+   * The raw bytes are only recorded if they are captured explicitly or debug logging is enabled.
+   * Otherwise the response is parsed directly from the stream.
+   * <p>
+   * If parsing fails, the content is added to the exception. Without recording, the complete content is only available
+   * if the entity stream supports mark/reset - otherwise the unparsed rest is added.
+   *
+   * @param response the response
+   * @return the action response
+   *
+   * @throws VersionException
+   */
   @Nonnull
   public ActionResponse deserialize( @Nonnull ClientResponse response ) throws VersionException {
     if ( !MediaType.APPLICATION_JSON_TYPE.equals( response.getType() ) ) {
       throw new IllegalStateException( "Invalid media type: " + response.getType() );
     }
 
-    InputStream entityInputStream = response.getEntityInputStream();
+    if ( captureRaw || LOG.isLoggable( Level.FINE ) ) {
+      return deserializeRecorded( response );
+    }
 
-    try {
-      //Wrap the input stream
-      try ( MaxLengthByteArrayOutputStream teedOut = new MaxLengthByteArrayOutputStream(); TeeInputStream teeInputStream = new TeeInputStream( entityInputStream, teedOut ) ) {
-        UniqueId uniqueId = deserialize( teeInputStream );
+    InputStream in = response.getEntityInputStream();
+    boolean marked = in.markSupported();
+    if ( marked ) {
+      in.mark( ActionResponse.MAX_RAW_LENGTH );
+    }
 
-        return new ActionResponse( uniqueId, response.getStatus(), response.getLocation(), teedOut.toByteArray() );
+    try ( JsonParser parser = JacksonSupport.getJsonFactory().createJsonParser( in ) ) {
+      try {
+        return new ActionResponse( deserializeObject( parser ), response.getStatus(), response.getLocation(), null );
+      } catch ( VersionException e ) {
+        throw e;
+      } catch ( IOException | RuntimeException e ) {
+        //Must be read before the parser is closed
+        throw new RuntimeException( "Could not parse action response <" + readContent( in, parser, marked ) + ">", e );
       }
     } catch ( IOException e ) {
       throw new RuntimeException( e );
     }
   }
 
+  @Nonnull
+  private ActionResponse deserializeRecorded( @Nonnull ClientResponse response ) throws VersionException {
+    RecordingInputStream in = new RecordingInputStream( response.getEntityInputStream(), new byte[ActionResponse.MAX_RAW_LENGTH] );
+    UniqueId uniqueId;
+    try {
+      uniqueId = deserialize( in );
+    } catch ( VersionException e ) {
+      throw e;
+    } catch ( IOException | RuntimeException e ) {
+      throw new RuntimeException( "Could not parse action response <" + new String( in.getRecorded(), Charsets.UTF_8 ) + ">", e );
+    }
+
+    return new ActionResponse( uniqueId, response.getStatus(), response.getLocation(), in.getRecorded() );
+  }
+
+  /**
+   * Reads the content for an error message.
+   * Returns the complete content if the stream has been marked. Otherwise only the content that has not been parsed yet is returned.
+   */
+  @Nonnull
+  private static String readContent( @Nonnull InputStream in, @Nonnull JsonParser parser, boolean marked ) {
+    try {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      if ( marked ) {
+        in.reset();
+      } else {
+        content.write( "...".getBytes( Charsets.UTF_8 ) );
+        parser.releaseBuffered( content );
+      }
+      ByteStreams.copy( ByteStreams.limit( in, ActionResponse.MAX_RAW_LENGTH ), content );
+      return new String( content.toByteArray(), Charsets.UTF_8 );
+    } catch ( IOException ignore ) {
+      return "unknown";
+    }
+  }
+
   @Nonnull
   public UniqueId deserialize( @Nonnull InputStream in ) throws VersionException, IOException {
-    JsonFactory jsonFactory = JacksonSupport.getJsonFactory();
+    try ( JsonParser parser = JacksonSupport.getJsonFactory().createJsonParser( in ) ) {
+      return deserializeObject( parser );
+    }
+  }
 
-    JsonParser parser = jsonFactory.createJsonParser( in );
+  @Nonnull
+  private UniqueId deserializeObject( @Nonnull JsonParser parser ) throws VersionException, IOException {
     JacksonParserWrapper parserWrapper = new JacksonParserWrapper( parser );
     parserWrapper.nextToken( JsonToken.START_OBJECT );
 
@@ -135,6 +230,52 @@ public class ActionResponseSerializer {
     return deserialized;
   }
 
+  public boolean isCaptureRaw() {
+    return captureRaw;
+  }
+
+  /**
+   * Records the first bytes that are read into a buffer. Not thread safe.
+   */
+  private static class RecordingInputStream extends FilterInputStream {
+    @Nonnull
+    private final byte[] buffer;
+    private int count;
+
+    private RecordingInputStream( @Nonnull InputStream in, @Nonnull byte[] buffer ) {
+      super( in );
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if ( read >= 0 && count < buffer.length ) {
+        buffer[count++] = ( byte ) read;
+      }
+      return read;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+      int read = super.read( b, off, len );
+      if ( read > 0 && count < buffer.length ) {
+        int recorded = Math.min( read, buffer.length - count );
+        System.arraycopy( b, off, buffer, count, recorded );
+        count += recorded;
+      }
+      return read;
+    }
+
+    /**
+     * Returns a copy of the recorded bytes
+     */
+    @Nonnull
+    private byte[] getRecorded() {
+      return Arrays.copyOf( buffer, count );
+    }
+  }
+
   @Nonnull
   public UniqueId deserialize( @Nonnull JsonParser deserializeFrom ) throws VersionException, IOException {
     JacksonParserWrapper parser = new JacksonParserWrapper( deserializeFrom );
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.BulkDocResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.cedarsoft.serialization.jackson.JacksonSupport;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Serializes the keys for a "_all_docs" request and deserializes the corresponding response (with included docs).
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AllDocsSerializer {
+  @Nonnull
+  public static final String PROPERTY_KEYS = "keys";
+  @Nonnull
+  public static final String PROPERTY_ERROR = "error";
+  @Nonnull
+  public static final String PROPERTY_DOC = "doc";
+  @Nonnull
+  public static final String PROPERTY_REV = "rev";
+  @Nonnull
+  public static final String PROPERTY_DELETED = "deleted";
+
+  @Nonnull
+  private final CouchDocSerializer couchDocSerializer;
+
+  public AllDocsSerializer( @Nonnull CouchDocSerializer couchDocSerializer ) {
+    this.couchDocSerializer = couchDocSerializer;
+  }
+
+  /**
+   * Serializes the keys
+   *
+   * @param ids the ids
+   * @param out the output stream
+   * @throws IOException
+   */
+  public void serializeKeys( @Nonnull Collection<? extends DocId> ids, @Nonnull OutputStream out ) throws IOException {
+    JsonGenerator generator = RawCouchDocSerializer.createJsonGenerator( out );
+
+    generator.writeStartObject();
+    generator.writeArrayFieldStart( PROPERTY_KEYS );
+    for ( DocId id : ids ) {
+      generator.writeString( id.asString() );
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+    generator.close();
+  }
+
+  /**
+   * Deserializes the response
+   *
+   * @param wrappedSerializer the serializer for the objects contained within the docs
+   * @param in                the input stream
+   * @param <T>               the type
+   * @return one response for each row (in the same order as the keys have been sent)
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public <T> List<? extends BulkDocResponse<T>> deserialize( @Nonnull JacksonSerializer<T> wrappedSerializer, @Nonnull InputStream in ) throws IOException {
+    JsonFactory jsonFactory = JacksonSupport.getJsonFactory();
+    JsonParser parser = jsonFactory.createJsonParser( in );
+    JacksonParserWrapper parserWrapper = new JacksonParserWrapper( parser );
+
+    parserWrapper.nextToken( JsonToken.START_OBJECT );
+
+    //Skip total_rows and offset
+    parserWrapper.nextToken( JsonToken.FIELD_NAME );
+    while ( !parser.getCurrentName().equals( ViewResponseSerializer.PROPERTY_ROWS ) ) {
+      parser.nextToken();
+      parser.skipChildren();
+      parserWrapper.nextToken( JsonToken.FIELD_NAME );
+    }
+
+    parserWrapper.nextToken( JsonToken.START_ARRAY );
+
+    List<BulkDocResponse<T>> responses = new ArrayList<>();
+    while ( parser.nextToken() != JsonToken.END_ARRAY ) {
+      parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+      responses.add( deserializeRow( wrappedSerializer, parserWrapper ) );
+    }
+
+    return responses;
+  }
+
+  @Nonnull
+  private <T> BulkDocResponse<T> deserializeRow( @Nonnull JacksonSerializer<T> wrappedSerializer, @Nonnull JacksonParserWrapper parser ) throws IOException {
+    String key = null;
+    String rev = null;
+    boolean deleted = false;
+    @Nullable CouchDoc<T> doc = null;
+
+    while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+      String currentName = parser.getCurrentName();
+
+      if ( currentName.equals( RowSerializer.PROPERTY_KEY ) ) {
+        parser.nextToken( JsonToken.VALUE_STRING );
+        key = parser.getText();
+        continue;
+      }
+
+      if ( currentName.equals( RowSerializer.PROPERTY_VALUE ) ) {
+        parser.nextToken( JsonToken.START_OBJECT );
+        while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+          String valueName = parser.getCurrentName();
+          parser.nextToken();
+
+          if ( valueName.equals( PROPERTY_REV ) ) {
+            rev = parser.getText();
+          } else if ( valueName.equals( PROPERTY_DELETED ) ) {
+            deleted = parser.getParser().getBooleanValue();
+          } else {
+            parser.getParser().skipChildren();
+          }
+        }
+        continue;
+      }
+
+      if ( currentName.equals( PROPERTY_DOC ) ) {
+        if ( parser.nextToken() != JsonToken.VALUE_NULL ) {
+          doc = couchDocSerializer.deserializeObject( wrappedSerializer, parser );
+        }
+        continue;
+      }
+
+      //Skip everything else ("id" is identical to the key, "error" is always "not_found")
+      parser.nextToken();
+      parser.getParser().skipChildren();
+    }
+
+    parser.verifyDeserialized( key, RowSerializer.PROPERTY_KEY );
+    assert key != null;
+
+    return new BulkDocResponse<>( new DocId( key ), doc, rev == null ? null : new Revision( rev ), deleted );
+  }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.AttachmentId;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
+import com.cedarsoft.serialization.jackson.JacksonSupport;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deserializes only the attachment stubs ("_attachments") of documents.
+ * All other properties (including the wrapped object) are skipped without being deserialized.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AttachmentStubsSerializer {
+  @Nonnull
+  public static final String PROPERTY_CONTENT_TYPE = CouchDocSerializer.PROPERTY_CONTENT_TYPE;
+  @Nonnull
+  public static final String PROPERTY_LENGTH = "length";
+  @Nonnull
+  public static final String PROPERTY_DIGEST = "digest";
+
+  /**
+   * Deserializes the attachments stubs of one document
+   *
+   * @param in the input stream containing the document
+   * @return the stubs
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public List<? extends CouchDoc.StubbedAttachment> deserialize( @Nonnull InputStream in ) throws IOException {
+    JsonParser parser = JacksonSupport.getJsonFactory().createJsonParser( in );
+    JacksonParserWrapper parserWrapper = new JacksonParserWrapper( parser );
+
+    parserWrapper.nextToken( JsonToken.START_OBJECT );
+    List<? extends CouchDoc.StubbedAttachment> stubs = deserializeDoc( parserWrapper );
+    parserWrapper.ensureParserClosed();
+    return stubs;
+  }
+
+  /**
+   * Deserializes the attachment stubs for a "_all_docs" response (with included docs)
+   *
+   * @param in the input stream
+   * @return the stubs for each found document (in the order of the rows). Missing and deleted documents are not contained
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public Map<DocId, List<? extends CouchDoc.StubbedAttachment>> deserializeAllDocs( @Nonnull InputStream in ) throws IOException {
+    JsonParser parser = JacksonSupport.getJsonFactory().createJsonParser( in );
+    JacksonParserWrapper parserWrapper = new JacksonParserWrapper( parser );
+
+    parserWrapper.nextToken( JsonToken.START_OBJECT );
+
+    //Skip total_rows and offset
+    parserWrapper.nextToken( JsonToken.FIELD_NAME );
+    while ( !parser.getCurrentName().equals( ViewResponseSerializer.PROPERTY_ROWS ) ) {
+      parser.nextToken();
+      parser.skipChildren();
+      parserWrapper.nextToken( JsonToken.FIELD_NAME );
+    }
+
+    parserWrapper.nextToken( JsonToken.START_ARRAY );
+
+    Map<DocId, List<? extends CouchDoc.StubbedAttachment>> stubs = new LinkedHashMap<>();
+    while ( parser.nextToken() != JsonToken.END_ARRAY ) {
+      parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+
+      @Nullable String key = null;
+      @Nullable List<? extends CouchDoc.StubbedAttachment> docStubs = null;
+
+      while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+        String currentName = parser.getCurrentName();
+        parser.nextToken();
+
+        if ( currentName.equals( RowSerializer.PROPERTY_KEY ) ) {
+          key = parser.getText();
+        } else if ( currentName.equals( AllDocsSerializer.PROPERTY_DOC ) && parser.getCurrentToken() == JsonToken.START_OBJECT ) {
+          docStubs = deserializeDoc( parserWrapper );
+        } else {
+          parser.skipChildren();
+        }
+      }
+
+      parserWrapper.verifyDeserialized( key, RowSerializer.PROPERTY_KEY );
+      assert key != null;
+      if ( docStubs != null ) {
+        stubs.put( new DocId( key ), docStubs );
+      }
+    }
+
+    return stubs;
+  }
+
+  /**
+   * Deserializes the stubs of a document. The parser must be placed on the START_OBJECT of the document.
+   * Returns when the END_OBJECT of the document has been reached.
+   */
+  @Nonnull
+  private static List<? extends CouchDoc.StubbedAttachment> deserializeDoc( @Nonnull JacksonParserWrapper parserWrapper ) throws IOException {
+    parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+    JsonParser parser = parserWrapper.getParser();
+
+    List<? extends CouchDoc.StubbedAttachment> stubs = new ArrayList<CouchDoc.StubbedAttachment>();
+    while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+      String currentName = parser.getCurrentName();
+      parser.nextToken();
+
+      if ( currentName.equals( CouchDocSerializer.PROPERTY_ATTACHMENTS ) ) {
+        stubs = deserializeStubs( parserWrapper );
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    parserWrapper.verifyCurrentToken( JsonToken.END_OBJECT );
+    return stubs;
+  }
+
+  /**
+   * Deserializes the content of the "_attachments" object.
+   * The parser must be placed on the START_OBJECT. Afterwards the parser is placed on the corresponding END_OBJECT.
+   * <p>
+   * The properties of the stubs may appear in any order. Unknown properties are skipped.
+   *
+   * @param parserWrapper the parser wrapper
+   * @return the stubs
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public static List<? extends CouchDoc.StubbedAttachment> deserializeStubs( @Nonnull JacksonParserWrapper parserWrapper ) throws IOException {
+    parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+    JsonParser parser = parserWrapper.getParser();
+
+    List<CouchDoc.StubbedAttachment> stubs = new ArrayList<>();
+    while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+      String attachmentId = parser.getCurrentName();
+      parserWrapper.nextToken( JsonToken.START_OBJECT );
+
+      @Nullable String contentType = null;
+      long length = -1;
+      @Nullable String digest = null;
+
+      while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+        String currentName = parser.getCurrentName();
+        parser.nextToken();
+
+        switch ( currentName ) {
+          case PROPERTY_CONTENT_TYPE:
+            contentType = parser.getText();
+            break;
+          case PROPERTY_LENGTH:
+            length = parser.getLongValue();
+            break;
+          case PROPERTY_DIGEST:
+            digest = parser.getText();
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+
+      parserWrapper.verifyDeserialized( contentType, PROPERTY_CONTENT_TYPE );
+      assert contentType != null;
+      stubs.add( new CouchDoc.StubbedAttachment( new AttachmentId( attachmentId ), MediaType.valueOf( contentType ), length, digest ) );
+    }
+
+    parserWrapper.verifyCurrentToken( JsonToken.END_OBJECT );
+    return stubs;
+  }
+}
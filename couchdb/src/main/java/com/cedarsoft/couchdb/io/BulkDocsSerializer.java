@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.ActionResponse;
+import com.cedarsoft.couchdb.core.BulkActionResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.cedarsoft.serialization.jackson.JacksonSupport;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Serializes the request for "_bulk_docs" and deserializes the corresponding response
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class BulkDocsSerializer {
+  @Nonnull
+  public static final String PROPERTY_DOCS = "docs";
+  @Nonnull
+  public static final String PROPERTY_ID = ActionResponseSerializer.PROPERTY_ID;
+  @Nonnull
+  public static final String PROPERTY_REV = ActionResponseSerializer.PROPERTY_REV;
+  @Nonnull
+  public static final String PROPERTY_OK = ActionResponseSerializer.PROPERTY_OK;
+  @Nonnull
+  public static final String PROPERTY_ERROR = ActionFailedExceptionSerializer.PROPERTY_ERROR;
+  @Nonnull
+  public static final String PROPERTY_REASON = ActionFailedExceptionSerializer.PROPERTY_REASON;
+
+  @Nonnull
+  private final CouchDocSerializer couchDocSerializer;
+
+  public BulkDocsSerializer( @Nonnull CouchDocSerializer couchDocSerializer ) {
+    this.couchDocSerializer = couchDocSerializer;
+  }
+
+  /**
+   * Writes the docs directly to the given output stream
+   *
+   * @param docs              the docs
+   * @param wrappedSerializer the serializer for the objects contained within the docs
+   * @param out               the output stream
+   * @param <T>               the type of the objects
+   * @throws IOException
+   */
+  public <T> void serialize( @Nonnull Collection<? extends CouchDoc<T>> docs, @Nonnull JacksonSerializer<? super T> wrappedSerializer, @Nonnull OutputStream out ) throws IOException {
+    JsonGenerator generator = RawCouchDocSerializer.createJsonGenerator( out );
+
+    generator.writeStartObject();
+    generator.writeArrayFieldStart( PROPERTY_DOCS );
+
+    for ( CouchDoc<T> doc : docs ) {
+      couchDocSerializer.serialize( doc, wrappedSerializer, generator );
+    }
+
+    generator.writeEndArray();
+    generator.writeEndObject();
+    generator.close();
+  }
+
+  /**
+   * Deserializes the response of a bulk request
+   *
+   * @param status the status of the http response
+   * @param dbUri  the uri of the database (used to create the locations)
+   * @param in     the input stream
+   * @return the responses - in the same order as the docs have been sent
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public List<? extends BulkActionResponse> deserialize( int status, @Nonnull URI dbUri, @Nonnull InputStream in ) throws IOException {
+    JsonFactory jsonFactory = JacksonSupport.getJsonFactory();
+    JsonParser parser = jsonFactory.createJsonParser( in );
+    JacksonParserWrapper parserWrapper = new JacksonParserWrapper( parser );
+
+    parserWrapper.nextToken( JsonToken.START_ARRAY );
+
+    List<BulkActionResponse> responses = new ArrayList<>();
+    while ( parser.nextToken() != JsonToken.END_ARRAY ) {
+      parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+      responses.add( deserializeEntry( status, dbUri, parserWrapper ) );
+    }
+
+    return responses;
+  }
+
+  @Nonnull
+  private static BulkActionResponse deserializeEntry( int status, @Nonnull URI dbUri, @Nonnull JacksonParserWrapper parser ) throws IOException {
+    String id = null;
+    String rev = null;
+    String error = null;
+    String reason = null;
+
+    while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+      String currentName = parser.getCurrentName();
+
+      if ( currentName.equals( PROPERTY_ID ) ) {
+        parser.nextToken( JsonToken.VALUE_STRING );
+        id = parser.getText();
+        continue;
+      }
+
+      if ( currentName.equals( PROPERTY_REV ) ) {
+        parser.nextToken( JsonToken.VALUE_STRING );
+        rev = parser.getText();
+        continue;
+      }
+
+      if ( currentName.equals( PROPERTY_ERROR ) ) {
+        parser.nextToken( JsonToken.VALUE_STRING );
+        error = parser.getText();
+        continue;
+      }
+
+      if ( currentName.equals( PROPERTY_REASON ) ) {
+        parser.nextToken( JsonToken.VALUE_STRING );
+        reason = parser.getText();
+        continue;
+      }
+
+      //Skip everything else (e.g. "ok")
+      parser.nextToken();
+      parser.getParser().skipChildren();
+    }
+
+    parser.verifyDeserialized( id, PROPERTY_ID );
+    assert id != null;
+
+    DocId docId = new DocId( id );
+
+    if ( error != null ) {
+      return new BulkActionResponse( docId, new ActionFailedException( getStatus( error, status ), error, reason == null ? "unknown" : reason, null ) );
+    }
+
+    parser.verifyDeserialized( rev, PROPERTY_REV );
+    assert rev != null;
+
+    URI location = URI.create( dbUri.toString() + "/" + docId.asString() );
+    return new BulkActionResponse( new ActionResponse( docId, new Revision( rev ), status, location ) );
+  }
+
+  /**
+   * Returns the status code that corresponds to the error.
+   * The bulk response contains only one status code for all docs.
+   *
+   * @param error         the error
+   * @param defaultStatus the status of the complete response
+   * @return the status code
+   */
+  private static int getStatus( @Nullable String error, int defaultStatus ) {
+    if ( "conflict".equals( error ) ) {
+      return 409;
+    }
+    if ( "forbidden".equals( error ) ) {
+      return 403;
+    }
+    if ( "unauthorized".equals( error ) ) {
+      return 401;
+    }
+    return defaultStatus;
+  }
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.Change;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.cedarsoft.serialization.jackson.JacksonSupport;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.AbstractIterator;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Iterates lazily over the entries of a changes feed.
+ * <p>
+ * Supports the "normal"/"longpoll" format (one JSON object containing the results) and the
+ * "continuous" format (one JSON object per line, heartbeats are sent as empty lines).
+ * <p>
+ * The iterator must be closed to release the underlying connection. This is done automatically
+ * when the last change has been read.
+ *
+ * @param <T> the type of the included documents
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ChangeIterator<T> extends AbstractIterator<Change<T>> implements Closeable {
+  @Nonnull
+  private static final Logger LOG = Logger.getLogger( ChangeIterator.class.getName() );
+
+  @Nonnull
+  public static final String PROPERTY_RESULTS = "results";
+  @Nonnull
+  public static final String PROPERTY_LAST_SEQ = "last_seq";
+  @Nonnull
+  public static final String PROPERTY_SEQ = "seq";
+  @Nonnull
+  public static final String PROPERTY_ID = "id";
+  @Nonnull
+  public static final String PROPERTY_CHANGES = "changes";
+  @Nonnull
+  public static final String PROPERTY_REV = "rev";
+  @Nonnull
+  public static final String PROPERTY_DELETED = "deleted";
+  @Nonnull
+  public static final String PROPERTY_DOC = "doc";
+  @Nonnull
+  public static final String DESIGN_DOC_PREFIX = "_design/";
+
+  @Nonnull
+  private final CouchDocSerializer couchDocSerializer;
+  @Nullable
+  private final JacksonSerializer<T> docSerializer;
+  @Nonnull
+  private final StoppableInputStream in;
+  @Nullable
+  private final ConnectionReleaseTrigger connection;
+  @Nonnull
+  private final JsonParser parser;
+  @Nonnull
+  private final JacksonParserWrapper parserWrapper;
+  private final boolean continuous;
+
+  @Nullable
+  private String lastSeq;
+  private boolean closed;
+
+  /**
+   * Creates a new iterator
+   *
+   * @param couchDocSerializer the couch doc serializer
+   * @param docSerializer      the serializer for the included documents (null if no documents shall be deserialized)
+   * @param in                 the input stream (is closed when the iterator is closed)
+   * @param continuous         whether the stream contains a continuous feed
+   * @throws IOException
+   */
+  public ChangeIterator( @Nonnull CouchDocSerializer couchDocSerializer, @Nullable JacksonSerializer<T> docSerializer, @Nonnull InputStream in, boolean continuous ) throws IOException {
+    this( couchDocSerializer, docSerializer, in, continuous, null );
+  }
+
+  /**
+   * Creates a new iterator
+   *
+   * @param couchDocSerializer the couch doc serializer
+   * @param docSerializer      the serializer for the included documents (null if no documents shall be deserialized)
+   * @param in                 the input stream (is closed when the iterator is closed)
+   * @param continuous         whether the stream contains a continuous feed
+   * @param connection         the connection the stream is read from (is aborted when the iterator is stopped)
+   * @throws IOException
+   */
+  public ChangeIterator( @Nonnull CouchDocSerializer couchDocSerializer, @Nullable JacksonSerializer<T> docSerializer, @Nonnull InputStream in, boolean continuous, @Nullable ConnectionReleaseTrigger connection ) throws IOException {
+    this.couchDocSerializer = couchDocSerializer;
+    this.docSerializer = docSerializer;
+    this.in = new StoppableInputStream( in );
+    this.connection = connection;
+    this.continuous = continuous;
+    this.parser = JacksonSupport.getJsonFactory().createJsonParser( this.in );
+    this.parserWrapper = new JacksonParserWrapper( parser );
+
+    if ( !continuous ) {
+      parserWrapper.nextToken( JsonToken.START_OBJECT );
+
+      parserWrapper.nextToken( JsonToken.FIELD_NAME );
+      while ( !parser.getCurrentName().equals( PROPERTY_RESULTS ) ) {
+        parser.nextToken();
+        if ( parser.getCurrentName().equals( PROPERTY_LAST_SEQ ) ) {
+          lastSeq = readSeq( parser );
+        } else {
+          parser.skipChildren();
+        }
+        parserWrapper.nextToken( JsonToken.FIELD_NAME );
+      }
+
+      parserWrapper.nextToken( JsonToken.START_ARRAY );
+    }
+  }
+
+  /**
+   * Returns the last sequence that has been read.
+   * After all changes have been read, this is the "last_seq" reported by the server (if there is one).
+   *
+   * @return the last seq or null if the server has not sent one (yet)
+   */
+  @Nullable
+  public String getLastSeq() {
+    return lastSeq;
+  }
+
+  @Override
+  protected Change<T> computeNext() {
+    if ( closed ) {
+      return endOfData();
+    }
+
+    try {
+      if ( continuous ) {
+        JsonToken token = parser.nextToken();
+        if ( token == null ) {
+          close();
+          return endOfData();
+        }
+
+        parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+        @Nullable Change<T> change = deserializeChange();
+        if ( change == null ) {
+          //Only the last seq has been sent - the feed is finished
+          close();
+          return endOfData();
+        }
+        return change;
+      }
+
+      if ( parser.nextToken() == JsonToken.END_ARRAY ) {
+        while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+          String currentName = parser.getCurrentName();
+          parser.nextToken();
+          if ( currentName.equals( PROPERTY_LAST_SEQ ) ) {
+            lastSeq = readSeq( parser );
+          } else {
+            parser.skipChildren();
+          }
+        }
+        close();
+        return endOfData();
+      }
+
+      parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
+      @Nullable Change<T> change = deserializeChange();
+      if ( change == null ) {
+        throw new IOException( "Invalid change entry within results" );
+      }
+      return change;
+    } catch ( IOException e ) {
+      closeQuietly();
+      throw new RuntimeException( "Could not parse due to " + e.getMessage(), e );
+    }
+  }
+
+  /**
+   * Deserializes one change. The parser must be placed on the START_OBJECT token.
+   *
+   * @return the change or null if the object only contains the last seq
+   */
+  @Nullable
+  private Change<T> deserializeChange() throws IOException {
+    String seq = null;
+    String id = null;
+    List<Revision> revs = new ArrayList<>();
+    boolean deleted = false;
+    @Nullable CouchDoc<T> doc = null;
+
+    while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+      String currentName = parser.getCurrentName();
+      parser.nextToken();
+
+      switch ( currentName ) {
+        case PROPERTY_SEQ:
+          seq = readSeq( parser );
+          break;
+        case PROPERTY_LAST_SEQ:
+          lastSeq = readSeq( parser );
+          break;
+        case PROPERTY_ID:
+          id = parser.getText();
+          break;
+        case PROPERTY_CHANGES:
+          parserWrapper.verifyCurrentToken( JsonToken.START_ARRAY );
+          while ( parser.nextToken() == JsonToken.START_OBJECT ) {
+            while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+              String revName = parser.getCurrentName();
+              parser.nextToken();
+              if ( revName.equals( PROPERTY_REV ) ) {
+                revs.add( new Revision( parser.getText() ) );
+              } else {
+                parser.skipChildren();
+              }
+            }
+          }
+          break;
+        case PROPERTY_DELETED:
+          deleted = parser.getBooleanValue();
+          break;
+        case PROPERTY_DOC:
+          //Deleted docs and design documents can not be deserialized using the doc serializer
+          if ( docSerializer != null && !deleted && parser.getCurrentToken() == JsonToken.START_OBJECT && id != null && !id.startsWith( DESIGN_DOC_PREFIX ) ) {
+            doc = couchDocSerializer.deserializeObject( docSerializer, parserWrapper );
+          } else {
+            parser.skipChildren();
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    if ( id == null ) {
+      return null;
+    }
+
+    parserWrapper.verifyDeserialized( seq, PROPERTY_SEQ );
+    assert seq != null;
+    lastSeq = seq;
+    return new Change<>( seq, new DocId( id ), revs, deleted, doc );
+  }
+
+  /**
+   * Reads the sequence at the current token.
+   * Numbers and strings are returned as text, arrays (BigCouch) are returned as JSON
+   *
+   * @param parser the parser
+   * @return the sequence
+   */
+  @Nonnull
+  static String readSeq( @Nonnull JsonParser parser ) throws IOException {
+    JsonToken token = parser.getCurrentToken();
+    if ( token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT ) {
+      StringWriter out = new StringWriter();
+      try ( JsonGenerator generator = JacksonSupport.getJsonFactory().createJsonGenerator( out ) ) {
+        generator.copyCurrentStructure( parser );
+      }
+      return out.toString();
+    }
+    return parser.getText();
+  }
+
+  /**
+   * Returns the time (System.currentTimeMillis()) data (a change or a heartbeat) has been received the last time
+   *
+   * @return the time of the last activity
+   */
+  public long getLastActivity() {
+    return in.lastActivity;
+  }
+
+  /**
+   * Stops reading the feed.
+   * <p>
+   * If the connection is known, it is aborted: A thread that is blocked while waiting for the next change fails immediately
+   * and the connection is returned to the pool without draining it (continuous feeds never end).
+   * Otherwise a blocked thread fails as soon as the next data (change or heartbeat) arrives.
+   */
+  public void stop() {
+    in.stopped = true;
+
+    if ( connection != null ) {
+      in.aborted = true;
+      try {
+        connection.abortConnection();
+      } catch ( IOException e ) {
+        LOG.log( Level.WARNING, "Could not abort connection", e );
+      }
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch ( IOException ignore ) {
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+    try {
+      parser.close();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Input stream that fails as soon as the feed has been stopped and tracks the last activity
+   */
+  private static class StoppableInputStream extends FilterInputStream {
+    private volatile boolean stopped;
+    private volatile boolean aborted;
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    private StoppableInputStream( @Nonnull InputStream in ) {
+      super( in );
+    }
+
+    @Override
+    public int read() throws IOException {
+      verifyNotStopped();
+      int read = super.read();
+      lastActivity = System.currentTimeMillis();
+      return read;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+      verifyNotStopped();
+      int read = super.read( b, off, len );
+      lastActivity = System.currentTimeMillis();
+      return read;
+    }
+
+    private void verifyNotStopped() throws InterruptedIOException {
+      if ( stopped ) {
+        throw new InterruptedIOException( "Changes feed has been stopped" );
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } catch ( IOException e ) {
+        //The connection has been shut down - closing the remaining stream is expected to fail
+        if ( !aborted ) {
+          throw e;
+        }
+      }
+    }
+  }
+}
@@ -31,7 +31,6 @@
 
 package com.cedarsoft.couchdb.io;
 
-import com.cedarsoft.couchdb.core.AttachmentId;
 import com.cedarsoft.couchdb.core.CouchDoc;
 import com.cedarsoft.couchdb.core.DocId;
 import com.cedarsoft.couchdb.core.Revision;
@@ -42,11 +41,9 @@ import com.cedarsoft.version.Version;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import com.sun.jersey.core.util.Base64;
 
 import javax.annotation.Nonnull;
 import javax.annotation.WillClose;
-import javax.ws.rs.core.MediaType;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -109,7 +106,11 @@ public class CouchDocSerializer {
       generator.writeObjectFieldStart( attachment.getId().asString() );
 
       generator.writeStringField( PROPERTY_CONTENT_TYPE, attachment.getContentType().toString() );
-      generator.writeStringField( PROPERTY_DATA, new String( Base64.encode( attachment.getData() ) ) );
+      //Encode the data directly into the generator - avoids copies of the (possibly large) data
+      generator.writeFieldName( PROPERTY_DATA );
+      try ( InputStream in = attachment.openStream() ) {
+        generator.writeBinary( in, -1 );
+      }
 
       generator.writeEndObject();
     }
@@ -138,6 +139,22 @@ public class CouchDocSerializer {
   @Nonnull
   public <T> CouchDoc<T> deserialize( @Nonnull JacksonSerializer<T> wrappedSerializer, @Nonnull JacksonParserWrapper parserWrapper ) throws IOException {
     parserWrapper.nextToken( JsonToken.START_OBJECT );
+    return deserializeObject( wrappedSerializer, parserWrapper );
+  }
+
+  /**
+   * Deserializes the doc. The START_OBJECT token must have been consumed already
+   *
+   * @param wrappedSerializer the wrapped serializer
+   * @param parserWrapper     the parser wrapper (placed on START_OBJECT)
+   * @param <T>               the type
+   * @return the doc
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  <T> CouchDoc<T> deserializeObject( @Nonnull JacksonSerializer<T> wrappedSerializer, @Nonnull JacksonParserWrapper parserWrapper ) throws IOException {
+    parserWrapper.verifyCurrentToken( JsonToken.START_OBJECT );
 
     parserWrapper.nextFieldValue( PROPERTY_ID );
     String id = parserWrapper.getText();
@@ -170,23 +187,7 @@ public class CouchDocSerializer {
     //check for attachments
     if ( parserWrapper.getCurrentToken() == JsonToken.FIELD_NAME && parserWrapper.getCurrentName().equals( PROPERTY_ATTACHMENTS ) ) {
       parserWrapper.nextToken( JsonToken.START_OBJECT );
-
-      while ( parserWrapper.nextToken() != JsonToken.END_OBJECT ) {
-        String attachmentId = parserWrapper.getCurrentName();
-
-        parserWrapper.nextToken( JsonToken.START_OBJECT );
-        parserWrapper.nextFieldValue( PROPERTY_CONTENT_TYPE );
-        String contentType = parserWrapper.getText();
-        parserWrapper.nextFieldValue( "revpos" );
-        parserWrapper.nextFieldValue( "digest" );
-        parserWrapper.nextFieldValue( "length" );
-        long length = parserWrapper.getNumberValue().longValue();
-        parserWrapper.nextFieldValue( "stub" );
-
-        attachments.add( new CouchDoc.StubbedAttachment( new AttachmentId( attachmentId ), MediaType.valueOf( contentType ), length ) );
-
-        parserWrapper.nextToken( JsonToken.END_OBJECT );
-      }
+      attachments.addAll( AttachmentStubsSerializer.deserializeStubs( parserWrapper ) );
       parserWrapper.nextToken( JsonToken.END_OBJECT );
     }
 
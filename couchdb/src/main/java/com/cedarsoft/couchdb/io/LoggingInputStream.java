@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.google.common.base.Charsets;
+
+import javax.annotation.Nonnull;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Captures the first bytes of a stream while they are read and logs them.
+ * <p>
+ * The content is streamed to the caller unchanged. At most <code>maxLength</code> bytes are kept in memory.
+ * The captured content is logged as soon as the limit has been reached, the end of the stream has been reached or
+ * the stream is closed - whatever happens first.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class LoggingInputStream extends FilterInputStream {
+  @Nonnull
+  private final Logger logger;
+  @Nonnull
+  private final Level level;
+  @Nonnull
+  private final byte[] captured;
+
+  private int capturedLength;
+  private boolean truncated;
+  private boolean logged;
+
+  /**
+   * Creates a new logging input stream
+   *
+   * @param in        the input stream
+   * @param logger    the logger
+   * @param level     the level the content is logged with
+   * @param maxLength the max number of bytes that are logged
+   */
+  public LoggingInputStream( @Nonnull InputStream in, @Nonnull Logger logger, @Nonnull Level level, int maxLength ) {
+    super( in );
+    this.logger = logger;
+    this.level = level;
+    this.captured = new byte[maxLength];
+  }
+
+  @Override
+  public int read() throws IOException {
+    int read = super.read();
+    if ( read < 0 ) {
+      log();
+    } else {
+      capture( new byte[]{( byte ) read}, 0, 1 );
+    }
+    return read;
+  }
+
+  @Override
+  public int read( byte[] b, int off, int len ) throws IOException {
+    int read = super.read( b, off, len );
+    if ( read < 0 ) {
+      log();
+    } else {
+      capture( b, off, read );
+    }
+    return read;
+  }
+
+  /**
+   * Skipped bytes are not captured. Therefore the remaining content is not logged
+   */
+  @Override
+  public long skip( long n ) throws IOException {
+    long skipped = super.skip( n );
+    if ( skipped > 0 ) {
+      truncated = true;
+      log();
+    }
+    return skipped;
+  }
+
+  /**
+   * Mark/reset is not supported - the bytes would be captured twice
+   */
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      log();
+    }
+  }
+
+  private void capture( @Nonnull byte[] b, int off, int len ) {
+    if ( logged ) {
+      return;
+    }
+
+    int toCopy = Math.min( len, captured.length - capturedLength );
+    System.arraycopy( b, off, captured, capturedLength, toCopy );
+    capturedLength += toCopy;
+
+    if ( toCopy < len ) {
+      truncated = true;
+      log();
+    }
+  }
+
+  private void log() {
+    if ( logged ) {
+      return;
+    }
+    logged = true;
+
+    String content = new String( captured, 0, capturedLength, Charsets.UTF_8 );
+    if ( truncated ) {
+      logger.log( level, "Showing first " + capturedLength + " bytes:\n" + content + "..." );
+    } else {
+      logger.log( level, content );
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.Row;
+import com.cedarsoft.serialization.jackson.JacksonParserWrapper;
+import com.cedarsoft.serialization.jackson.JacksonSerializer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.AbstractIterator;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Iterates lazily over the rows of a view response.
+ * Each row is deserialized from the parser when it is requested - therefore the memory consumption
+ * does not depend on the size of the view.
+ * <p>
+ * The iterator must be closed to release the underlying connection. This is done automatically
+ * when the last row has been read.
+ * If the iterator is closed before the end of the response and the connection is known, the connection is aborted
+ * (instead of reading the remaining rows).
+ * <p>
+ * Since {@link java.util.Iterator} does not allow checked exceptions, parse errors are reported
+ * as {@link RowParseException} (wrapping the original {@link IOException}) by {@link #hasNext()} and {@link #next()}.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @param <D> the type of the document (if there is one)
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RowIterator<K, V, D> extends AbstractIterator<Row<K, V, D>> implements Closeable {
+  @Nonnull
+  private final RowSerializer rowSerializer;
+  @Nonnull
+  private final JacksonSerializer<? super K> keySerializer;
+  @Nonnull
+  private final JacksonSerializer<? super V> valueSerializer;
+  @Nullable
+  private final JacksonSerializer<? extends D> documentSerializer;
+  @Nonnull
+  private final JsonParser parser;
+  @Nonnull
+  private final InputStream in;
+  @Nullable
+  private final ConnectionReleaseTrigger connection;
+
+  private final int totalRows;
+  private final int offset;
+
+  private int rowCount;
+  private boolean finished;
+  private boolean closed;
+
+  /**
+   * Creates a new iterator.
+   * The parser must be placed on the START_ARRAY token of the rows
+   *
+   * @param rowSerializer      the row serializer
+   * @param keySerializer      the key serializer
+   * @param valueSerializer    the value serializer
+   * @param documentSerializer the (optional) document serializer
+   * @param parser             the parser
+   * @param in                 the input stream the parser reads from (is closed when the iterator is closed)
+   * @param totalRows          the total rows (-1 if not available)
+   * @param offset             the offset (-1 if not available)
+   */
+  public RowIterator( @Nonnull RowSerializer rowSerializer, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> documentSerializer, @Nonnull JsonParser parser, @Nonnull InputStream in, int totalRows, int offset ) {
+    this( rowSerializer, keySerializer, valueSerializer, documentSerializer, parser, in, null, totalRows, offset );
+  }
+
+  /**
+   * Creates a new iterator.
+   * The parser must be placed on the START_ARRAY token of the rows
+   *
+   * @param rowSerializer      the row serializer
+   * @param keySerializer      the key serializer
+   * @param valueSerializer    the value serializer
+   * @param documentSerializer the (optional) document serializer
+   * @param parser             the parser
+   * @param in                 the input stream the parser reads from (is closed when the iterator is closed)
+   * @param connection         the connection the stream is read from (is aborted when the iterator is closed before the end of the response)
+   * @param totalRows          the total rows (-1 if not available)
+   * @param offset             the offset (-1 if not available)
+   */
+  public RowIterator( @Nonnull RowSerializer rowSerializer, @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> documentSerializer, @Nonnull JsonParser parser, @Nonnull InputStream in, @Nullable ConnectionReleaseTrigger connection, int totalRows, int offset ) {
+    this.rowSerializer = rowSerializer;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.documentSerializer = documentSerializer;
+    this.parser = parser;
+    this.in = in;
+    this.connection = connection;
+    this.totalRows = totalRows;
+    this.offset = offset;
+  }
+
+  /**
+   * Returns the total rows of the view.
+   * Reduced views do not provide this value
+   *
+   * @return the total rows or -1 if not available
+   */
+  public int getTotalRows() {
+    return totalRows;
+  }
+
+  /**
+   * Returns the offset.
+   * Reduced views do not provide this value
+   *
+   * @return the offset or -1 if not available
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the number of rows that have been read so far
+   *
+   * @return the number of rows that have been read
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  protected Row<K, V, D> computeNext() {
+    if ( closed ) {
+      return endOfData();
+    }
+
+    try {
+      if ( parser.nextToken() == JsonToken.END_ARRAY ) {
+        verifyEndOfResponse();
+        finished = true;
+        close();
+        return endOfData();
+      }
+
+      Row<K, V, D> row = rowSerializer.deserialize( keySerializer, valueSerializer, documentSerializer, parser );
+      rowCount++;
+      return row;
+    } catch ( IOException e ) {
+      closeQuietly();
+      throw new RowParseException( e );
+    }
+  }
+
+  /**
+   * Skips the fields that follow the rows and verifies that the response object is closed
+   *
+   * @throws IOException if the response is not terminated correctly
+   */
+  private void verifyEndOfResponse() throws IOException {
+    while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+      parser.nextToken();
+      parser.skipChildren();
+    }
+
+    new JacksonParserWrapper( parser ).verifyCurrentToken( JsonToken.END_OBJECT );
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch ( IOException ignore ) {
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    closed = true;
+
+    if ( finished || connection == null ) {
+      try {
+        parser.close();
+      } finally {
+        in.close();
+      }
+      return;
+    }
+
+    //Closing the stream would read the remaining rows - abort the connection instead
+    try {
+      connection.abortConnection();
+    } finally {
+      closeAborted();
+    }
+  }
+
+  private void closeAborted() {
+    //The connection has been shut down - closing the remaining stream is expected to fail
+    try {
+      parser.close();
+    } catch ( IOException ignore ) {
+    }
+    try {
+      in.close();
+    } catch ( IOException ignore ) {
+    }
+  }
+
+  /**
+   * Thrown by the iterator if a row could not be parsed
+   */
+  public static class RowParseException extends RuntimeException {
+    public RowParseException( @Nonnull IOException cause ) {
+      super( "Could not parse due to " + cause.getMessage(), cause );
+    }
+
+    @Nonnull
+    @Override
+    public synchronized IOException getCause() {
+      return ( IOException ) super.getCause();
+    }
+  }
+}
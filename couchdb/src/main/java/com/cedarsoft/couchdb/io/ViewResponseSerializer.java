@@ -41,9 +41,12 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -94,7 +97,93 @@ public class ViewResponseSerializer {
     return deserialize( keySerializer, valueSerializer, null, in );
   }
 
-  public <K, V, D> ViewResponse<K, V, D> deserialize( @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> documentSerializer, @Nonnull InputStream in ) throws IOException {
+  /**
+   * Deserializes the complete view response.
+   * The input stream is not closed.
+   *
+   * @param keySerializer      the key serializer
+   * @param valueSerializer    the value serializer
+   * @param documentSerializer the (optional) document serializer
+   * @param in                 the input stream (is not closed)
+   * @param <K>                the type of the key
+   * @param <V>                the type of the value
+   * @param <D>                the type of the document
+   * @return the view response
+   *
+   * @throws IOException
+   */
+  public <K, V, D> ViewResponse<K, V, D> deserialize( @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> documentSerializer, @Nonnull @WillNotClose InputStream in ) throws IOException {
+    //The iterator closes its stream - but the stream is owned by the caller
+    return deserialize( deserializeIterator( keySerializer, valueSerializer, documentSerializer, new CloseShieldInputStream( in ) ) );
+  }
+
+  /**
+   * Collects all rows of the given iterator
+   *
+   * @param iterator the iterator
+   * @param <K>      the type of the key
+   * @param <V>      the type of the value
+   * @param <D>      the type of the document
+   * @return the view response
+   *
+   * @throws IOException if the rows could not be parsed
+   */
+  @Nonnull
+  public <K, V, D> ViewResponse<K, V, D> deserialize( @Nonnull RowIterator<K, V, D> iterator ) throws IOException {
+    List<Row<K, V, D>> deserialized = new ArrayList<>();
+    try {
+      while ( iterator.hasNext() ) {
+        deserialized.add( iterator.next() );
+      }
+    } catch ( RowIterator.RowParseException e ) {
+      throw e.getCause();
+    }
+
+    return new ViewResponse<>( iterator.getTotalRows(), iterator.getOffset(), deserialized );
+  }
+
+  /**
+   * Returns an iterator that deserializes the rows lazily.
+   * Only the header (total rows and offset) is parsed immediately.
+   * Parse errors within the rows are reported as {@link RowIterator.RowParseException} by the iterator.
+   *
+   * @param keySerializer   the key serializer
+   * @param valueSerializer the value serializer
+   * @param in              the input stream (is closed when the iterator is closed)
+   * @param <K>             the type of the key
+   * @param <V>             the type of the value
+   * @return the row iterator
+   *
+   * @throws IOException
+   */
+  @Nonnull
+  public <K, V> RowIterator<K, V, Void> deserializeIterator( @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nonnull InputStream in ) throws IOException {
+    return deserializeIterator( keySerializer, valueSerializer, null, in );
+  }
+
+  @Nonnull
+  public <K, V, D> RowIterator<K, V, D> deserializeIterator( @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> documentSerializer, @Nonnull InputStream in ) throws IOException {
+    return deserializeIterator( keySerializer, valueSerializer, documentSerializer, in, null );
+  }
+
+  /**
+   * Returns an iterator that deserializes the rows lazily.
+   *
+   * @param keySerializer      the key serializer
+   * @param valueSerializer    the value serializer
+   * @param documentSerializer the (optional) document serializer
+   * @param in                 the input stream (is closed when the iterator is closed)
+   * @param connection         the connection the stream is read from (is aborted when the iterator is closed before the end of the response)
+   * @param <K>                the type of the key
+   * @param <V>                the type of the value
+   * @param <D>                the type of the document
+   * @return the row iterator
+   *
+   * @throws IOException
+   * @see #deserializeIterator(JacksonSerializer, JacksonSerializer, InputStream)
+   */
+  @Nonnull
+  public <K, V, D> RowIterator<K, V, D> deserializeIterator( @Nonnull JacksonSerializer<? super K> keySerializer, @Nonnull JacksonSerializer<? super V> valueSerializer, @Nullable JacksonSerializer<? extends D> documentSerializer, @Nonnull InputStream in, @Nullable ConnectionReleaseTrigger connection ) throws IOException {
     JsonFactory jsonFactory = JacksonSupport.getJsonFactory();
     JsonParser parser = jsonFactory.createJsonParser( in );
 
@@ -127,12 +216,6 @@ public class ViewResponseSerializer {
     //Now the rows...
     parserWrapper.nextToken( JsonToken.START_ARRAY );
 
-    List<Row<K, V, D>> deserialized = new ArrayList<>();
-    while ( parser.nextToken() != JsonToken.END_ARRAY ) {
-      Row<K, V, D> deserializedRow = rowSerializer.deserialize( keySerializer, valueSerializer, documentSerializer, parser );
-      deserialized.add( deserializedRow );
-    }
-
-    return new ViewResponse<>( totalRows, offset, deserialized );
+    return new RowIterator<>( rowSerializer, keySerializer, valueSerializer, documentSerializer, parser, in, connection, totalRows, offset );
   }
 }
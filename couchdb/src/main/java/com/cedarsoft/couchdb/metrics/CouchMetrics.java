@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Receives the metrics for each request.
+ * <p>
+ * Implementations are called from the request threads and therefore must be thread safe and fast.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see MetricsFilter
+ * @see InMemoryCouchMetrics
+ */
+public interface CouchMetrics {
+  /**
+   * Is called when a request has been completed (the response has been read completely or has been closed)
+   *
+   * @param type         the operation type
+   * @param view         the view (only for view queries)
+   * @param status       the http status code
+   * @param latencyNanos the time from sending the request until the response has been completed
+   * @param bytesOut     the number of bytes that have been sent (body only, as sent over the wire)
+   * @param bytesIn      the number of bytes that have been received (body only, as received over the wire)
+   */
+  void requestCompleted( @Nonnull OperationType type, @Nullable ViewDescriptor view, int status, long latencyNanos, long bytesOut, long bytesIn );
+
+  /**
+   * Is called when a request has failed without a response (e.g. connection refused, timeout)
+   *
+   * @param type         the operation type
+   * @param view         the view (only for view queries)
+   * @param latencyNanos the time until the request has failed
+   * @param cause        the cause
+   */
+  void requestFailed( @Nonnull OperationType type, @Nullable ViewDescriptor view, long latencyNanos, @Nonnull Throwable cause );
+
+  /**
+   * Is called when a failed request is retried (see {@link com.cedarsoft.couchdb.retry.RetryFilter}).
+   * Each attempt is reported as separate request additionally.
+   *
+   * @param type    the operation type
+   * @param view    the view (only for view queries)
+   * @param attempt the number of the retry (starting with 1)
+   */
+  void requestRetried( @Nonnull OperationType type, @Nullable ViewDescriptor view, int attempt );
+}
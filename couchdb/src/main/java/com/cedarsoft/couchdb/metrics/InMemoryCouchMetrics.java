@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the metrics in memory - one {@link OperationStats} for each operation type and each view.
+ * <p>
+ * The returned stats are live objects that can be scraped (e.g. by a JMX bean or a monitoring endpoint).
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class InMemoryCouchMetrics implements CouchMetrics {
+  @Nonnull
+  private final ConcurrentMap<Key, OperationStats> stats = new ConcurrentHashMap<>();
+
+  @Override
+  public void requestCompleted( @Nonnull OperationType type, @Nullable ViewDescriptor view, int status, long latencyNanos, long bytesOut, long bytesIn ) {
+    getOrCreate( new Key( type, view ) ).recordCompleted( status, latencyNanos, bytesOut, bytesIn );
+  }
+
+  @Override
+  public void requestFailed( @Nonnull OperationType type, @Nullable ViewDescriptor view, long latencyNanos, @Nonnull Throwable cause ) {
+    getOrCreate( new Key( type, view ) ).recordFailed( latencyNanos );
+  }
+
+  @Override
+  public void requestRetried( @Nonnull OperationType type, @Nullable ViewDescriptor view, int attempt ) {
+    getOrCreate( new Key( type, view ) ).recordRetried();
+  }
+
+  @Nonnull
+  private OperationStats getOrCreate( @Nonnull Key key ) {
+    @Nullable OperationStats existing = stats.get( key );
+    if ( existing != null ) {
+      return existing;
+    }
+
+    OperationStats created = new OperationStats();
+    existing = stats.putIfAbsent( key, created );
+    return existing == null ? created : existing;
+  }
+
+  /**
+   * Returns the stats for the given operation type (without a view)
+   *
+   * @param type the type
+   * @return the stats or null if no request of this type has been recorded yet
+   */
+  @Nullable
+  public OperationStats getStats( @Nonnull OperationType type ) {
+    return stats.get( new Key( type, null ) );
+  }
+
+  /**
+   * Returns the stats for the given view
+   *
+   * @param view the view
+   * @return the stats or null if the view has not been queried yet
+   */
+  @Nullable
+  public OperationStats getStats( @Nonnull ViewDescriptor view ) {
+    return stats.get( new Key( OperationType.QUERY, view ) );
+  }
+
+  /**
+   * Returns all stats
+   *
+   * @return a snapshot of the keys with the live stats
+   */
+  @Nonnull
+  public Map<Key, OperationStats> getStats() {
+    return Collections.unmodifiableMap( new HashMap<>( stats ) );
+  }
+
+  /**
+   * Removes all stats
+   */
+  public void reset() {
+    stats.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "InMemoryCouchMetrics{" +
+      "stats=" + stats +
+      '}';
+  }
+
+  /**
+   * Identifies the stats: The operation type and the view (for view queries)
+   */
+  public static class Key {
+    @Nonnull
+    private final OperationType type;
+    @Nullable
+    private final ViewDescriptor view;
+
+    public Key( @Nonnull OperationType type, @Nullable ViewDescriptor view ) {
+      this.type = type;
+      this.view = view;
+    }
+
+    @Nonnull
+    public OperationType getType() {
+      return type;
+    }
+
+    @Nullable
+    public ViewDescriptor getView() {
+      return view;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      if ( this == obj ) {
+        return true;
+      }
+      if ( !( obj instanceof Key ) ) {
+        return false;
+      }
+
+      Key key = ( Key ) obj;
+      if ( type != key.type ) {
+        return false;
+      }
+      return view == null ? key.view == null : view.equals( key.view );
+    }
+
+    @Override
+    public int hashCode() {
+      int result = type.hashCode();
+      result = 31 * result + ( view != null ? view.hashCode() : 0 );
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      if ( view == null ) {
+        return type.toString();
+      }
+      return type + "(" + view.getDesignDocumentId() + "/" + view.getViewId() + ")";
+    }
+  }
+}
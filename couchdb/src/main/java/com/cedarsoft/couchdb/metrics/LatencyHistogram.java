@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram with log-linear buckets (similar to HdrHistogram).
+ * <p>
+ * Each power of two is divided into {@link #SUB_BUCKETS} linear buckets. Therefore the relative error
+ * of the reported values is less than 1 / {@value #SUB_BUCKETS}. Values are recorded in nanoseconds.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * The number of buckets that are necessary to cover all positive long values
+   */
+  private static final int BUCKETS = SUB_BUCKETS + ( 63 - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+
+  @Nonnull
+  private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+  @Nonnull
+  private final AtomicLong count = new AtomicLong();
+  @Nonnull
+  private final AtomicLong sum = new AtomicLong();
+  @Nonnull
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records the given value
+   *
+   * @param nanos the value in nanoseconds (negative values are recorded as 0)
+   */
+  public void record( long nanos ) {
+    long value = Math.max( 0, nanos );
+    counts.incrementAndGet( getBucketIndex( value ) );
+    count.incrementAndGet();
+    sum.addAndGet( value );
+
+    long currentMax;
+    while ( value > ( currentMax = max.get() ) ) {
+      if ( max.compareAndSet( currentMax, value ) ) {
+        break;
+      }
+    }
+  }
+
+  static int getBucketIndex( long value ) {
+    if ( value < SUB_BUCKETS ) {
+      return ( int ) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros( value );
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = ( int ) ( value >>> shift ) - SUB_BUCKETS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the highest value that falls into the bucket with the given index
+   */
+  static long getBucketMax( int index ) {
+    if ( index < SUB_BUCKETS ) {
+      return index;
+    }
+    int shift = ( index - SUB_BUCKETS ) / SUB_BUCKETS;
+    int subBucket = ( index - SUB_BUCKETS ) % SUB_BUCKETS;
+    long upper = ( ( long ) ( SUB_BUCKETS + subBucket + 1 ) << shift ) - 1;
+    return upper < 0 ? Long.MAX_VALUE : upper;
+  }
+
+  /**
+   * Returns the value at the given percentile
+   *
+   * @param percentile the percentile (0-100)
+   * @return the value in nanoseconds (the upper bound of the corresponding bucket, but never more than the max)
+   */
+  public long getValueAtPercentile( double percentile ) {
+    if ( percentile < 0 || percentile > 100 ) {
+      throw new IllegalArgumentException( "Invalid percentile <" + percentile + ">" );
+    }
+
+    long total = count.get();
+    if ( total == 0 ) {
+      return 0;
+    }
+
+    long target = Math.max( 1, ( long ) Math.ceil( percentile / 100.0 * total ) );
+    long cumulative = 0;
+    for ( int i = 0; i < BUCKETS; i++ ) {
+      cumulative += counts.get( i );
+      if ( cumulative >= target ) {
+        return Math.min( getBucketMax( i ), max.get() );
+      }
+    }
+    return max.get();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the max value
+   *
+   * @return the max value in nanoseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the mean value
+   *
+   * @return the mean value in nanoseconds
+   */
+  public double getMean() {
+    long total = count.get();
+    if ( total == 0 ) {
+      return 0;
+    }
+    return sum.get() / ( double ) total;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram{" +
+      "count=" + getCount() +
+      ", mean=" + TimeUnit.NANOSECONDS.toMicros( ( long ) getMean() ) + "us" +
+      ", p50=" + TimeUnit.NANOSECONDS.toMicros( getValueAtPercentile( 50 ) ) + "us" +
+      ", p99=" + TimeUnit.NANOSECONDS.toMicros( getValueAtPercentile( 99 ) ) + "us" +
+      ", max=" + TimeUnit.NANOSECONDS.toMicros( getMax() ) + "us" +
+      '}';
+  }
+}
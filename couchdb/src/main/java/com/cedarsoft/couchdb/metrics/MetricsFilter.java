@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.sun.jersey.api.client.AbstractClientRequestAdapter;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientRequestAdapter;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Filter that reports the latency, the transferred bytes and the status of each request to {@link CouchMetrics}.
+ * <p>
+ * A request is completed as soon as the response has been read completely or has been closed.
+ * The bytes are counted as transferred over the wire. Therefore this filter should be added before
+ * the {@link com.cedarsoft.couchdb.CompressionFilter} (Jersey calls the filter that has been added first last).
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see com.cedarsoft.couchdb.TransportConfig#metrics(CouchMetrics)
+ */
+public class MetricsFilter extends ClientFilter {
+  @Nonnull
+  private final CouchMetrics metrics;
+
+  public MetricsFilter( @Nonnull CouchMetrics metrics ) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+    String method = request.getMethod();
+    OperationType type = OperationType.classify( method, request.getURI() );
+    @Nullable ViewDescriptor view = type == OperationType.QUERY ? OperationType.getViewDescriptor( request.getURI() ) : null;
+
+    @Nullable CountingAdapter countingAdapter = null;
+    if ( request.getEntity() != null ) {
+      countingAdapter = new CountingAdapter( request.getAdapter() );
+      request.setAdapter( countingAdapter );
+    }
+
+    long start = System.nanoTime();
+    ClientResponse response;
+    try {
+      response = getNext().handle( request );
+    } catch ( RuntimeException e ) {
+      metrics.requestFailed( type, view, System.nanoTime() - start, e );
+      throw e;
+    }
+
+    long bytesOut = countingAdapter == null ? 0 : countingAdapter.count;
+    int status = response.getStatus();
+
+    if ( !mayHaveEntity( method, response ) ) {
+      metrics.requestCompleted( type, view, status, System.nanoTime() - start, bytesOut, 0 );
+      return response;
+    }
+
+    response.setEntityInputStream( new CompletionInputStream( response.getEntityInputStream(), type, view, status, start, bytesOut ) );
+    return response;
+  }
+
+  private static boolean mayHaveEntity( @Nonnull String method, @Nonnull ClientResponse response ) {
+    if ( method.equals( "HEAD" ) || response.getLength() == 0 ) {
+      return false;
+    }
+    int status = response.getStatus();
+    return status != ClientResponse.Status.NO_CONTENT.getStatusCode() && status != ClientResponse.Status.NOT_MODIFIED.getStatusCode();
+  }
+
+  @Nonnull
+  public CouchMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Counts the bytes of the request body (as written to the wire)
+   */
+  private static class CountingAdapter extends AbstractClientRequestAdapter {
+    private volatile long count;
+
+    private CountingAdapter( @Nonnull ClientRequestAdapter adapter ) {
+      super( adapter );
+    }
+
+    @Override
+    public OutputStream adapt( ClientRequest request, OutputStream out ) throws IOException {
+      return getAdapter().adapt( request, new FilterOutputStream( out ) {
+        @Override
+        public void write( int b ) throws IOException {
+          out.write( b );
+          count++;
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException {
+          out.write( b, off, len );
+          count += len;
+        }
+      } );
+    }
+  }
+
+  /**
+   * Counts the bytes of the response and reports the request as soon as the end of the stream has been reached or the stream is closed
+   */
+  private class CompletionInputStream extends FilterInputStream {
+    @Nonnull
+    private final OperationType type;
+    @Nullable
+    private final ViewDescriptor view;
+    private final int status;
+    private final long start;
+    private final long bytesOut;
+
+    private long bytesIn;
+    private boolean completed;
+
+    private CompletionInputStream( @Nonnull InputStream in, @Nonnull OperationType type, @Nullable ViewDescriptor view, int status, long start, long bytesOut ) {
+      super( in );
+      this.type = type;
+      this.view = view;
+      this.status = status;
+      this.start = start;
+      this.bytesOut = bytesOut;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if ( read < 0 ) {
+        complete();
+      } else {
+        bytesIn++;
+      }
+      return read;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+      int read = super.read( b, off, len );
+      if ( read < 0 ) {
+        complete();
+      } else {
+        bytesIn += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip( long n ) throws IOException {
+      long skipped = super.skip( n );
+      bytesIn += skipped;
+      return skipped;
+    }
+
+    /**
+     * Mark/reset is not supported - the bytes would be counted twice
+     */
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        complete();
+      }
+    }
+
+    private void complete() {
+      if ( completed ) {
+        return;
+      }
+      completed = true;
+      metrics.requestCompleted( type, view, status, System.nanoTime() - start, bytesOut, bytesIn );
+    }
+  }
+}
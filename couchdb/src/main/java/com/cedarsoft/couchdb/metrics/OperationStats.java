@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The (live) statistics for one operation
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see InMemoryCouchMetrics
+ */
+public class OperationStats {
+  @Nonnull
+  private final AtomicLong requests = new AtomicLong();
+  @Nonnull
+  private final AtomicLong errors = new AtomicLong();
+  @Nonnull
+  private final AtomicLong failures = new AtomicLong();
+  @Nonnull
+  private final AtomicLong retries = new AtomicLong();
+  @Nonnull
+  private final AtomicLong bytesIn = new AtomicLong();
+  @Nonnull
+  private final AtomicLong bytesOut = new AtomicLong();
+  @Nonnull
+  private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<>();
+  @Nonnull
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  void recordCompleted( int status, long latencyNanos, long bytesOut, long bytesIn ) {
+    requests.incrementAndGet();
+    if ( status >= 400 ) {
+      errors.incrementAndGet();
+    }
+    this.bytesOut.addAndGet( bytesOut );
+    this.bytesIn.addAndGet( bytesIn );
+    getStatusCounter( status ).incrementAndGet();
+    latency.record( latencyNanos );
+  }
+
+  void recordFailed( long latencyNanos ) {
+    requests.incrementAndGet();
+    failures.incrementAndGet();
+    latency.record( latencyNanos );
+  }
+
+  void recordRetried() {
+    retries.incrementAndGet();
+  }
+
+  @Nonnull
+  private AtomicLong getStatusCounter( int status ) {
+    AtomicLong counter = statusCodes.get( status );
+    if ( counter != null ) {
+      return counter;
+    }
+
+    AtomicLong created = new AtomicLong();
+    AtomicLong existing = statusCodes.putIfAbsent( status, created );
+    return existing == null ? created : existing;
+  }
+
+  /**
+   * Returns the number of requests (including errors and failures)
+   *
+   * @return the number of requests
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Returns the number of responses with a status code >= 400
+   *
+   * @return the number of error responses
+   */
+  public long getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * Returns the number of requests that have failed without a response (e.g. timeouts)
+   *
+   * @return the number of failed requests
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Returns the number of retries. The retried attempts are also contained within the requests
+   *
+   * @return the number of retries
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  public long getBytesIn() {
+    return bytesIn.get();
+  }
+
+  public long getBytesOut() {
+    return bytesOut.get();
+  }
+
+  /**
+   * Returns the number of responses for each status code
+   *
+   * @return a snapshot of the counts for each status code
+   */
+  @Nonnull
+  public Map<Integer, Long> getStatusCodes() {
+    Map<Integer, Long> snapshot = new TreeMap<>();
+    for ( Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet() ) {
+      snapshot.put( entry.getKey(), entry.getValue().get() );
+    }
+    return snapshot;
+  }
+
+  @Nonnull
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public String toString() {
+    return "OperationStats{" +
+      "requests=" + requests +
+      ", errors=" + errors +
+      ", failures=" + failures +
+      ", retries=" + retries +
+      ", bytesIn=" + bytesIn +
+      ", bytesOut=" + bytesOut +
+      ", statusCodes=" + getStatusCodes() +
+      ", latency=" + latency +
+      '}';
+  }
+}
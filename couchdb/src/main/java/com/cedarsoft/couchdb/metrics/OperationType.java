@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.sun.jersey.api.uri.UriComponent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The type of a request against a database.
+ * <p>
+ * The type is derived from the http method and the path of the request. The first path segment
+ * is expected to be the database name.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public enum OperationType {
+  /**
+   * GET or HEAD of a document (or any other resource)
+   */
+  GET,
+  PUT,
+  POST,
+  DELETE,
+  /**
+   * Queries a view or _all_docs
+   */
+  QUERY,
+  /**
+   * Any request for an attachment
+   */
+  ATTACHMENT,
+  OTHER;
+
+  @Nonnull
+  public static final String DESIGN_PREFIX = "_design";
+  @Nonnull
+  public static final String VIEW_SEGMENT = "_view";
+  @Nonnull
+  public static final String ALL_DOCS_SEGMENT = "_all_docs";
+
+  /**
+   * Returns the type for the given request
+   *
+   * @param method the http method
+   * @param uri    the uri
+   * @return the type
+   */
+  @Nonnull
+  public static OperationType classify( @Nonnull String method, @Nonnull URI uri ) {
+    List<String> segments = getSegments( uri );
+    if ( segments.size() <= 1 ) {
+      return ofMethod( method );
+    }
+
+    String first = segments.get( 1 );
+    if ( first.equals( DESIGN_PREFIX ) ) {
+      if ( segments.size() >= 5 && segments.get( 3 ).equals( VIEW_SEGMENT ) ) {
+        return QUERY;
+      }
+      return segments.size() > 3 ? ATTACHMENT : ofMethod( method );
+    }
+
+    if ( first.equals( ALL_DOCS_SEGMENT ) ) {
+      return QUERY;
+    }
+    if ( first.startsWith( "_" ) ) {
+      return ofMethod( method );
+    }
+
+    return segments.size() > 2 ? ATTACHMENT : ofMethod( method );
+  }
+
+  /**
+   * Returns the view descriptor for a view query
+   *
+   * @param uri the uri
+   * @return the view descriptor or null if the uri does not point to a view
+   */
+  @Nullable
+  public static ViewDescriptor getViewDescriptor( @Nonnull URI uri ) {
+    List<String> segments = getSegments( uri );
+    if ( segments.size() >= 5 && segments.get( 1 ).equals( DESIGN_PREFIX ) && segments.get( 3 ).equals( VIEW_SEGMENT ) ) {
+      return new ViewDescriptor( segments.get( 2 ), segments.get( 4 ) );
+    }
+    return null;
+  }
+
+  @Nonnull
+  private static OperationType ofMethod( @Nonnull String method ) {
+    switch ( method ) {
+      case "GET":
+      case "HEAD":
+        return GET;
+      case "PUT":
+        return PUT;
+      case "POST":
+        return POST;
+      case "DELETE":
+        return DELETE;
+      default:
+        return OTHER;
+    }
+  }
+
+  /**
+   * Returns the decoded (non empty) segments of the path
+   */
+  @Nonnull
+  private static List<String> getSegments( @Nonnull URI uri ) {
+    List<String> segments = new ArrayList<>();
+    @Nullable String rawPath = uri.getRawPath();
+    if ( rawPath == null ) {
+      return segments;
+    }
+
+    for ( String segment : rawPath.split( "/" ) ) {
+      if ( !segment.isEmpty() ) {
+        segments.add( UriComponent.decode( segment, UriComponent.Type.PATH_SEGMENT ) );
+      }
+    }
+    return segments;
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that limits the number of retries relative to the number of requests.
+ * <p>
+ * Each request deposits a fraction of a token, each retry withdraws one token.
+ * Starts full - therefore bursts of failures can be retried right away.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RetryBudget {
+  /**
+   * The tokens are stored as fixed point values
+   */
+  private static final long SCALE = 1000;
+
+  private final long deposit;
+  private final long max;
+  private final AtomicLong balance;
+
+  /**
+   * Creates a new budget
+   *
+   * @param ratio      the fraction of a retry each request earns
+   * @param maxRetries the max number of retries that may be saved up
+   */
+  public RetryBudget( double ratio, int maxRetries ) {
+    if ( ratio < 0 || maxRetries < 0 ) {
+      throw new IllegalArgumentException( "Invalid budget <" + ratio + "> - <" + maxRetries + ">" );
+    }
+    this.deposit = Math.round( ratio * SCALE );
+    this.max = maxRetries * SCALE;
+    this.balance = new AtomicLong( max );
+  }
+
+  /**
+   * Is called for each (original) request
+   */
+  public void deposit() {
+    while ( true ) {
+      long current = balance.get();
+      long updated = Math.min( max, current + deposit );
+      if ( updated == current || balance.compareAndSet( current, updated ) ) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Withdraws the token for one retry
+   *
+   * @return true if the retry may be executed, false if the budget is exhausted
+   */
+  public boolean tryWithdraw() {
+    while ( true ) {
+      long current = balance.get();
+      if ( current < SCALE ) {
+        return false;
+      }
+      if ( balance.compareAndSet( current, current - SCALE ) ) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of retries that are available
+   *
+   * @return the available retries
+   */
+  public double getAvailable() {
+    return balance.get() / ( double ) SCALE;
+  }
+
+  @Override
+  public String toString() {
+    return "RetryBudget{" +
+      "available=" + getAvailable() +
+      '}';
+  }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.retry;
+
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import com.cedarsoft.couchdb.metrics.CouchMetrics;
+import com.cedarsoft.couchdb.metrics.OperationType;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retries idempotent requests after transient failures (see {@link RetryPolicy}).
+ * <p>
+ * Idempotent requests are:
+ * <ul>
+ * <li>GET and HEAD</li>
+ * <li>PUT and DELETE with a revision (query parameter "rev" or If-Match header)</li>
+ * <li>all requests that are marked using {@link #PROPERTY_IDEMPOTENT} (e.g. updates with a revision within the body or
+ * POSTs to _all_docs)</li>
+ * </ul>
+ * Requests with a streamed entity (e.g. an InputStream) can not be replayed and therefore are never retried.
+ * <p>
+ * This filter must be added after all other filters (Jersey calls it first). Each attempt passes the other filters
+ * on a fresh copy of the request.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see com.cedarsoft.couchdb.TransportConfig#retryPolicy(RetryPolicy)
+ */
+public class RetryFilter extends ClientFilter {
+  @Nonnull
+  private static final Logger LOG = Logger.getLogger( RetryFilter.class.getName() );
+
+  /**
+   * Property that marks a request as idempotent (Boolean)
+   */
+  @Nonnull
+  public static final String PROPERTY_IDEMPOTENT = RetryFilter.class.getName() + ".idempotent";
+  @Nonnull
+  public static final String PARAM_REV = "rev";
+  @Nonnull
+  public static final String HEADER_RETRY_AFTER = "Retry-After";
+
+  @Nonnull
+  private final RetryPolicy policy;
+  @Nonnull
+  private final RetryBudget budget;
+  @Nullable
+  private final CouchMetrics metrics;
+
+  public RetryFilter( @Nonnull RetryPolicy policy ) {
+    this( policy, null );
+  }
+
+  /**
+   * Creates a new retry filter
+   *
+   * @param policy  the policy
+   * @param metrics the (optional) metrics the retries are reported to
+   */
+  public RetryFilter( @Nonnull RetryPolicy policy, @Nullable CouchMetrics metrics ) {
+    this.policy = new RetryPolicy( policy );
+    this.budget = policy.createBudget();
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+    if ( policy.getMaxRetries() == 0 || !isIdempotent( request ) || !isReplayable( request.getEntity() ) ) {
+      return getNext().handle( request );
+    }
+
+    budget.deposit();
+
+    //The other filters modify the request (headers, adapters). Therefore each retry is based on a pristine copy
+    ClientRequest pristine = copy( request );
+
+    ClientRequest current = request;
+    for ( int retry = 1; ; retry++ ) {
+      long retryAfter = 0;
+      try {
+        ClientResponse response = getNext().handle( current );
+        if ( !policy.isRetryable( response.getStatus() ) || !mayRetry( retry ) ) {
+          return response;
+        }
+
+        retryAfter = getRetryAfter( response );
+        if ( LOG.isLoggable( Level.FINE ) ) {
+          LOG.fine( "Retrying " + request.getMethod() + " " + request.getURI() + " (status " + response.getStatus() + ", retry " + retry + ")" );
+        }
+        //Release the connection while waiting
+        response.close();
+      } catch ( ClientHandlerException e ) {
+        if ( !( e.getCause() instanceof IOException ) || !mayRetry( retry ) ) {
+          throw e;
+        }
+        if ( LOG.isLoggable( Level.FINE ) ) {
+          LOG.log( Level.FINE, "Retrying " + request.getMethod() + " " + request.getURI() + " (retry " + retry + ")", e );
+        }
+      }
+
+      reportRetry( request, retry );
+      sleep( Math.max( policy.getDelay( retry ), Math.min( retryAfter, policy.getMaxBackoff() ) ) );
+      current = copy( pristine );
+    }
+  }
+
+  private boolean mayRetry( int retry ) {
+    return retry <= policy.getMaxRetries() && budget.tryWithdraw();
+  }
+
+  private void reportRetry( @Nonnull ClientRequest request, int retry ) {
+    if ( metrics == null ) {
+      return;
+    }
+    OperationType type = OperationType.classify( request.getMethod(), request.getURI() );
+    @Nullable ViewDescriptor view = type == OperationType.QUERY ? OperationType.getViewDescriptor( request.getURI() ) : null;
+    metrics.requestRetried( type, view, retry );
+  }
+
+  private static void sleep( long millis ) throws ClientHandlerException {
+    try {
+      Thread.sleep( millis );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new ClientHandlerException( new InterruptedIOException( "Interrupted while waiting for retry" ) );
+    }
+  }
+
+  /**
+   * Returns the delay requested by the server (Retry-After in seconds)
+   *
+   * @return the delay in milliseconds or 0 if the server has not requested a delay
+   */
+  private static long getRetryAfter( @Nonnull ClientResponse response ) {
+    @Nullable String retryAfter = response.getHeaders().getFirst( HEADER_RETRY_AFTER );
+    if ( retryAfter == null ) {
+      return 0;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis( Long.parseLong( retryAfter.trim() ) );
+    } catch ( NumberFormatException ignore ) {
+      //Http dates are not supported
+      return 0;
+    }
+  }
+
+  @Nonnull
+  private static ClientRequest copy( @Nonnull ClientRequest request ) {
+    ClientRequest copy = request.clone();
+    copy.getProperties().putAll( request.getProperties() );
+    return copy;
+  }
+
+  /**
+   * Returns whether the given request is idempotent
+   *
+   * @param request the request
+   * @return true if the request is idempotent
+   */
+  public static boolean isIdempotent( @Nonnull ClientRequest request ) {
+    if ( Boolean.TRUE.equals( request.getProperties().get( PROPERTY_IDEMPOTENT ) ) ) {
+      return true;
+    }
+
+    switch ( request.getMethod() ) {
+      case "GET":
+      case "HEAD":
+        return true;
+      case "PUT":
+      case "DELETE":
+        return hasRevision( request );
+      default:
+        return false;
+    }
+  }
+
+  private static boolean hasRevision( @Nonnull ClientRequest request ) {
+    if ( request.getHeaders().containsKey( HttpHeaders.IF_MATCH ) ) {
+      return true;
+    }
+
+    @Nullable String query = request.getURI().getRawQuery();
+    if ( query == null ) {
+      return false;
+    }
+    for ( String param : query.split( "&" ) ) {
+      if ( param.startsWith( PARAM_REV + "=" ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Only entities that can be written several times can be replayed
+   */
+  private static boolean isReplayable( @Nullable Object entity ) {
+    return entity == null || entity instanceof byte[] || entity instanceof String;
+  }
+
+  @Nonnull
+  public RetryPolicy getPolicy() {
+    return policy;
+  }
+
+  @Nonnull
+  public RetryBudget getBudget() {
+    return budget;
+  }
+}
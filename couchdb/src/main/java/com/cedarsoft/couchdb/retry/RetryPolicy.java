@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.retry;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for retries of failed idempotent requests (see {@link RetryFilter}).
+ * <p>
+ * Requests are retried after transient failures: connection failures/timeouts and the status codes
+ * 408, 429, 500, 502, 503 and 504.
+ * The delay grows exponentially with each attempt. A random jitter spreads the retries of concurrent clients.
+ * <p>
+ * The retries are bounded by a {@link RetryBudget}: Each request earns a fraction of a retry. Therefore an overloaded
+ * server does not receive more than (1 + ratio) times the original load.
+ * All durations are stored in milliseconds.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RetryPolicy {
+  public static final int DEFAULT_MAX_RETRIES = 3;
+  public static final long DEFAULT_MIN_BACKOFF = 50;
+  public static final long DEFAULT_MAX_BACKOFF = TimeUnit.SECONDS.toMillis( 5 );
+  public static final double DEFAULT_BUDGET_RATIO = 0.1;
+  public static final int DEFAULT_BUDGET_MAX_RETRIES = 10;
+
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+  private long minBackoff = DEFAULT_MIN_BACKOFF;
+  private long maxBackoff = DEFAULT_MAX_BACKOFF;
+  private double budgetRatio = DEFAULT_BUDGET_RATIO;
+  private int budgetMaxRetries = DEFAULT_BUDGET_MAX_RETRIES;
+
+  @Nonnull
+  public static RetryPolicy defaults() {
+    return new RetryPolicy();
+  }
+
+  public RetryPolicy() {
+  }
+
+  public RetryPolicy( @Nonnull RetryPolicy policy ) {
+    this.maxRetries = policy.maxRetries;
+    this.minBackoff = policy.minBackoff;
+    this.maxBackoff = policy.maxBackoff;
+    this.budgetRatio = policy.budgetRatio;
+    this.budgetMaxRetries = policy.budgetMaxRetries;
+  }
+
+  /**
+   * Sets the max number of retries for one request
+   *
+   * @param maxRetries the max number of retries (0 disables retries)
+   * @return this
+   */
+  @Nonnull
+  public RetryPolicy maxRetries( int maxRetries ) {
+    if ( maxRetries < 0 ) {
+      throw new IllegalArgumentException( "Invalid max retries <" + maxRetries + ">" );
+    }
+    this.maxRetries = maxRetries;
+    return this;
+  }
+
+  /**
+   * Sets the backoff. The backoff is doubled for each attempt (up to max).
+   * The actual delay is chosen randomly between min and the current backoff.
+   *
+   * @param min  the initial backoff
+   * @param max  the max backoff
+   * @param unit the unit
+   * @return this
+   */
+  @Nonnull
+  public RetryPolicy backoff( long min, long max, @Nonnull TimeUnit unit ) {
+    if ( min < 0 || max < min ) {
+      throw new IllegalArgumentException( "Invalid backoff <" + min + "> - <" + max + ">" );
+    }
+    this.minBackoff = unit.toMillis( min );
+    this.maxBackoff = unit.toMillis( max );
+    return this;
+  }
+
+  /**
+   * Sets the retry budget
+   *
+   * @param ratio      the fraction of a retry each request earns (e.g. 0.1 allows one retry for every 10 requests)
+   * @param maxRetries the max number of retries that may be saved up (for bursts)
+   * @return this
+   */
+  @Nonnull
+  public RetryPolicy budget( double ratio, int maxRetries ) {
+    if ( ratio < 0 || maxRetries < 0 ) {
+      throw new IllegalArgumentException( "Invalid budget <" + ratio + "> - <" + maxRetries + ">" );
+    }
+    this.budgetRatio = ratio;
+    this.budgetMaxRetries = maxRetries;
+    return this;
+  }
+
+  /**
+   * Returns whether a response with the given status code is retried
+   *
+   * @param status the status code
+   * @return true if the status code signals a transient failure
+   */
+  public boolean isRetryable( int status ) {
+    switch ( status ) {
+      case 408:
+      case 429:
+      case 500:
+      case 502:
+      case 503:
+      case 504:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns the delay for the given retry
+   *
+   * @param retry the number of the retry (starting with 1)
+   * @return the delay in milliseconds
+   */
+  public long getDelay( int retry ) {
+    long backoff = Math.max( minBackoff, 1 );
+    for ( int i = 1; i < retry && backoff < maxBackoff; i++ ) {
+      backoff *= 2;
+    }
+    backoff = Math.min( backoff, maxBackoff );
+
+    if ( backoff <= minBackoff ) {
+      return backoff;
+    }
+    return minBackoff + ThreadLocalRandom.current().nextLong( backoff - minBackoff + 1 );
+  }
+
+  /**
+   * Creates a new budget
+   *
+   * @return a new budget
+   */
+  @Nonnull
+  public RetryBudget createBudget() {
+    return new RetryBudget( budgetRatio, budgetMaxRetries );
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  public long getMinBackoff() {
+    return minBackoff;
+  }
+
+  public long getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  public double getBudgetRatio() {
+    return budgetRatio;
+  }
+
+  public int getBudgetMaxRetries() {
+    return budgetMaxRetries;
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy{" +
+      "maxRetries=" + maxRetries +
+      ", minBackoff=" + minBackoff +
+      ", maxBackoff=" + maxBackoff +
+      ", budgetRatio=" + budgetRatio +
+      ", budgetMaxRetries=" + budgetMaxRetries +
+      '}';
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.trace;
+
+import com.cedarsoft.couchdb.core.Options;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The trace of one request. Is filled by the {@link TracingFilter} while the request proceeds.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RequestTrace {
+  @Nonnull
+  private final String method;
+  @Nonnull
+  private final URI uri;
+  @Nullable
+  private final TraceContext context;
+  private final long start;
+
+  private volatile long timeToFirstByte = -1;
+  private volatile long latency = -1;
+  private volatile int status = -1;
+  @Nullable
+  private volatile Throwable failure;
+
+  RequestTrace( @Nonnull String method, @Nonnull URI uri, @Nullable TraceContext context, long start ) {
+    this.method = method;
+    this.uri = uri;
+    this.context = context;
+    this.start = start;
+  }
+
+  void firstByte( int status, long now ) {
+    this.status = status;
+    this.timeToFirstByte = now - start;
+  }
+
+  void completed( long now ) {
+    this.latency = now - start;
+  }
+
+  void failed( @Nonnull Throwable failure, long now ) {
+    this.failure = failure;
+    this.latency = now - start;
+  }
+
+  @Nonnull
+  public String getMethod() {
+    return method;
+  }
+
+  @Nonnull
+  public URI getUri() {
+    return uri;
+  }
+
+  /**
+   * Returns the options (for view queries)
+   *
+   * @return the options or null if no options are available
+   */
+  @Nullable
+  public Options getOptions() {
+    return context == null ? null : context.getOptions();
+  }
+
+  /**
+   * Returns the number of rows that have been read (for view queries)
+   *
+   * @return the number of rows or -1 if unknown
+   */
+  public int getRowCount() {
+    return context == null ? -1 : context.getRowCount();
+  }
+
+  /**
+   * Returns the status code
+   *
+   * @return the status code or -1 if no response has been received (yet)
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns the time until the response headers have been received
+   *
+   * @return the time in nanoseconds or -1 if no response has been received (yet)
+   */
+  public long getTimeToFirstByte() {
+    return timeToFirstByte;
+  }
+
+  /**
+   * Returns the time until the response has been consumed (or the request has failed)
+   *
+   * @return the time in nanoseconds or -1 if the request has not been completed yet
+   */
+  public long getLatency() {
+    return latency;
+  }
+
+  /**
+   * Returns the failure
+   *
+   * @return the failure or null if the request has not failed
+   */
+  @Nullable
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    @Nullable Options options = getOptions();
+    return method + " " + uri +
+      " (status: " + status +
+      ", first byte: " + TimeUnit.NANOSECONDS.toMillis( timeToFirstByte ) + " ms" +
+      ", total: " + TimeUnit.NANOSECONDS.toMillis( latency ) + " ms" +
+      ", rows: " + getRowCount() +
+      ", options: " + ( options == null ? null : options.getParams() ) +
+      ")";
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.trace;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Is notified about the phases of each request.
+ * <p>
+ * The methods are called from the thread that executes (or consumes) the request and should return quickly.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see TracingFilter
+ * @see com.cedarsoft.couchdb.TransportConfig#tracer(RequestTracer)
+ */
+public interface RequestTracer {
+  /**
+   * Is called before the request is sent
+   *
+   * @param trace the trace
+   */
+  void requestStarted( @Nonnull RequestTrace trace );
+
+  /**
+   * Is called as soon as the status line and the headers of the response have been received
+   *
+   * @param trace the trace
+   */
+  void firstByte( @Nonnull RequestTrace trace );
+
+  /**
+   * Is called when the response has been consumed (the entity stream has been closed)
+   * or the request has failed (see {@link RequestTrace#getFailure()}).
+   *
+   * @param trace the trace
+   */
+  void requestCompleted( @Nonnull RequestTrace trace );
+}
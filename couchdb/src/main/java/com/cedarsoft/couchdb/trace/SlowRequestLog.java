@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.trace;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs all requests that take longer than a given threshold.
+ * <p>
+ * Only the request line, the timings, the status, the options and the number of rows are logged.
+ * The response body is never read or buffered.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class SlowRequestLog implements RequestTracer {
+  @Nonnull
+  private static final Logger LOG = Logger.getLogger( SlowRequestLog.class.getName() );
+
+  public static final long DEFAULT_THRESHOLD = TimeUnit.SECONDS.toMillis( 1 );
+
+  @Nonnull
+  private final Logger logger;
+  @Nonnull
+  private final Level level;
+  private final long thresholdNanos;
+
+  public SlowRequestLog() {
+    this( DEFAULT_THRESHOLD, TimeUnit.MILLISECONDS );
+  }
+
+  public SlowRequestLog( long threshold, @Nonnull TimeUnit unit ) {
+    this( threshold, unit, LOG, Level.WARNING );
+  }
+
+  /**
+   * Creates a new slow request log
+   *
+   * @param threshold the threshold
+   * @param unit      the unit of the threshold
+   * @param logger    the logger
+   * @param level     the level the slow requests are logged with
+   */
+  public SlowRequestLog( long threshold, @Nonnull TimeUnit unit, @Nonnull Logger logger, @Nonnull Level level ) {
+    if ( threshold < 0 ) {
+      throw new IllegalArgumentException( "Invalid threshold <" + threshold + ">" );
+    }
+    this.thresholdNanos = unit.toNanos( threshold );
+    this.logger = logger;
+    this.level = level;
+  }
+
+  @Override
+  public void requestStarted( @Nonnull RequestTrace trace ) {
+  }
+
+  @Override
+  public void firstByte( @Nonnull RequestTrace trace ) {
+  }
+
+  @Override
+  public void requestCompleted( @Nonnull RequestTrace trace ) {
+    if ( trace.getLatency() < thresholdNanos || !logger.isLoggable( level ) ) {
+      return;
+    }
+
+    if ( trace.getFailure() != null ) {
+      logger.log( level, "Slow request failed: " + trace, trace.getFailure() );
+    } else {
+      logger.log( level, "Slow request: " + trace );
+    }
+  }
+
+  public long getThreshold( @Nonnull TimeUnit unit ) {
+    return unit.convert( thresholdNanos, TimeUnit.NANOSECONDS );
+  }
+}
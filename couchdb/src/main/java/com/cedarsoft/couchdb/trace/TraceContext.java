@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.trace;
+
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.io.RowIterator;
+import com.sun.jersey.api.client.WebResource;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Additional information about a request that is not available from the http request itself.
+ * Is attached to the web resource as property and picked up by the {@link TracingFilter}.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class TraceContext {
+  /**
+   * The property the context is stored in
+   */
+  @Nonnull
+  public static final String PROPERTY = TraceContext.class.getName();
+
+  @Nullable
+  private final Options options;
+  @Nullable
+  private volatile RowIterator<?, ?, ?> rows;
+
+  public TraceContext( @Nullable Options options ) {
+    this.options = options;
+  }
+
+  /**
+   * Attaches this context to the given resource
+   *
+   * @param resource the resource
+   * @return the resource
+   */
+  @Nonnull
+  public WebResource attachTo( @Nonnull WebResource resource ) {
+    resource.setProperty( PROPERTY, this );
+    return resource;
+  }
+
+  /**
+   * The rows of the response are read using the given iterator
+   *
+   * @param rows the iterator
+   */
+  public void countRows( @Nonnull RowIterator<?, ?, ?> rows ) {
+    this.rows = rows;
+  }
+
+  @Nullable
+  public Options getOptions() {
+    return options;
+  }
+
+  /**
+   * Returns the number of rows that have been read
+   *
+   * @return the number of rows or -1 if unknown
+   */
+  public int getRowCount() {
+    @Nullable RowIterator<?, ?, ?> iterator = rows;
+    return iterator == null ? -1 : iterator.getRowCount();
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.trace;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Filter that notifies a {@link RequestTracer} about the phases of each request.
+ * <p>
+ * A request is completed as soon as its entity stream has been closed. The response body
+ * is passed through - it is never buffered.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ * @see com.cedarsoft.couchdb.TransportConfig#tracer(RequestTracer)
+ */
+public class TracingFilter extends ClientFilter {
+  @Nonnull
+  private final RequestTracer tracer;
+
+  public TracingFilter( @Nonnull RequestTracer tracer ) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public ClientResponse handle( ClientRequest request ) throws ClientHandlerException {
+    @Nullable Object context = request.getProperties().get( TraceContext.PROPERTY );
+    RequestTrace trace = new RequestTrace( request.getMethod(), request.getURI(), context instanceof TraceContext ? ( TraceContext ) context : null, System.nanoTime() );
+    tracer.requestStarted( trace );
+
+    ClientResponse response;
+    try {
+      response = getNext().handle( request );
+    } catch ( RuntimeException e ) {
+      trace.failed( e, System.nanoTime() );
+      tracer.requestCompleted( trace );
+      throw e;
+    }
+
+    trace.firstByte( response.getStatus(), System.nanoTime() );
+    tracer.firstByte( trace );
+
+    response.setEntityInputStream( new CompletionInputStream( response.getEntityInputStream(), trace ) );
+    return response;
+  }
+
+  @Nonnull
+  public RequestTracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Completes the trace when the stream is closed
+   */
+  private class CompletionInputStream extends FilterInputStream {
+    @Nonnull
+    private final RequestTrace trace;
+    private boolean completed;
+
+    private CompletionInputStream( @Nonnull InputStream in, @Nonnull RequestTrace trace ) {
+      super( in );
+      this.trace = trace;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        if ( !completed ) {
+          completed = true;
+          trace.completed( System.nanoTime() );
+          tracer.requestCompleted( trace );
+        }
+      }
+    }
+  }
+}
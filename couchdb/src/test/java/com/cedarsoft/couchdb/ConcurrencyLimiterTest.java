@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ConcurrencyLimiterTest {
+  @Test
+  public void testLimit() throws Exception {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter( 4 );
+    final AtomicInteger current = new AtomicInteger();
+    final AtomicInteger max = new AtomicInteger();
+
+    ExecutorService executor = RequestExecutors.newVirtualThreadExecutor();
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for ( int i = 0; i < 100; i++ ) {
+        futures.add( executor.submit( new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            return limiter.call( new Callable<Integer>() {
+              @Override
+              public Integer call() throws Exception {
+                int inFlight = current.incrementAndGet();
+                synchronized ( max ) {
+                  max.set( Math.max( max.get(), inFlight ) );
+                }
+                Thread.sleep( 1 );
+                current.decrementAndGet();
+                return inFlight;
+              }
+            } );
+          }
+        } ) );
+      }
+
+      for ( Future<Integer> future : futures ) {
+        assertThat( future.get( 10, TimeUnit.SECONDS ) ).isLessThanOrEqualTo( 4 );
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat( max.get() ).isGreaterThan( 0 ).isLessThanOrEqualTo( 4 );
+    assertThat( limiter.getInFlight() ).isEqualTo( 0 );
+    assertThat( limiter.getWaiting() ).isEqualTo( 0 );
+  }
+
+  @Test
+  public void testReleaseOnException() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter( 1 );
+    try {
+      limiter.call( new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          throw new IllegalStateException( "uups" );
+        }
+      } );
+      fail( "Where is the Exception" );
+    } catch ( IllegalStateException e ) {
+      assertThat( e ).hasMessage( "uups" );
+    }
+
+    assertThat( limiter.getInFlight() ).isEqualTo( 0 );
+  }
+}
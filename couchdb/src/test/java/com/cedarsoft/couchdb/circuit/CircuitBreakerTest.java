@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.circuit;
+
+import org.junit.*;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class CircuitBreakerTest {
+  private final List<String> events = new ArrayList<>();
+  private CircuitBreakerPolicy policy;
+
+  @Before
+  public void setUp() throws Exception {
+    policy = new CircuitBreakerPolicy()
+      .failureRate( 0.5 )
+      .slowCalls( 100, TimeUnit.MILLISECONDS, 0.5 )
+      .window( 10, 4 )
+      .openDuration( 50, TimeUnit.MILLISECONDS )
+      .halfOpenRequests( 2 )
+      .listener( new CircuitBreakerListener() {
+        @Override
+        public void stateChanged( @Nonnull String endpoint, @Nonnull CircuitBreaker.State from, @Nonnull CircuitBreaker.State to ) {
+          events.add( endpoint + ": " + from + " -> " + to );
+        }
+      } );
+  }
+
+  @Test
+  public void testOpenOnFailures() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker( "http://localhost:5984", policy );
+
+    //Not enough requests
+    record( circuitBreaker, true, 0 );
+    record( circuitBreaker, true, 0 );
+    record( circuitBreaker, false, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.CLOSED );
+
+    //2 of 4 failed
+    record( circuitBreaker, false, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+    assertThat( events ).containsExactly( "http://localhost:5984: CLOSED -> OPEN" );
+
+    //Fail fast
+    assertThat( circuitBreaker.tryAcquire() ).isEqualTo( CircuitBreaker.REJECTED );
+  }
+
+  @Test
+  public void testOpenOnSlowCalls() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker( "http://localhost:5984", policy );
+
+    long slow = TimeUnit.MILLISECONDS.toNanos( 200 );
+    record( circuitBreaker, false, slow );
+    record( circuitBreaker, false, 0 );
+    record( circuitBreaker, false, slow );
+    record( circuitBreaker, false, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+  }
+
+  @Test
+  public void testSlidingWindow() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker( "http://localhost:5984", policy );
+
+    for ( int i = 0; i < 10; i++ ) {
+      record( circuitBreaker, false, 0 );
+    }
+
+    //Only the last 10 requests are evaluated
+    for ( int i = 0; i < 4; i++ ) {
+      record( circuitBreaker, true, 0 );
+    }
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.CLOSED );
+
+    record( circuitBreaker, true, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+  }
+
+  @Test
+  public void testHalfOpen() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker( "http://localhost:5984", policy );
+    for ( int i = 0; i < 4; i++ ) {
+      record( circuitBreaker, true, 0 );
+    }
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+
+    Thread.sleep( 60 );
+
+    //Only two probes are let through
+    long probe1 = circuitBreaker.tryAcquire();
+    long probe2 = circuitBreaker.tryAcquire();
+    assertThat( probe1 ).isNotEqualTo( CircuitBreaker.REJECTED );
+    assertThat( probe2 ).isNotEqualTo( CircuitBreaker.REJECTED );
+    assertThat( circuitBreaker.tryAcquire() ).isEqualTo( CircuitBreaker.REJECTED );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.HALF_OPEN );
+
+    circuitBreaker.record( probe1, false, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.HALF_OPEN );
+    circuitBreaker.record( probe2, false, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.CLOSED );
+
+    assertThat( events ).containsExactly(
+      "http://localhost:5984: CLOSED -> OPEN",
+      "http://localhost:5984: OPEN -> HALF_OPEN",
+      "http://localhost:5984: HALF_OPEN -> CLOSED"
+    );
+  }
+
+  @Test
+  public void testFailedProbe() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker( "http://localhost:5984", policy );
+    long stale = circuitBreaker.tryAcquire();
+    for ( int i = 0; i < 4; i++ ) {
+      record( circuitBreaker, true, 0 );
+    }
+
+    Thread.sleep( 60 );
+    long probe = circuitBreaker.tryAcquire();
+
+    //Requests started before the state change are ignored
+    circuitBreaker.record( stale, false, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.HALF_OPEN );
+
+    circuitBreaker.record( probe, true, 0 );
+    assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+    assertThat( circuitBreaker.tryAcquire() ).isEqualTo( CircuitBreaker.REJECTED );
+  }
+
+  private static void record( @Nonnull CircuitBreaker circuitBreaker, boolean failure, long latencyNanos ) {
+    long permit = circuitBreaker.tryAcquire();
+    assertThat( permit ).isNotEqualTo( CircuitBreaker.REJECTED );
+    circuitBreaker.record( permit, failure, latencyNanos );
+  }
+}
@@ -45,6 +45,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Charsets;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.core.header.InBoundHeaders;
+import org.junit.Test;
 import org.junit.experimental.theories.*;
 import org.junit.runner.*;
 
@@ -52,7 +53,9 @@ import javax.annotation.Nonnull;
 import javax.ws.rs.core.MediaType;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -90,6 +93,79 @@ public class ActionResponseSerializerTest {
     JsonUtils.assertJsonEquals( new String( entry.getExpected(), Charsets.UTF_8 ), new String( response.getRaw(), Charsets.UTF_8 ) );
   }
 
+  @Theory
+  public void testFastPath( Entry<? extends ActionResponse> entry ) throws Exception {
+    ClientResponse clientResponse = new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( entry.getExpected() ), null ) {
+      @Override
+      public MediaType getType() {
+        return MediaType.APPLICATION_JSON_TYPE;
+      }
+    };
+
+    ActionResponse response = new ActionResponseSerializer( false ).deserialize( clientResponse );
+    assertThat( response.getId() ).isEqualTo( entry.getObject().getId() );
+    assertThat( response.getRev() ).isEqualTo( entry.getObject().getRev() );
+    //Only captured when debugging
+    assertThat( response.getRaw() ).isNull();
+  }
+
+  @Theory
+  public void testCreate( Entry<? extends ActionResponse> entry ) throws Exception {
+    ClientResponse clientResponse = new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( entry.getExpected() ), null ) {
+      @Override
+      public MediaType getType() {
+        return MediaType.APPLICATION_JSON_TYPE;
+      }
+    };
+
+    ActionResponse response = ActionResponseSerializer.create( clientResponse );
+    assertThat( response.getId() ).isEqualTo( entry.getObject().getId() );
+    assertThat( response.getRev() ).isEqualTo( entry.getObject().getRev() );
+    assertThat( response.getRaw() ).isNull();
+  }
+
+  @Theory
+  public void testInvalid( Entry<? extends ActionResponse> entry ) throws Exception {
+    ClientResponse clientResponse = new ClientResponse( 200, new InBoundHeaders(), new ByteArrayInputStream( "{\"ok\":true,\"other\":1}".getBytes( Charsets.UTF_8 ) ), null ) {
+      @Override
+      public MediaType getType() {
+        return MediaType.APPLICATION_JSON_TYPE;
+      }
+    };
+
+    try {
+      new ActionResponseSerializer( false ).deserialize( clientResponse );
+      fail( "Where is the Exception" );
+    } catch ( RuntimeException e ) {
+      assertThat( e.getMessage() ).contains( "{\"ok\":true,\"other\":1}" );
+    }
+  }
+
+  @Test
+  public void testInvalidWithoutMark() throws Exception {
+    InputStream in = new FilterInputStream( new ByteArrayInputStream( "{\"ok\":true,\"other\":1}".getBytes( Charsets.UTF_8 ) ) ) {
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+    ClientResponse clientResponse = new ClientResponse( 200, new InBoundHeaders(), in, null ) {
+      @Override
+      public MediaType getType() {
+        return MediaType.APPLICATION_JSON_TYPE;
+      }
+    };
+
+    try {
+      new ActionResponseSerializer( false ).deserialize( clientResponse );
+      fail( "Where is the Exception" );
+    } catch ( RuntimeException e ) {
+      //Only the unparsed rest is available
+      assertThat( e.getMessage() ).startsWith( "Could not parse action response <..." );
+      assertThat( e.getCause() ).isInstanceOf( IllegalStateException.class );
+    }
+  }
+
   /**
    * Only used for tests
    * @param object
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.BulkDocResponse;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.test.Foo;
+import com.cedarsoft.test.utils.JsonUtils;
+import org.junit.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ *
+ */
+public class AllDocsSerializerTest {
+  private AllDocsSerializer serializer;
+
+  @Before
+  public void setUp() throws Exception {
+    serializer = new AllDocsSerializer( new CouchDocSerializer() );
+  }
+
+  @Test
+  public void testKeys() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.serializeKeys( Arrays.asList( new DocId( "doc1" ), new DocId( "doc2" ) ), out );
+
+    JsonUtils.assertJsonEquals( "{\"keys\":[\"doc1\",\"doc2\"]}", out.toString() );
+  }
+
+  @Test
+  public void testDeserialize() throws Exception {
+    List<? extends BulkDocResponse<Foo>> responses = serializer.deserialize( new Foo.Serializer(), getClass().getResourceAsStream( "AllDocs.response.json" ) );
+    assertThat( responses ).hasSize( 3 );
+
+    BulkDocResponse<Foo> found = responses.get( 0 );
+    assertThat( found.getId().asString() ).isEqualTo( "doc1" );
+    assertThat( found.isFound() ).isTrue();
+    assertThat( found.isDeleted() ).isFalse();
+    assertThat( found.getRev().asString() ).isEqualTo( "1-967a00dff5e02add41819138abb3284d" );
+    assertThat( found.getDoc().getObject() ).isEqualTo( new Foo( 7, "daDescription" ) );
+
+    BulkDocResponse<Foo> missing = responses.get( 1 );
+    assertThat( missing.getId().asString() ).isEqualTo( "missing" );
+    assertThat( missing.isFound() ).isFalse();
+    assertThat( missing.isDeleted() ).isFalse();
+    assertThat( missing.getRev() ).isNull();
+    try {
+      missing.getDoc();
+      fail( "Where is the Exception" );
+    } catch ( ActionFailedException e ) {
+      assertThat( e.getStatus() ).isEqualTo( 404 );
+      assertThat( e.getReason() ).isEqualTo( "missing" );
+    }
+
+    BulkDocResponse<Foo> deleted = responses.get( 2 );
+    assertThat( deleted.getId().asString() ).isEqualTo( "deleted" );
+    assertThat( deleted.isFound() ).isFalse();
+    assertThat( deleted.isDeleted() ).isTrue();
+    assertThat( deleted.getRev().asString() ).isEqualTo( "2-eec205a9d413992850a6e32678485900" );
+    try {
+      deleted.getDoc();
+      fail( "Where is the Exception" );
+    } catch ( ActionFailedException e ) {
+      assertThat( e.getStatus() ).isEqualTo( 404 );
+      assertThat( e.getReason() ).isEqualTo( "deleted" );
+    }
+  }
+}
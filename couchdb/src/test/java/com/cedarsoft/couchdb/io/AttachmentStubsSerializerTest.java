@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.google.common.base.Charsets;
+import org.junit.*;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ *
+ */
+public class AttachmentStubsSerializerTest {
+  private AttachmentStubsSerializer serializer;
+
+  @Before
+  public void setUp() throws Exception {
+    serializer = new AttachmentStubsSerializer();
+  }
+
+  @Test
+  public void testDoc() throws Exception {
+    String json = "{\"_id\":\"doc1\",\"_rev\":\"1-abc\",\"@type\":\"foo\",\"@version\":\"1.0.0\",\"nested\":{\"a\":[1,2,{\"b\":3}]}," +
+      "\"_attachments\":{" +
+      "\"a.txt\":{\"stub\":true,\"length\":7,\"digest\":\"md5-abc\",\"revpos\":2,\"content_type\":\"text/plain\"}," +
+      "\"b.bin\":{\"content_type\":\"application/octet-stream\",\"revpos\":1,\"digest\":\"md5-def\",\"length\":3,\"stub\":true,\"encoding\":\"gzip\",\"encoded_length\":2}" +
+      "}}";
+
+    List<? extends CouchDoc.StubbedAttachment> stubs = serializer.deserialize( new ByteArrayInputStream( json.getBytes( Charsets.UTF_8 ) ) );
+    assertThat( stubs ).hasSize( 2 );
+
+    assertThat( stubs.get( 0 ).getId().asString() ).isEqualTo( "a.txt" );
+    assertThat( stubs.get( 0 ).getContentType() ).isEqualTo( MediaType.TEXT_PLAIN_TYPE );
+    assertThat( stubs.get( 0 ).getLength() ).isEqualTo( 7 );
+    assertThat( stubs.get( 0 ).getDigest() ).isEqualTo( "md5-abc" );
+
+    assertThat( stubs.get( 1 ).getId().asString() ).isEqualTo( "b.bin" );
+    assertThat( stubs.get( 1 ).getContentType() ).isEqualTo( MediaType.APPLICATION_OCTET_STREAM_TYPE );
+    assertThat( stubs.get( 1 ).getLength() ).isEqualTo( 3 );
+  }
+
+  @Test
+  public void testDocWithoutAttachments() throws Exception {
+    String json = "{\"_id\":\"doc1\",\"_rev\":\"1-abc\",\"value\":42}";
+    assertThat( serializer.deserialize( new ByteArrayInputStream( json.getBytes( Charsets.UTF_8 ) ) ) ).isEmpty();
+  }
+
+  @Test
+  public void testAllDocs() throws Exception {
+    String json = "{\"total_rows\":3,\"offset\":0,\"rows\":[" +
+      "{\"id\":\"doc1\",\"key\":\"doc1\",\"value\":{\"rev\":\"1-abc\"},\"doc\":{\"_id\":\"doc1\",\"_rev\":\"1-abc\",\"value\":1,\"_attachments\":{\"a.txt\":{\"content_type\":\"text/plain\",\"revpos\":1,\"digest\":\"md5-abc\",\"length\":7,\"stub\":true}}}}," +
+      "{\"key\":\"missing\",\"error\":\"not_found\"}," +
+      "{\"id\":\"deleted\",\"key\":\"deleted\",\"value\":{\"rev\":\"2-def\",\"deleted\":true},\"doc\":null}," +
+      "{\"id\":\"doc2\",\"key\":\"doc2\",\"value\":{\"rev\":\"1-ghi\"},\"doc\":{\"_id\":\"doc2\",\"_rev\":\"1-ghi\",\"value\":2}}" +
+      "]}";
+
+    Map<DocId, List<? extends CouchDoc.StubbedAttachment>> stubs = serializer.deserializeAllDocs( new ByteArrayInputStream( json.getBytes( Charsets.UTF_8 ) ) );
+    assertThat( stubs ).hasSize( 2 );
+
+    List<? extends CouchDoc.StubbedAttachment> doc1 = stubs.get( new DocId( "doc1" ) );
+    assertThat( doc1 ).hasSize( 1 );
+    assertThat( doc1.get( 0 ).getId().asString() ).isEqualTo( "a.txt" );
+    assertThat( doc1.get( 0 ).getLength() ).isEqualTo( 7 );
+
+    assertThat( stubs.get( new DocId( "doc2" ) ) ).isEmpty();
+    assertThat( stubs.containsKey( new DocId( "missing" ) ) ).isFalse();
+    assertThat( stubs.containsKey( new DocId( "deleted" ) ) ).isFalse();
+  }
+}
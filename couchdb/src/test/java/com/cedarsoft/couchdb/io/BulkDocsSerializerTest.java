@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.BulkActionResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.couchdb.test.Foo;
+import com.cedarsoft.test.utils.JsonUtils;
+import org.junit.*;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ *
+ */
+public class BulkDocsSerializerTest {
+  private BulkDocsSerializer serializer;
+
+  @Before
+  public void setUp() throws Exception {
+    serializer = new BulkDocsSerializer( new CouchDocSerializer() );
+  }
+
+  @Test
+  public void testSerialize() throws Exception {
+    List<CouchDoc<Foo>> docs = Arrays.asList(
+      new CouchDoc<>( new DocId( "doc1" ), new Foo( 1, "first" ) ),
+      new CouchDoc<>( new DocId( "doc2" ), new Revision( "1-abc" ), new Foo( 2, "second" ) )
+    );
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.serialize( docs, new Foo.Serializer(), out );
+
+    JsonUtils.assertJsonEquals( getClass().getResource( "BulkDocs.request.json" ), out.toString() );
+  }
+
+  @Test
+  public void testDeserialize() throws Exception {
+    List<? extends BulkActionResponse> responses = serializer.deserialize( 201, new URI( "http://localhost:5984/db" ), getClass().getResourceAsStream( "BulkDocs.response.json" ) );
+    assertThat( responses ).hasSize( 2 );
+
+    BulkActionResponse first = responses.get( 0 );
+    assertThat( first.isSuccessful() ).isTrue();
+    assertThat( first.getId().asString() ).isEqualTo( "doc1" );
+    assertThat( first.getResponse().getRev().asString() ).isEqualTo( "1-967a00dff5e02add41819138abb3284d" );
+    assertThat( first.getResponse().getLocation().toString() ).isEqualTo( "http://localhost:5984/db/doc1" );
+    assertThat( first.getFailure() ).isNull();
+
+    BulkActionResponse second = responses.get( 1 );
+    assertThat( second.isSuccessful() ).isFalse();
+    assertThat( second.getId().asString() ).isEqualTo( "doc2" );
+    assertThat( second.getFailure() ).isNotNull();
+    assertThat( second.getFailure().getStatus() ).isEqualTo( 409 );
+    assertThat( second.getFailure().getError() ).isEqualTo( "conflict" );
+    assertThat( second.getFailure().getReason() ).isEqualTo( "Document update conflict." );
+  }
+}
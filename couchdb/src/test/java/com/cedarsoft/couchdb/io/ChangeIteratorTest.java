@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.cedarsoft.couchdb.core.Change;
+import com.cedarsoft.couchdb.core.Revision;
+import com.cedarsoft.couchdb.test.Foo;
+import org.junit.*;
+
+import java.io.ByteArrayInputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ *
+ */
+public class ChangeIteratorTest {
+  @Test
+  public void testNormal() throws Exception {
+    ChangeIterator<Foo> iterator = new ChangeIterator<>( new CouchDocSerializer(), new Foo.Serializer(), getClass().getResourceAsStream( "Changes.normal.json" ), false );
+
+    assertThat( iterator.hasNext() ).isTrue();
+    Change<Foo> change = iterator.next();
+    assertThat( change.getSeq() ).isEqualTo( "1" );
+    assertThat( change.getId().asString() ).isEqualTo( "doc1" );
+    assertThat( change.getRevs() ).containsExactly( new Revision( "1-967a00dff5e02add41819138abb3284d" ) );
+    assertThat( change.isDeleted() ).isFalse();
+    assertThat( change.getDoc() ).isNotNull();
+    assertThat( change.getDoc().getObject() ).isEqualTo( new Foo( 7, "daDescription" ) );
+
+    assertThat( iterator.hasNext() ).isTrue();
+    change = iterator.next();
+    assertThat( change.getSeq() ).isEqualTo( "3" );
+    assertThat( change.getId().asString() ).isEqualTo( "deleted" );
+    assertThat( change.isDeleted() ).isTrue();
+    assertThat( change.getDoc() ).isNull();
+
+    assertThat( iterator.hasNext() ).isFalse();
+    assertThat( iterator.getLastSeq() ).isEqualTo( "4" );
+  }
+
+  @Test
+  public void testNormalWithoutDocs() throws Exception {
+    ChangeIterator<Foo> iterator = new ChangeIterator<>( new CouchDocSerializer(), null, getClass().getResourceAsStream( "Changes.normal.json" ), false );
+
+    assertThat( iterator.next().getDoc() ).isNull();
+    assertThat( iterator.next().getDoc() ).isNull();
+    assertThat( iterator.hasNext() ).isFalse();
+  }
+
+  @Test
+  public void testContinuous() throws Exception {
+    ChangeIterator<Foo> iterator = new ChangeIterator<>( new CouchDocSerializer(), null, getClass().getResourceAsStream( "Changes.continuous.json" ), true );
+
+    Change<Foo> change = iterator.next();
+    assertThat( change.getSeq() ).isEqualTo( "1-g1AAAA" );
+    assertThat( change.getId().asString() ).isEqualTo( "doc1" );
+
+    change = iterator.next();
+    assertThat( change.getSeq() ).isEqualTo( "[2,\"g1AAAB\"]" );
+    assertThat( change.getRevs() ).containsExactly( new Revision( "1-aaa" ), new Revision( "1-bbb" ) );
+
+    assertThat( iterator.hasNext() ).isFalse();
+    assertThat( iterator.getLastSeq() ).isEqualTo( "5-g1AAAC" );
+  }
+
+  @Test
+  public void testStop() throws Exception {
+    ChangeIterator<Foo> iterator = new ChangeIterator<>( new CouchDocSerializer(), null, new ByteArrayInputStream( "\n\n".getBytes() ), true );
+    iterator.stop();
+
+    try {
+      iterator.hasNext();
+      fail( "Where is the Exception" );
+    } catch ( RuntimeException e ) {
+      assertThat( e ).hasMessageContaining( "stopped" );
+    }
+  }
+}
@@ -42,6 +42,8 @@ import org.junit.*;
 import javax.ws.rs.core.MediaType;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.junit.Assert.*;
 
@@ -63,6 +65,33 @@ public class CouchDocSerializerAttachmentsTest {
     JsonUtils.assertJsonEquals(getClass().getResource("withAttachmentPut.json"), new String(serialized));
   }
 
+  @Test
+  public void testSerializeStreaming() throws Exception {
+    Path file = Files.createTempFile( "attachment", ".txt" );
+    try {
+      Files.write( file, "content".getBytes() );
+
+      CouchDoc<Foo> doc = new CouchDoc<Foo>( new DocId( "asdf" ), new Foo( 13, "asdf" ) );
+      doc.addAttachment( new CouchDoc.StreamingInlineAttachment( new AttachmentId( "inline" ), MediaType.TEXT_PLAIN_TYPE, file ) );
+      doc.addAttachment( new CouchDoc.StreamingInlineAttachment( new AttachmentId( "inline2" ), MediaType.TEXT_PLAIN_TYPE, new ByteArrayInputStream( "contentasdf".getBytes() ), 11 ) );
+
+      byte[] serialized = new CouchDocSerializer().serialize( doc, new Foo.Serializer() );
+      JsonUtils.assertJsonEquals( getClass().getResource( "withAttachmentPut.json" ), new String( serialized ) );
+
+      assertEquals( 7, doc.getAttachments().get( 0 ).getLength() );
+      assertEquals( "content", new String( doc.getAttachments().get( 0 ).getData() ) );
+
+      //The stream has been consumed
+      try {
+        doc.getAttachments().get( 1 ).openStream();
+        fail( "Where is the Exception" );
+      } catch ( IllegalStateException ignore ) {
+      }
+    } finally {
+      Files.delete( file );
+    }
+  }
+
   @Test
   public void testDeserialize() throws Exception {
     Foo foo = new Foo( 7, "asdf" );
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import org.junit.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class LoggingInputStreamTest {
+  private Logger logger;
+  private final List<String> messages = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers( false );
+    logger.setLevel( Level.ALL );
+    logger.addHandler( new Handler() {
+      @Override
+      public void publish( LogRecord record ) {
+        messages.add( record.getMessage() );
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() throws SecurityException {
+      }
+    } );
+  }
+
+  @Test
+  public void testShort() throws Exception {
+    try ( InputStream in = new LoggingInputStream( new ByteArrayInputStream( "{\"a\":1}".getBytes( Charsets.UTF_8 ) ), logger, Level.FINER, 1024 ) ) {
+      assertThat( new String( ByteStreams.toByteArray( in ), Charsets.UTF_8 ) ).isEqualTo( "{\"a\":1}" );
+    }
+
+    assertThat( messages ).containsExactly( "{\"a\":1}" );
+  }
+
+  @Test
+  public void testTruncated() throws Exception {
+    byte[] content = new byte[1024 * 1024];
+    for ( int i = 0; i < content.length; i++ ) {
+      content[i] = ( byte ) ( 'a' + i % 26 );
+    }
+
+    try ( InputStream in = new LoggingInputStream( new ByteArrayInputStream( content ), logger, Level.FINER, 10 ) ) {
+      //The message is logged as soon as the limit has been reached
+      assertThat( in.read( new byte[7] ) ).isEqualTo( 7 );
+      assertThat( messages ).isEmpty();
+      assertThat( in.read() ).isEqualTo( 'h' );
+      assertThat( in.read( new byte[7] ) ).isEqualTo( 7 );
+      assertThat( messages ).containsExactly( "Showing first 10 bytes:\nabcdefghij..." );
+
+      //The remaining content is streamed unchanged
+      assertThat( ByteStreams.toByteArray( in ) ).hasSize( content.length - 15 );
+    }
+
+    assertThat( messages ).hasSize( 1 );
+  }
+
+  @Test
+  public void testClosedEarly() throws Exception {
+    InputStream in = new LoggingInputStream( new ByteArrayInputStream( "abcdef".getBytes( Charsets.UTF_8 ) ), logger, Level.FINER, 1024 );
+    assertThat( in.read( new byte[3] ) ).isEqualTo( 3 );
+    in.close();
+
+    assertThat( messages ).containsExactly( "abc" );
+  }
+}
@@ -47,6 +47,9 @@ import org.junit.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
@@ -64,6 +67,23 @@ public class RowSerializerTest {
     resource = getClass().getResource( "row.json" );
   }
 
+  @Test
+  public void testDoesNotCloseStream() throws Exception {
+    final boolean[] closed = {false};
+    InputStream in = new FilterInputStream( new ByteArrayInputStream( "{\"key\":\"aabbcc\",\"value\":\"daValue\"}".getBytes() ) ) {
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+        super.close();
+      }
+    };
+
+    Row<String, String, ?> row = new RowSerializer( new CouchDocSerializer() ).deserialize( new StringSerializer(), new StringSerializer(), in );
+    Assertions.assertThat( row.getKey() ).isEqualTo( "aabbcc" );
+    //The stream is owned by the caller
+    Assertions.assertThat( closed[0] ).isFalse();
+  }
+
   @Test
   public void testReduced() throws Exception {
     String reduced = "{\"key\":\"aabbcc\",\"value\":\"daValue\"}";
@@ -39,10 +39,14 @@ import com.cedarsoft.serialization.jackson.ListSerializer;
 import com.cedarsoft.serialization.jackson.NullSerializer;
 import com.cedarsoft.serialization.jackson.StringSerializer;
 import com.cedarsoft.test.utils.JsonUtils;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 import org.junit.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
@@ -180,6 +184,40 @@ public class ViewResponseSerializerTest {
     assertEquals( viewResponse.getRows(), deserialized.getRows() );
   }
 
+  @Test
+  public void testIterator() throws Exception {
+    try ( RowIterator<List<? extends Object>, Void, Foo> iterator = serializer.deserializeIterator( new ListSerializer(), NullSerializer.INSTANCE, new Foo.Serializer(), getClass().getResourceAsStream( "ViewResponse.type.id.include_docs.json" ) ) ) {
+      assertEquals( 2, iterator.getTotalRows() );
+      assertEquals( 0, iterator.getOffset() );
+
+      assertTrue( iterator.hasNext() );
+      Row<List<? extends Object>, Void, Foo> first = iterator.next();
+      assertEquals( "lens_canon_ef_35mm_f-1.4l", first.getId().asString() );
+      assertNotNull( first.getDoc() );
+      Assert.assertEquals( 7, first.getDoc().getObject().getaValue() );
+
+      assertTrue( iterator.hasNext() );
+      assertEquals( "lens_canon_ef_70-200mm_f-2.8l_is", iterator.next().getId().asString() );
+
+      assertFalse( iterator.hasNext() );
+    }
+  }
+
+  @Test
+  public void testIteratorReduced() throws Exception {
+    try ( RowIterator<List<? extends Object>, Void, Void> iterator = serializer.deserializeIterator( new ListSerializer(), NullSerializer.INSTANCE, getClass().getResourceAsStream( "ViewResponse.reduced.foo.json" ) ) ) {
+      assertEquals( -1, iterator.getTotalRows() );
+      assertEquals( -1, iterator.getOffset() );
+
+      int count = 0;
+      while ( iterator.hasNext() ) {
+        assertNotNull( iterator.next().getKey() );
+        count++;
+      }
+      assertEquals( 2, count );
+    }
+  }
+
   @Test
   public void testReduced() throws Exception {
     ViewResponse<List<? extends Object>, Void, ?> response = serializer.deserialize( new ListSerializer(), NullSerializer.INSTANCE, getClass().getResourceAsStream( "ViewResponse.reduced.foo.json" ) );
@@ -189,4 +227,100 @@ public class ViewResponseSerializerTest {
 
     assertEquals( "lens_canon_ef_35mm_f-1.4l", response.getRows().get( 0 ).getId().asString() );
   }
+
+  @Test
+  public void testTrailingFields() throws Exception {
+    String json = "{\"total_rows\":1,\"offset\":0,\"rows\":[{\"id\":\"a\",\"key\":\"k\",\"value\":\"v\"}],\"update_seq\":{\"a\":[1,2]}}";
+    StringSerializer stringSerializer = new StringSerializer();
+    ViewResponse<String, String, ?> response = serializer.deserialize( stringSerializer, stringSerializer, new ByteArrayInputStream( json.getBytes( "UTF-8" ) ) );
+    assertEquals( 1, response.getRows().size() );
+  }
+
+  @Test
+  public void testMissingEndObject() throws Exception {
+    String json = "{\"total_rows\":1,\"offset\":0,\"rows\":[{\"id\":\"a\",\"key\":\"k\",\"value\":\"v\"}]";
+    StringSerializer stringSerializer = new StringSerializer();
+    try {
+      serializer.deserialize( stringSerializer, stringSerializer, new ByteArrayInputStream( json.getBytes( "UTF-8" ) ) );
+      fail( "Where is the Exception" );
+    } catch ( IOException ignore ) {
+    }
+  }
+
+  @Test
+  public void testInvalidRow() throws Exception {
+    String json = "{\"total_rows\":1,\"offset\":0,\"rows\":[{\"id\":\"a\",\"key\":\"k\"";
+    StringSerializer stringSerializer = new StringSerializer();
+    try {
+      serializer.deserialize( stringSerializer, stringSerializer, new ByteArrayInputStream( json.getBytes( "UTF-8" ) ) );
+      fail( "Where is the Exception" );
+    } catch ( IOException ignore ) {
+    }
+
+    try ( RowIterator<String, String, Void> iterator = serializer.deserializeIterator( stringSerializer, stringSerializer, new ByteArrayInputStream( json.getBytes( "UTF-8" ) ) ) ) {
+      iterator.hasNext();
+      fail( "Where is the Exception" );
+    } catch ( RowIterator.RowParseException e ) {
+      assertNotNull( e.getCause() );
+    }
+  }
+
+  @Test
+  public void testDoesNotCloseStream() throws Exception {
+    final boolean[] closed = {false};
+    InputStream in = new FilterInputStream( getClass().getResourceAsStream( "ViewResponse.type.id.json" ) ) {
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+        super.close();
+      }
+    };
+
+    ViewResponse<List<? extends Object>, Void, ?> response = serializer.deserialize( new ListSerializer(), NullSerializer.INSTANCE, in );
+    assertEquals( 2, response.getRows().size() );
+    //The stream is owned by the caller
+    assertFalse( closed[0] );
+  }
+
+  @Test
+  public void testAbortIfClosedEarly() throws Exception {
+    String json = "{"total_rows":2,"offset":0,"rows":[{"id":"a","key":"k","value":"v"},{"id":"b","key":"k","value":"v"}]}";
+    StringSerializer stringSerializer = new StringSerializer();
+    CountingConnection connection = new CountingConnection();
+
+    RowIterator<String, String, Void> iterator = serializer.deserializeIterator( stringSerializer, stringSerializer, null, new ByteArrayInputStream( json.getBytes( "UTF-8" ) ), connection );
+    assertEquals( "a", iterator.next().getId().asString() );
+    iterator.close();
+    assertEquals( 1, connection.aborted );
+
+    //Closing again has no effect
+    iterator.close();
+    assertEquals( 1, connection.aborted );
+  }
+
+  @Test
+  public void testNoAbortAtEnd() throws Exception {
+    String json = "{"total_rows":1,"offset":0,"rows":[{"id":"a","key":"k","value":"v"}]}";
+    StringSerializer stringSerializer = new StringSerializer();
+    CountingConnection connection = new CountingConnection();
+
+    try ( RowIterator<String, String, Void> iterator = serializer.deserializeIterator( stringSerializer, stringSerializer, null, new ByteArrayInputStream( json.getBytes( "UTF-8" ) ), connection ) ) {
+      assertEquals( "a", iterator.next().getId().asString() );
+      assertFalse( iterator.hasNext() );
+    }
+    assertEquals( 0, connection.aborted );
+  }
+
+  private static class CountingConnection implements ConnectionReleaseTrigger {
+    private int aborted;
+
+    @Override
+    public void releaseConnection() throws IOException {
+    }
+
+    @Override
+    public void abortConnection() throws IOException {
+      aborted++;
+    }
+  }
 }
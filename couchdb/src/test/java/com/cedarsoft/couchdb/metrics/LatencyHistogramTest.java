@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import org.junit.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class LatencyHistogramTest {
+  @Test
+  public void testBuckets() throws Exception {
+    for ( long value : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE} ) {
+      int index = LatencyHistogram.getBucketIndex( value );
+      assertThat( LatencyHistogram.getBucketMax( index ) ).isGreaterThanOrEqualTo( value );
+      if ( index > 0 ) {
+        assertThat( LatencyHistogram.getBucketMax( index - 1 ) ).isLessThan( value );
+      }
+    }
+  }
+
+  @Test
+  public void testPrecision() throws Exception {
+    long value = 987654321L;
+    long max = LatencyHistogram.getBucketMax( LatencyHistogram.getBucketIndex( value ) );
+    assertThat( ( double ) ( max - value ) / value ).isLessThan( 1.0 / 16 );
+  }
+
+  @Test
+  public void testPercentiles() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for ( int i = 1; i <= 1000; i++ ) {
+      histogram.record( i * 1000L );
+    }
+
+    assertThat( histogram.getCount() ).isEqualTo( 1000 );
+    assertThat( histogram.getMax() ).isEqualTo( 1000000L );
+    assertThat( histogram.getMean() ).isEqualTo( 500500.0 );
+    assertThat( histogram.getValueAtPercentile( 50 ) ).isBetween( 500000L, 500000L + 500000L / 16 );
+    assertThat( histogram.getValueAtPercentile( 99 ) ).isBetween( 990000L, 990000L + 990000L / 16 );
+    assertThat( histogram.getValueAtPercentile( 100 ) ).isEqualTo( 1000000L );
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertThat( histogram.getCount() ).isEqualTo( 0 );
+    assertThat( histogram.getValueAtPercentile( 99 ) ).isEqualTo( 0 );
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.metrics;
+
+import com.cedarsoft.couchdb.core.ViewDescriptor;
+import org.junit.*;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class OperationTypeTest {
+  @Test
+  public void testClassify() throws Exception {
+    assertThat( OperationType.classify( "GET", URI.create( "http://localhost:5984/db/daId" ) ) ).isEqualTo( OperationType.GET );
+    assertThat( OperationType.classify( "HEAD", URI.create( "http://localhost:5984/db/daId" ) ) ).isEqualTo( OperationType.GET );
+    assertThat( OperationType.classify( "PUT", URI.create( "http://localhost:5984/db/daId" ) ) ).isEqualTo( OperationType.PUT );
+    assertThat( OperationType.classify( "POST", URI.create( "http://localhost:5984/db/_bulk_docs" ) ) ).isEqualTo( OperationType.POST );
+    assertThat( OperationType.classify( "DELETE", URI.create( "http://localhost:5984/db/daId?rev=1-a" ) ) ).isEqualTo( OperationType.DELETE );
+    assertThat( OperationType.classify( "PUT", URI.create( "http://localhost:5984/db/daId/file.txt" ) ) ).isEqualTo( OperationType.ATTACHMENT );
+    assertThat( OperationType.classify( "GET", URI.create( "http://localhost:5984/db/_all_docs?include_docs=true" ) ) ).isEqualTo( OperationType.QUERY );
+    assertThat( OperationType.classify( "GET", URI.create( "http://localhost:5984/db/_design/doc1/_view/aView" ) ) ).isEqualTo( OperationType.QUERY );
+    assertThat( OperationType.classify( "PUT", URI.create( "http://localhost:5984/db/_design/doc1" ) ) ).isEqualTo( OperationType.PUT );
+    assertThat( OperationType.classify( "OPTIONS", URI.create( "http://localhost:5984/db" ) ) ).isEqualTo( OperationType.OTHER );
+  }
+
+  @Test
+  public void testViewDescriptor() throws Exception {
+    assertThat( OperationType.getViewDescriptor( URI.create( "http://localhost:5984/db/_design/doc1/_view/aView?key=%22a%22" ) ) ).isEqualTo( new ViewDescriptor( "doc1", "aView" ) );
+    assertThat( OperationType.getViewDescriptor( URI.create( "http://localhost:5984/db/_design/doc%201/_view/a%20View" ) ) ).isEqualTo( new ViewDescriptor( "doc 1", "a View" ) );
+    assertThat( OperationType.getViewDescriptor( URI.create( "http://localhost:5984/db/daId" ) ) ).isNull();
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.retry;
+
+import org.junit.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RetryPolicyTest {
+  @Test
+  public void testDelay() throws Exception {
+    RetryPolicy policy = new RetryPolicy().backoff( 100, 1000, TimeUnit.MILLISECONDS );
+
+    for ( int i = 0; i < 100; i++ ) {
+      assertThat( policy.getDelay( 1 ) ).isEqualTo( 100 );
+      assertThat( policy.getDelay( 2 ) ).isBetween( 100L, 200L );
+      assertThat( policy.getDelay( 3 ) ).isBetween( 100L, 400L );
+      assertThat( policy.getDelay( 10 ) ).isBetween( 100L, 1000L );
+      assertThat( policy.getDelay( 100 ) ).isBetween( 100L, 1000L );
+    }
+
+    assertThat( new RetryPolicy().backoff( 0, 0, TimeUnit.MILLISECONDS ).getDelay( 5 ) ).isEqualTo( 0 );
+  }
+
+  @Test
+  public void testRetryable() throws Exception {
+    RetryPolicy policy = RetryPolicy.defaults();
+    assertThat( policy.isRetryable( 503 ) ).isTrue();
+    assertThat( policy.isRetryable( 429 ) ).isTrue();
+    assertThat( policy.isRetryable( 408 ) ).isTrue();
+    assertThat( policy.isRetryable( 404 ) ).isFalse();
+    assertThat( policy.isRetryable( 409 ) ).isFalse();
+    assertThat( policy.isRetryable( 200 ) ).isFalse();
+  }
+
+  @Test
+  public void testInvalid() throws Exception {
+    try {
+      new RetryPolicy().backoff( 10, 5, TimeUnit.MILLISECONDS );
+      fail( "Where is the Exception" );
+    } catch ( IllegalArgumentException ignore ) {
+    }
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    RetryBudget budget = new RetryBudget( 0.5, 2 );
+    assertThat( budget.getAvailable() ).isEqualTo( 2.0 );
+
+    assertThat( budget.tryWithdraw() ).isTrue();
+    assertThat( budget.tryWithdraw() ).isTrue();
+    assertThat( budget.tryWithdraw() ).isFalse();
+
+    //Two requests earn one retry
+    budget.deposit();
+    assertThat( budget.tryWithdraw() ).isFalse();
+    budget.deposit();
+    assertThat( budget.tryWithdraw() ).isTrue();
+
+    //Capped
+    for ( int i = 0; i < 100; i++ ) {
+      budget.deposit();
+    }
+    assertThat( budget.getAvailable() ).isEqualTo( 2.0 );
+  }
+}
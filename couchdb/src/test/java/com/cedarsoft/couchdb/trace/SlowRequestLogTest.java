@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.trace;
+
+import com.cedarsoft.couchdb.core.Options;
+import org.junit.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class SlowRequestLogTest {
+  private Logger logger;
+  private final List<LogRecord> records = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers( false );
+    logger.addHandler( new Handler() {
+      @Override
+      public void publish( LogRecord record ) {
+        records.add( record );
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() throws SecurityException {
+      }
+    } );
+  }
+
+  @Test
+  public void testThreshold() throws Exception {
+    SlowRequestLog log = new SlowRequestLog( 100, TimeUnit.MILLISECONDS, logger, Level.INFO );
+    assertThat( log.getThreshold( TimeUnit.MILLISECONDS ) ).isEqualTo( 100 );
+
+    RequestTrace fast = new RequestTrace( "GET", URI.create( "http://localhost:5984/db/daId" ), null, 0 );
+    fast.firstByte( 200, TimeUnit.MILLISECONDS.toNanos( 10 ) );
+    fast.completed( TimeUnit.MILLISECONDS.toNanos( 20 ) );
+    log.requestCompleted( fast );
+    assertThat( records ).isEmpty();
+
+    RequestTrace slow = new RequestTrace( "GET", URI.create( "http://localhost:5984/db/_design/doc1/_view/aView" ), new TraceContext( new Options().limit( 7 ) ), 0 );
+    slow.firstByte( 200, TimeUnit.MILLISECONDS.toNanos( 120 ) );
+    slow.completed( TimeUnit.MILLISECONDS.toNanos( 150 ) );
+    log.requestCompleted( slow );
+
+    assertThat( records ).hasSize( 1 );
+    assertThat( records.get( 0 ).getLevel() ).isEqualTo( Level.INFO );
+    assertThat( records.get( 0 ).getMessage() ).isEqualTo( "Slow request: GET http://localhost:5984/db/_design/doc1/_view/aView (status: 200, first byte: 120 ms, total: 150 ms, rows: -1, options: {limit=7})" );
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    SlowRequestLog log = new SlowRequestLog( 0, TimeUnit.MILLISECONDS, logger, Level.WARNING );
+
+    RequestTrace trace = new RequestTrace( "PUT", URI.create( "http://localhost:5984/db/daId" ), null, 0 );
+    trace.failed( new IllegalStateException( "timeout" ), 5 );
+    log.requestCompleted( trace );
+
+    assertThat( records ).hasSize( 1 );
+    assertThat( records.get( 0 ).getThrown() ).isInstanceOf( IllegalStateException.class );
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.AsyncCouchDatabase;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.ActionResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AsyncCouchDatabaseTest extends CouchTest {
+  private ExecutorService executor;
+  private AsyncCouchDatabase asyncDb;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool( 8 );
+    asyncDb = new AsyncCouchDatabase( db(), executor );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testPutGetDelete() throws Exception {
+    List<ListenableFuture<ActionResponse>> puts = new ArrayList<>();
+    for ( int i = 0; i < 20; i++ ) {
+      puts.add( asyncDb.putAsync( new CouchDoc<>( new DocId( "doc" + i ), new Foo( i, "description" + i ) ), new Foo.Serializer() ) );
+    }
+    List<ActionResponse> responses = Futures.allAsList( puts ).get();
+    assertThat( responses ).hasSize( 20 );
+
+    CouchDoc<Foo> doc = asyncDb.getAsync( new DocId( "doc7" ), new Foo.Serializer() ).get();
+    assertThat( doc.getObject() ).isEqualTo( new Foo( 7, "description7" ) );
+
+    asyncDb.deleteAsync( doc.getId(), doc.getRev() ).get();
+
+    try {
+      asyncDb.getAsync( new DocId( "doc7" ), new Foo.Serializer() ).get();
+      fail( "Where is the Exception" );
+    } catch ( ExecutionException e ) {
+      assertThat( e.getCause() ).isInstanceOf( ActionFailedException.class );
+      assertThat( ( ( ActionFailedException ) e.getCause() ).getStatus() ).isEqualTo( 404 );
+    }
+  }
+}
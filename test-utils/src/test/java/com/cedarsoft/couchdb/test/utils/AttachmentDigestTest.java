@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchUtils;
+import com.cedarsoft.couchdb.core.ActionResponse;
+import com.cedarsoft.couchdb.core.AttachmentId;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.google.common.base.Charsets;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.core.MediaType;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AttachmentDigestTest extends CouchTest {
+  private static final DocId DOC_ID = new DocId( "media" );
+  private static final AttachmentId ATTACHMENT_ID = new AttachmentId( "data.bin" );
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testDigest() throws Exception {
+    //md5 of the empty content
+    assertThat( CouchUtils.md5Digest( ByteBuffer.allocate( 0 ) ) ).isEqualTo( "md5-1B2M2Y8AsgTpgAmY7PhCfg==" );
+
+    Path file = tmp.newFile( "data.bin" ).toPath();
+    Files.write( file, "the content".getBytes( Charsets.UTF_8 ) );
+
+    db().put( DOC_ID, null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, file );
+
+    List<? extends CouchDoc.StubbedAttachment> stubs = db().listAttachments( DOC_ID );
+    assertThat( stubs ).hasSize( 1 );
+    assertThat( stubs.get( 0 ).getDigest() ).isEqualTo( CouchUtils.md5Digest( file ) );
+    assertThat( stubs.get( 0 ).getDigest() ).isEqualTo( CouchUtils.md5Digest( ByteBuffer.wrap( "the content".getBytes( Charsets.UTF_8 ) ) ) );
+  }
+
+  @Test
+  public void testPutIfChanged() throws Exception {
+    Path file = tmp.newFile( "data.bin" ).toPath();
+    Files.write( file, "the content".getBytes( Charsets.UTF_8 ) );
+
+    ActionResponse created = db().putIfChanged( DOC_ID, null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, file );
+    assertThat( created ).isNotNull();
+
+    //Unchanged
+    assertThat( db().putIfChanged( DOC_ID, created.getRev(), ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, file ) ).isNull();
+    assertThat( db().putIfChanged( DOC_ID, created.getRev(), ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, ByteBuffer.wrap( "the content".getBytes( Charsets.UTF_8 ) ) ) ).isNull();
+
+    //Other media type
+    ActionResponse updated = db().putIfChanged( DOC_ID, created.getRev(), ATTACHMENT_ID, MediaType.valueOf( "application/x-other" ), file );
+    assertThat( updated ).isNotNull();
+
+    //Changed content
+    Files.write( file, "the new content".getBytes( Charsets.UTF_8 ) );
+    List<? extends CouchDoc.StubbedAttachment> existing = db().listAttachments( DOC_ID );
+    ActionResponse changed = db().putIfChanged( DOC_ID, updated.getRev(), ATTACHMENT_ID, MediaType.valueOf( "application/x-other" ), file, existing );
+    assertThat( changed ).isNotNull();
+    assertThat( changed.getRev().asString() ).startsWith( "3-" );
+  }
+}
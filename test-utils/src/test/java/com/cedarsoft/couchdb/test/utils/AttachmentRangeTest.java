@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.AttachmentChannel;
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.AttachmentId;
+import com.cedarsoft.couchdb.core.DocId;
+import com.google.common.io.ByteStreams;
+import org.junit.*;
+
+import javax.ws.rs.core.MediaType;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AttachmentRangeTest extends CouchTest {
+  private static final DocId DOC_ID = new DocId( "media" );
+  private static final AttachmentId ATTACHMENT_ID = new AttachmentId( "data.bin" );
+
+  private byte[] content;
+
+  @Before
+  public void setUp() throws Exception {
+    content = new byte[10000];
+    for ( int i = 0; i < content.length; i++ ) {
+      content[i] = ( byte ) i;
+    }
+    db().put( DOC_ID, null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, ByteBuffer.wrap( content ) );
+  }
+
+  @Test
+  public void testRange() throws Exception {
+    try ( InputStream in = db().get( DOC_ID, ATTACHMENT_ID, 100, 50 ) ) {
+      assertThat( ByteStreams.toByteArray( in ) ).isEqualTo( Arrays.copyOfRange( content, 100, 150 ) );
+    }
+
+    //Beyond the end
+    try ( InputStream in = db().get( DOC_ID, ATTACHMENT_ID, 9990, 50 ) ) {
+      assertThat( ByteStreams.toByteArray( in ) ).isEqualTo( Arrays.copyOfRange( content, 9990, 10000 ) );
+    }
+  }
+
+  @Test
+  public void testOffsetAtOrBeyondEnd() throws Exception {
+    try ( InputStream in = db().get( DOC_ID, ATTACHMENT_ID, content.length, 50 ) ) {
+      assertThat( ByteStreams.toByteArray( in ) ).isEmpty();
+    }
+    try ( InputStream in = db().get( DOC_ID, ATTACHMENT_ID, content.length + 100, 50 ) ) {
+      assertThat( ByteStreams.toByteArray( in ) ).isEmpty();
+    }
+
+    //Compressed attachments (text) ignore the range
+    byte[] textContent = "daText".getBytes( "UTF-8" );
+    AttachmentId textId = new AttachmentId( "data.txt" );
+    db().put( new DocId( "text" ), null, textId, MediaType.TEXT_PLAIN_TYPE, ByteBuffer.wrap( textContent ) );
+
+    try ( InputStream in = db().get( new DocId( "text" ), textId, textContent.length, 50 ) ) {
+      assertThat( ByteStreams.toByteArray( in ) ).isEmpty();
+    }
+    try ( InputStream in = db().get( new DocId( "text" ), textId, textContent.length + 100, 50 ) ) {
+      assertThat( ByteStreams.toByteArray( in ) ).isEmpty();
+    }
+  }
+
+  @Test
+  public void testLength() throws Exception {
+    assertThat( db().getLength( DOC_ID, ATTACHMENT_ID ) ).isEqualTo( content.length );
+  }
+
+  @Test
+  public void testChannel() throws Exception {
+    try ( AttachmentChannel channel = new AttachmentChannel( db(), DOC_ID, ATTACHMENT_ID, content.length, 1000 ) ) {
+      assertThat( channel.size() ).isEqualTo( content.length );
+
+      //Crosses a chunk border
+      ByteBuffer buffer = ByteBuffer.allocate( 1500 );
+      channel.position( 500 );
+      while ( buffer.hasRemaining() ) {
+        assertThat( channel.read( buffer ) ).isGreaterThan( 0 );
+      }
+      buffer.flip();
+      assertThat( toArray( buffer ) ).isEqualTo( Arrays.copyOfRange( content, 500, 2000 ) );
+      assertThat( channel.position() ).isEqualTo( 2000 );
+
+      //Jump backwards
+      buffer = ByteBuffer.allocate( 10 );
+      channel.position( 3 );
+      assertThat( channel.read( buffer ) ).isEqualTo( 10 );
+      buffer.flip();
+      assertThat( toArray( buffer ) ).isEqualTo( Arrays.copyOfRange( content, 3, 13 ) );
+
+      //End
+      channel.position( content.length );
+      assertThat( channel.read( ByteBuffer.allocate( 10 ) ) ).isEqualTo( -1 );
+
+      try {
+        channel.write( ByteBuffer.allocate( 1 ) );
+        fail( "Where is the Exception" );
+      } catch ( NonWritableChannelException ignore ) {
+      }
+    }
+  }
+
+  @Test
+  public void testOpenChannel() throws Exception {
+    try ( AttachmentChannel channel = db().openChannel( DOC_ID, ATTACHMENT_ID ) ) {
+      assertThat( channel.size() ).isEqualTo( content.length );
+
+      ByteBuffer buffer = ByteBuffer.allocate( content.length );
+      while ( channel.read( buffer ) >= 0 ) {
+      }
+      buffer.flip();
+      assertThat( toArray( buffer ) ).isEqualTo( content );
+    }
+  }
+
+  private static byte[] toArray( ByteBuffer buffer ) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get( bytes );
+    return bytes;
+  }
+
+  /**
+   * Compressed attachments (text) do not support ranges. Closing the partially read stream must not read the complete attachment
+   */
+  @Test
+  public void testRangeIgnored() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for ( int i = 0; i < 100000; i++ ) {
+      text.append( i ).append( '\n' );
+    }
+    byte[] textContent = text.toString().getBytes( "UTF-8" );
+    AttachmentId textId = new AttachmentId( "data.txt" );
+
+    CouchServer server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().maxTotal( 1 ).maxPerRoute( 1 ) );
+    try {
+      CouchDatabase pooledDb = server.getDatabase( db().getDbName() );
+      pooledDb.put( new DocId( "text" ), null, textId, MediaType.TEXT_PLAIN_TYPE, ByteBuffer.wrap( textContent ) );
+
+      for ( int i = 0; i < 3; i++ ) {
+        try ( InputStream in = pooledDb.get( new DocId( "text" ), textId, 1000, 50 ) ) {
+          assertThat( ByteStreams.toByteArray( in ) ).isEqualTo( Arrays.copyOfRange( textContent, 1000, 1050 ) );
+        }
+        assertThat( server.getPoolStats().getLeased() ).isEqualTo( 0 );
+      }
+    } finally {
+      server.close();
+    }
+  }
+}
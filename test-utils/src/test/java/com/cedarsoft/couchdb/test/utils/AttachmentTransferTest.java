@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.core.ActionResponse;
+import com.cedarsoft.couchdb.core.AttachmentId;
+import com.cedarsoft.couchdb.core.DocId;
+import com.google.common.io.ByteStreams;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.core.MediaType;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Round trips for the file channel/byte buffer based attachment transfers.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class AttachmentTransferTest extends CouchTest {
+  /**
+   * Larger than the transfer chunk size - therefore several chunks are transferred
+   */
+  private static final int SIZE = ( int ) CouchDatabase.TRANSFER_CHUNK_SIZE * 2 + 17;
+  private static final AttachmentId ATTACHMENT_ID = new AttachmentId( "large.bin" );
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private byte[] content;
+  private Path source;
+
+  @Before
+  public void setUp() throws Exception {
+    content = new byte[SIZE];
+    new Random( 42 ).nextBytes( content );
+
+    source = tmp.newFile( "source.bin" ).toPath();
+    Files.write( source, content );
+  }
+
+  @Test
+  public void testPathRoundTrip() throws Exception {
+    ActionResponse response = db().put( new DocId( "file" ), null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, source );
+    assertThat( response.getStatus() ).isEqualTo( 201 );
+    assertThat( Arrays.equals( readStream( new DocId( "file" ) ), content ) ).isTrue();
+
+    //The existing (longer) file must be replaced completely
+    Path target = tmp.newFile( "target.bin" ).toPath();
+    Files.write( target, new byte[SIZE + 1000] );
+
+    long written = db().get( new DocId( "file" ), ATTACHMENT_ID, target );
+    assertThat( written ).isEqualTo( SIZE );
+    assertThat( Files.size( target ) ).isEqualTo( SIZE );
+    assertThat( Arrays.equals( Files.readAllBytes( target ), content ) ).isTrue();
+  }
+
+  @Test
+  public void testPutMissingFile() throws Exception {
+    try {
+      db().put( new DocId( "file" ), null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, tmp.getRoot().toPath().resolve( "missing.bin" ) );
+      fail( "Where is the Exception" );
+    } catch ( FileNotFoundException ignore ) {
+    }
+  }
+
+  @Test
+  public void testFileChannel() throws Exception {
+    db().put( new DocId( "file" ), null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, source );
+
+    //The content is written starting at the current position of the channel
+    Path target = tmp.newFile( "target.bin" ).toPath();
+    byte[] prefix = "prefix".getBytes( "UTF-8" );
+    Files.write( target, prefix );
+
+    try ( FileChannel channel = FileChannel.open( target, StandardOpenOption.WRITE ) ) {
+      channel.position( prefix.length );
+      long written = db().get( new DocId( "file" ), ATTACHMENT_ID, channel );
+      assertThat( written ).isEqualTo( SIZE );
+      assertThat( channel.position() ).isEqualTo( prefix.length + SIZE );
+    }
+
+    byte[] read = Files.readAllBytes( target );
+    assertThat( read.length ).isEqualTo( prefix.length + SIZE );
+    assertThat( Arrays.equals( Arrays.copyOfRange( read, 0, prefix.length ), prefix ) ).isTrue();
+    assertThat( Arrays.equals( Arrays.copyOfRange( read, prefix.length, read.length ), content ) ).isTrue();
+  }
+
+  @Test
+  public void testFileChannelBeyondSize() throws Exception {
+    db().put( new DocId( "file" ), null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, source );
+
+    Path target = tmp.newFile( "target.bin" ).toPath();
+    try ( FileChannel channel = FileChannel.open( target, StandardOpenOption.WRITE ) ) {
+      channel.position( 10 );
+      try {
+        db().get( new DocId( "file" ), ATTACHMENT_ID, channel );
+        fail( "Where is the Exception" );
+      } catch ( IllegalArgumentException e ) {
+        assertThat( e.getMessage() ).contains( "10" );
+      }
+    }
+
+    assertThat( Files.size( target ) ).isEqualTo( 0 );
+  }
+
+  @Test
+  public void testByteBufferRoundTrip() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocateDirect( SIZE );
+    buffer.put( content );
+    buffer.flip();
+
+    ActionResponse response = db().put( new DocId( "buffer" ), null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, buffer );
+    assertThat( response.getStatus() ).isEqualTo( 201 );
+    //The position of the buffer is not modified
+    assertThat( buffer.position() ).isEqualTo( 0 );
+    assertThat( buffer.remaining() ).isEqualTo( SIZE );
+
+    ByteBuffer read = db().getBuffer( new DocId( "buffer" ), ATTACHMENT_ID );
+    assertThat( read.remaining() ).isEqualTo( SIZE );
+    assertThat( Arrays.equals( toArray( read ), content ) ).isTrue();
+  }
+
+  @Test
+  public void testPartialByteBuffer() throws Exception {
+    int offset = 100;
+    int limit = SIZE - 200;
+
+    ByteBuffer buffer = ByteBuffer.wrap( content );
+    buffer.position( offset );
+    buffer.limit( limit );
+
+    db().put( new DocId( "buffer" ), null, ATTACHMENT_ID, MediaType.APPLICATION_OCTET_STREAM_TYPE, buffer );
+    assertThat( buffer.position() ).isEqualTo( offset );
+    assertThat( buffer.limit() ).isEqualTo( limit );
+
+    byte[] expected = Arrays.copyOfRange( content, offset, limit );
+    assertThat( Arrays.equals( readStream( new DocId( "buffer" ) ), expected ) ).isTrue();
+
+    ByteBuffer read = db().getBuffer( new DocId( "buffer" ), ATTACHMENT_ID );
+    assertThat( read.remaining() ).isEqualTo( limit - offset );
+    assertThat( Arrays.equals( toArray( read ), expected ) ).isTrue();
+  }
+
+  private byte[] readStream( DocId docId ) throws Exception {
+    try ( InputStream in = db().get( docId, ATTACHMENT_ID ) ) {
+      return ByteStreams.toByteArray( in );
+    }
+  }
+
+  private static byte[] toArray( ByteBuffer buffer ) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get( bytes );
+    return bytes;
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.core.BulkActionResponse;
+import com.cedarsoft.couchdb.core.BulkDocResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class BulkDocsTest extends CouchTest {
+  @Test
+  public void testPutAll() throws Exception {
+    List<CouchDoc<Foo>> docs = new ArrayList<>();
+    for ( int i = 0; i < 10; i++ ) {
+      docs.add( new CouchDoc<>( new DocId( "doc" + i ), new Foo( i, "description" + i ) ) );
+    }
+
+    List<? extends BulkActionResponse> responses = db().putAll( docs, new Foo.Serializer() );
+    assertThat( responses ).hasSize( 10 );
+
+    for ( int i = 0; i < 10; i++ ) {
+      BulkActionResponse response = responses.get( i );
+      assertThat( response.isSuccessful() ).isTrue();
+      assertThat( response.getId().asString() ).isEqualTo( "doc" + i );
+
+      CouchDoc<Foo> doc = docs.get( i );
+      assertThat( doc.getRev() ).isEqualTo( response.getResponse().getRev() );
+      assertThat( db().get( doc.getId(), new Foo.Serializer() ).getObject() ).isEqualTo( doc.getObject() );
+    }
+  }
+
+  @Test
+  public void testConflict() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "existing" ), new Foo( 1, "existing" ) ), new Foo.Serializer() );
+
+    CouchDoc<Foo> conflicting = new CouchDoc<>( new DocId( "existing" ), new Foo( 2, "conflicting" ) );
+    CouchDoc<Foo> newDoc = new CouchDoc<>( new DocId( "new" ), new Foo( 3, "new" ) );
+
+    List<? extends BulkActionResponse> responses = db().putAll( Arrays.asList( conflicting, newDoc ), new Foo.Serializer() );
+    assertThat( responses ).hasSize( 2 );
+
+    assertThat( responses.get( 0 ).isSuccessful() ).isFalse();
+    assertThat( responses.get( 0 ).getFailure().getStatus() ).isEqualTo( 409 );
+    assertThat( responses.get( 0 ).getFailure().getError() ).isEqualTo( "conflict" );
+    assertThat( conflicting.getRev() ).isNull();
+
+    assertThat( responses.get( 1 ).isSuccessful() ).isTrue();
+    assertThat( newDoc.getRev() ).isNotNull();
+  }
+
+  @Test
+  public void testGetAll() throws Exception {
+    CouchDoc<Foo> existing = new CouchDoc<>( new DocId( "existing" ), new Foo( 1, "existing" ) );
+    CouchDoc<Foo> deleted = new CouchDoc<>( new DocId( "deleted" ), new Foo( 2, "deleted" ) );
+    db().putAll( Arrays.asList( existing, deleted ), new Foo.Serializer() );
+    db().delete( deleted.getId(), deleted.getRev() );
+
+    List<? extends BulkDocResponse<Foo>> responses = db().getAll( Arrays.asList( new DocId( "existing" ), new DocId( "missing" ), new DocId( "deleted" ) ), new Foo.Serializer() );
+    assertThat( responses ).hasSize( 3 );
+
+    assertThat( responses.get( 0 ).isFound() ).isTrue();
+    assertThat( responses.get( 0 ).getDoc().getObject() ).isEqualTo( existing.getObject() );
+    assertThat( responses.get( 0 ).getDoc().getRev() ).isEqualTo( existing.getRev() );
+
+    assertThat( responses.get( 1 ).isFound() ).isFalse();
+    assertThat( responses.get( 1 ).isDeleted() ).isFalse();
+
+    assertThat( responses.get( 2 ).isFound() ).isFalse();
+    assertThat( responses.get( 2 ).isDeleted() ).isTrue();
+  }
+}
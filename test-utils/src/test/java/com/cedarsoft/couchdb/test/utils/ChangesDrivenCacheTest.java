@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.cache.ChangesDrivenCache;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.couchdb.test.utils.foo.Views;
+import com.cedarsoft.couchdb.update.DesignDocumentsProvider;
+import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.cedarsoft.serialization.jackson.StringSerializer;
+import com.cedarsoft.version.Version;
+import org.junit.*;
+
+import javax.annotation.Nullable;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ChangesDrivenCacheTest extends CouchTest {
+  private ExecutorService executor;
+  private ChangesDrivenCache<Foo> cache;
+
+  @Override
+  protected DesignDocumentsProvider getDesignDocumentsProvider() {
+    @Nullable URL resource = getClass().getResource( "foo/doc1/aView.map.js" );
+    assertThat( resource ).isNotNull();
+    return new FileBasedDesignDocumentsProvider( resource, Version.valueOf( 1, 0, 0 ) );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newSingleThreadExecutor();
+    cache = new ChangesDrivenCache<>( db(), new Foo.Serializer(), 100, 10 );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cache.stop();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "one" ) );
+    db().put( doc, new Foo.Serializer() );
+
+    //Not started yet: bypass
+    assertThat( cache.getLag() ).isEqualTo( -1 );
+    cache.get( doc.getId() );
+    assertThat( cache.getStats().getSize() ).isEqualTo( 0 );
+
+    cache.start( executor );
+    waitForFeed();
+
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( cache.getStats().getHits() ).isEqualTo( 1 );
+
+    db().put( new CouchDoc<>( doc.getId(), doc.getRev(), new Foo( 2, "two" ) ), new Foo.Serializer() );
+
+    //Wait until the change has arrived
+    for ( int i = 0; i < 100; i++ ) {
+      if ( cache.getStats().getSize() == 0 ) {
+        break;
+      }
+      Thread.sleep( 50 );
+    }
+
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 2, "two" ) );
+    assertThat( cache.getLag() ).isGreaterThanOrEqualTo( 0 );
+  }
+
+  @Test
+  public void testViewWithNewSerializers() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+
+    cache.start( executor );
+    waitForFeed();
+
+    ViewResponse<List<? extends Object>, String, Void> response = cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null );
+    assertThat( response.getRows() ).hasSize( 1 );
+
+    //New serializer instances for each query
+    assertThat( cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null ) ).isSameAs( response );
+    assertThat( cache.getStats().getHits() ).isEqualTo( 1 );
+    assertThat( cache.getStats().getSize() ).isEqualTo( 1 );
+  }
+
+  private void waitForFeed() throws InterruptedException {
+    for ( int i = 0; i < 100; i++ ) {
+      if ( cache.getLag() >= 0 ) {
+        return;
+      }
+      Thread.sleep( 50 );
+    }
+    fail( "Feed not connected" );
+  }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.changes.ChangeListener;
+import com.cedarsoft.couchdb.changes.ChangesFeed;
+import com.cedarsoft.couchdb.changes.InMemoryCheckpointStore;
+import com.cedarsoft.couchdb.core.Change;
+import com.cedarsoft.couchdb.core.ChangesOptions;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.io.ChangeIterator;
+import org.junit.*;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ChangesFeedTest extends CouchTest {
+  @Test
+  public void testNormal() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "doc1" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+    db().put( new CouchDoc<>( new DocId( "doc2" ), new Foo( 2, "two" ) ), new Foo.Serializer() );
+
+    List<Change<Foo>> changes = new ArrayList<>();
+    try ( ChangeIterator<Foo> iterator = db().changes( new ChangesOptions(), new Foo.Serializer() ) ) {
+      while ( iterator.hasNext() ) {
+        changes.add( iterator.next() );
+      }
+      assertThat( iterator.getLastSeq() ).isNotNull();
+    }
+
+    assertThat( changes ).hasSize( 2 );
+    assertThat( changes.get( 0 ).getDoc().getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( changes.get( 1 ).getDoc().getObject() ).isEqualTo( new Foo( 2, "two" ) );
+  }
+
+  @Test
+  public void testContinuous() throws Exception {
+    final BlockingQueue<Change<Foo>> received = new LinkedBlockingQueue<>();
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+
+    ChangesFeed<Foo> feed = new ChangesFeed<>( db(), new Foo.Serializer(), new ChangesOptions().feed( ChangesOptions.Feed.CONTINUOUS ).heartbeat( 100 ), checkpointStore );
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      feed.start( executor, new ChangeListener<Foo>() {
+        @Override
+        public void changed( @Nonnull Change<Foo> change ) throws Exception {
+          received.add( change );
+        }
+
+        @Override
+        public void failed( @Nonnull Exception e ) {
+          failure.compareAndSet( null, e );
+        }
+      } );
+
+      CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "doc1" ), new Foo( 1, "one" ) );
+      db().put( doc, new Foo.Serializer() );
+
+      Change<Foo> change = received.poll( 10, TimeUnit.SECONDS );
+      assertThat( change ).isNotNull();
+      assertThat( change.getId().asString() ).isEqualTo( "doc1" );
+      assertThat( change.getRevs() ).containsExactly( doc.getRev() );
+
+      db().delete( doc.getId(), doc.getRev() );
+      change = received.poll( 10, TimeUnit.SECONDS );
+      assertThat( change ).isNotNull();
+      assertThat( change.isDeleted() ).isTrue();
+      assertThat( change.getDoc() ).isNull();
+
+      assertThat( checkpointStore.load() ).isEqualTo( change.getSeq() );
+
+      feed.stop();
+      executor.shutdown();
+      assertThat( executor.awaitTermination( 10, TimeUnit.SECONDS ) ).isTrue();
+      assertThat( feed.isRunning() ).isFalse();
+      assertThat( failure.get() ).isNull();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Stopping a feed that waits for changes must release the connection immediately
+   */
+  @Test
+  public void testStopReleasesConnection() throws Exception {
+    CouchServer server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().maxTotal( 1 ).maxPerRoute( 1 ) );
+    try {
+      CouchDatabase pooledDb = server.getDatabase( db().getDbName() );
+
+      for ( int i = 0; i < 3; i++ ) {
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        //The heartbeat is longer than the test: A stopped feed must not wait for the next heartbeat
+        ChangesFeed<Foo> feed = new ChangesFeed<>( pooledDb, new Foo.Serializer(), new ChangesOptions().feed( ChangesOptions.Feed.CONTINUOUS ).heartbeat( 60000 ), new InMemoryCheckpointStore() );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+          feed.start( executor, new ChangeListener<Foo>() {
+            @Override
+            public void changed( @Nonnull Change<Foo> change ) throws Exception {
+            }
+
+            @Override
+            public void failed( @Nonnull Exception e ) {
+              failure.compareAndSet( null, e );
+            }
+          } );
+
+          //Wait until the feed is connected
+          long timeout = System.currentTimeMillis() + 10000;
+          while ( server.getPoolStats().getLeased() == 0 && System.currentTimeMillis() < timeout ) {
+            Thread.sleep( 10 );
+          }
+          assertThat( server.getPoolStats().getLeased() ).isEqualTo( 1 );
+
+          feed.stop();
+          executor.shutdown();
+          assertThat( executor.awaitTermination( 5, TimeUnit.SECONDS ) ).isTrue();
+        } finally {
+          executor.shutdownNow();
+        }
+
+        assertThat( failure.get() ).isNull();
+        assertThat( server.getPoolStats().getLeased() ).isEqualTo( 0 );
+      }
+
+      //The pool (one connection) is still usable
+      pooledDb.put( new CouchDoc<>( new DocId( "afterStop" ), new Foo( 7, "seven" ) ), new Foo.Serializer() );
+      assertThat( pooledDb.get( new DocId( "afterStop" ), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 7, "seven" ) );
+    } finally {
+      server.close();
+    }
+  }
+
+  /**
+   * A feed that is stopped before the executor runs it must not connect
+   */
+  @Test
+  public void testStopBeforeRun() throws Exception {
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    ChangesFeed<Foo> feed = new ChangesFeed<>( db(), new Foo.Serializer(), new ChangesOptions().feed( ChangesOptions.Feed.CONTINUOUS ).heartbeat( 60000 ), new InMemoryCheckpointStore() );
+
+    final List<Runnable> scheduled = new ArrayList<>();
+    feed.start( new Executor() {
+      @Override
+      public void execute( @Nonnull Runnable command ) {
+        scheduled.add( command );
+      }
+    }, new ChangeListener<Foo>() {
+      @Override
+      public void changed( @Nonnull Change<Foo> change ) throws Exception {
+        fail( "Must not be called" );
+      }
+
+      @Override
+      public void failed( @Nonnull Exception e ) {
+        failure.compareAndSet( null, e );
+      }
+    } );
+    assertThat( feed.isRunning() ).isTrue();
+
+    feed.stop();
+    assertThat( feed.isRunning() ).isFalse();
+
+    //Returns immediately - otherwise the continuous feed would block this thread
+    assertThat( scheduled ).hasSize( 1 );
+    scheduled.get( 0 ).run();
+
+    assertThat( feed.isRunning() ).isFalse();
+    assertThat( failure.get() ).isNull();
+    assertThat( feed.getLastActivity() ).isEqualTo( 0 );
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.HttpTransport;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.circuit.CircuitBreaker;
+import com.cedarsoft.couchdb.circuit.CircuitBreakerFilter;
+import com.cedarsoft.couchdb.circuit.CircuitBreakerOpenException;
+import com.cedarsoft.couchdb.circuit.CircuitBreakerPolicy;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.junit.*;
+
+import javax.annotation.Nullable;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class CircuitBreakerFilterTest extends CouchTest {
+  private final AtomicBoolean stalled = new AtomicBoolean();
+  private final AtomicInteger attempts = new AtomicInteger();
+  private CouchServer server;
+  private CouchDatabase db;
+
+  @Before
+  public void setUp() throws Exception {
+    CircuitBreakerPolicy policy = new CircuitBreakerPolicy().window( 10, 5 ).openDuration( 100, TimeUnit.MILLISECONDS ).halfOpenRequests( 1 );
+
+    server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().circuitBreaker( policy ), new ClientFilter() {
+      @Override
+      public ClientResponse handle( ClientRequest cr ) throws ClientHandlerException {
+        attempts.incrementAndGet();
+        if ( stalled.get() ) {
+          throw new ClientHandlerException( new SocketTimeoutException( "Read timed out" ) );
+        }
+        return getNext().handle( cr );
+      }
+    } );
+    db = server.getDatabase( db().getDbName() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testFailFast() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+
+    stalled.set( true );
+    for ( int i = 0; i < 5; i++ ) {
+      try {
+        db.get( new DocId( "a" ), new Foo.Serializer() );
+        fail( "Where is the Exception" );
+      } catch ( ClientHandlerException e ) {
+        assertThat( e ).isNotInstanceOf( CircuitBreakerOpenException.class );
+      }
+    }
+
+    //The circuit is open - the request is not sent
+    try {
+      db.get( new DocId( "a" ), new Foo.Serializer() );
+      fail( "Where is the Exception" );
+    } catch ( CircuitBreakerOpenException e ) {
+      assertThat( e.getEndpoint() ).isEqualTo( CircuitBreakerFilter.getEndpoint( getCouchDbRule().getCurrentServerURI() ) );
+    }
+    assertThat( attempts.get() ).isEqualTo( 5 );
+
+    @Nullable HttpTransport transport = server.getTransport();
+    assertThat( transport ).isNotNull();
+    assert transport != null;
+    @Nullable CircuitBreakerFilter filter = transport.getCircuitBreakerFilter();
+    assertThat( filter ).isNotNull();
+    assert filter != null;
+    assertThat( filter.getStates() ).containsValue( CircuitBreaker.State.OPEN );
+
+    //The node recovers - a probe closes the circuit again
+    stalled.set( false );
+    Thread.sleep( 150 );
+    assertThat( db.get( new DocId( "a" ), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( filter.getStates() ).containsValue( CircuitBreaker.State.CLOSED );
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CompressionFilter;
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.BulkActionResponse;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.junit.*;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class CompressionTest extends CouchTest {
+  private final List<Object> contentEncodings = new ArrayList<>();
+  private final List<Object> acceptEncodings = new ArrayList<>();
+  private CouchServer server;
+
+  @Before
+  public void setUp() throws Exception {
+    server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().compressRequests( true ), new ClientFilter() {
+      @Override
+      public ClientResponse handle( ClientRequest cr ) throws ClientHandlerException {
+        ClientResponse response = getNext().handle( cr );
+        contentEncodings.add( cr.getHeaders().getFirst( HttpHeaders.CONTENT_ENCODING ) );
+        acceptEncodings.add( cr.getHeaders().getFirst( HttpHeaders.ACCEPT_ENCODING ) );
+        return response;
+      }
+    } );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testCompressedRequests() throws Exception {
+    CouchDatabase db = server.getDatabase( db().getDbName() );
+
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "daId" ), new Foo( 7, "compressed" ) );
+    db.put( doc, new Foo.Serializer() );
+    assertThat( doc.getRev() ).isNotNull();
+
+    List<? extends BulkActionResponse> responses = db.putAll( Arrays.asList( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "a" ) ), new CouchDoc<>( new DocId( "b" ), new Foo( 2, "b" ) ) ), new Foo.Serializer() );
+    assertThat( responses ).hasSize( 2 );
+    assertThat( responses.get( 0 ).isSuccessful() ).isTrue();
+
+    //Read using the uncompressed database
+    assertThat( db().get( doc.getId(), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 7, "compressed" ) );
+    assertThat( db.get( new DocId( "b" ), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 2, "b" ) );
+
+    assertThat( contentEncodings.get( 0 ) ).isEqualTo( CompressionFilter.GZIP );
+    assertThat( contentEncodings.get( 1 ) ).isEqualTo( CompressionFilter.GZIP );
+    assertThat( acceptEncodings ).containsOnly( CompressionFilter.GZIP );
+  }
+
+  @Test
+  public void testConfig() throws Exception {
+    assertThat( new TransportConfig().isCompressResponses() ).isFalse();
+    assertThat( new TransportConfig().compressResponses( true ).isCompressRequests() ).isFalse();
+    assertThat( new TransportConfig().compressRequests( true ).isCompressResponses() ).isTrue();
+  }
+}
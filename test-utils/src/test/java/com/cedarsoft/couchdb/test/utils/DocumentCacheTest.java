@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.cache.CacheStats;
+import com.cedarsoft.couchdb.cache.DocumentCache;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Revision;
+import com.google.common.cache.Weigher;
+import org.junit.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class DocumentCacheTest extends CouchTest {
+  private DocumentCache<Foo> cache;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new DocumentCache<>( db(), new Foo.Serializer(), 100 );
+  }
+
+  @Test
+  public void testRevalidation() throws Exception {
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "one" ) );
+    db().put( doc, new Foo.Serializer() );
+
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+
+    CacheStats stats = cache.getStats();
+    assertThat( stats.getMisses() ).isEqualTo( 1 );
+    assertThat( stats.getHits() ).isEqualTo( 1 );
+    assertThat( stats.getRevalidations() ).isEqualTo( 1 );
+
+    //Modify the doc bypassing the cache
+    CouchDoc<Foo> updated = new CouchDoc<>( doc.getId(), doc.getRev(), new Foo( 2, "two" ) );
+    db().put( updated, new Foo.Serializer() );
+
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 2, "two" ) );
+    stats = cache.getStats();
+    assertThat( stats.getMisses() ).isEqualTo( 2 );
+    assertThat( stats.getRevalidations() ).isEqualTo( 2 );
+  }
+
+  @Test
+  public void testNoRevalidation() throws Exception {
+    cache.revalidateAfter( 1, TimeUnit.HOURS );
+
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "one" ) );
+    cache.put( doc );
+
+    CouchDoc<Foo> cached = cache.get( doc.getId() );
+    assertThat( cached ).isNotSameAs( doc );
+    assertThat( cached.getObject() ).isEqualTo( doc.getObject() );
+    assertThat( cached.getRev() ).isEqualTo( doc.getRev() );
+    assertThat( cache.getStats().getHits() ).isEqualTo( 1 );
+    assertThat( cache.getStats().getRevalidations() ).isEqualTo( 0 );
+  }
+
+  @Test
+  public void testPutStoresCopy() throws Exception {
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "one" ) );
+    cache.put( doc );
+    Revision rev = doc.getRev();
+
+    //Modifications of the caller's instance must not affect the cache
+    doc.setRev( new Revision( "99-invalid" ) );
+
+    CouchDoc<Foo> cached = cache.get( doc.getId() );
+    assertThat( cached.getRev() ).isEqualTo( rev );
+    assertThat( cached.getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( cache.getStats().getHits() ).isEqualTo( 1 );
+  }
+
+  @Test
+  public void testPutDelete() throws Exception {
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "one" ) );
+    cache.put( doc );
+    assertThat( cache.getStats().getSize() ).isEqualTo( 1 );
+
+    CouchDoc<Foo> updated = new CouchDoc<>( doc.getId(), doc.getRev(), new Foo( 2, "two" ) );
+    cache.put( updated );
+    assertThat( cache.get( doc.getId() ).getObject() ).isEqualTo( new Foo( 2, "two" ) );
+    assertThat( cache.getStats().getMisses() ).isEqualTo( 0 );
+
+    cache.delete( updated.getId(), updated.getRev() );
+    assertThat( cache.getStats().getSize() ).isEqualTo( 0 );
+
+    try {
+      cache.get( doc.getId() );
+      fail( "Where is the Exception" );
+    } catch ( ActionFailedException e ) {
+      assertThat( e.getStatus() ).isEqualTo( 404 );
+    }
+  }
+
+  @Test
+  public void testWeight() throws Exception {
+    DocumentCache<Foo> weighted = new DocumentCache<>( db(), new Foo.Serializer(), 10, new Weigher<DocId, CouchDoc<Foo>>() {
+      @Override
+      public int weigh( DocId key, CouchDoc<Foo> value ) {
+        return 6;
+      }
+    } );
+
+    weighted.put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ) );
+    weighted.put( new CouchDoc<>( new DocId( "b" ), new Foo( 2, "two" ) ) );
+
+    assertThat( weighted.getStats().getSize() ).isEqualTo( 1 );
+    assertThat( weighted.getStats().getEvictions() ).isEqualTo( 1 );
+  }
+}
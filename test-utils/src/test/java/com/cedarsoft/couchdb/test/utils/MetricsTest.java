@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.couchdb.metrics.InMemoryCouchMetrics;
+import com.cedarsoft.couchdb.metrics.OperationStats;
+import com.cedarsoft.couchdb.metrics.OperationType;
+import com.cedarsoft.couchdb.test.utils.foo.Views;
+import com.cedarsoft.couchdb.update.DesignDocumentsProvider;
+import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.cedarsoft.serialization.jackson.StringSerializer;
+import com.cedarsoft.version.Version;
+import org.junit.*;
+
+import javax.annotation.Nullable;
+import java.net.URL;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class MetricsTest extends CouchTest {
+  private InMemoryCouchMetrics metrics;
+  private CouchServer server;
+  private CouchDatabase db;
+
+  @Override
+  protected DesignDocumentsProvider getDesignDocumentsProvider() {
+    @Nullable URL resource = getClass().getResource( "foo/doc1/aView.map.js" );
+    assertThat( resource ).isNotNull();
+    return new FileBasedDesignDocumentsProvider( resource, Version.valueOf( 1, 0, 0 ) );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    metrics = new InMemoryCouchMetrics();
+    server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().metrics( metrics ) );
+    db = server.getDatabase( db().getDbName() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testOperations() throws Exception {
+    db.put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+    db.put( new CouchDoc<>( new DocId( "b" ), new Foo( 2, "two" ) ), new Foo.Serializer() );
+    assertThat( db.get( new DocId( "a" ), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+
+    try {
+      db.get( new DocId( "missing" ), new Foo.Serializer() );
+      fail( "Where is the Exception" );
+    } catch ( ActionFailedException ignore ) {
+    }
+
+    ViewResponse<List<? extends Object>, String, Void> response = db.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty() );
+    assertThat( response.getRows() ).hasSize( 2 );
+
+    @Nullable OperationStats puts = metrics.getStats( OperationType.PUT );
+    assertThat( puts ).isNotNull();
+    assert puts != null;
+    assertThat( puts.getRequests() ).isEqualTo( 2 );
+    assertThat( puts.getErrors() ).isEqualTo( 0 );
+    assertThat( puts.getStatusCodes().get( 201 ) ).isEqualTo( 2 );
+    assertThat( puts.getBytesOut() ).isGreaterThan( 0 );
+    assertThat( puts.getBytesIn() ).isGreaterThan( 0 );
+
+    @Nullable OperationStats gets = metrics.getStats( OperationType.GET );
+    assertThat( gets ).isNotNull();
+    assert gets != null;
+    assertThat( gets.getRequests() ).isEqualTo( 2 );
+    assertThat( gets.getErrors() ).isEqualTo( 1 );
+    assertThat( gets.getStatusCodes().get( 404 ) ).isEqualTo( 1 );
+    assertThat( gets.getLatency().getCount() ).isEqualTo( 2 );
+    assertThat( gets.getLatency().getMax() ).isGreaterThan( 0 );
+
+    @Nullable OperationStats queries = metrics.getStats( Views.Doc1.A_VIEW );
+    assertThat( queries ).isNotNull();
+    assert queries != null;
+    assertThat( queries.getRequests() ).isEqualTo( 1 );
+    assertThat( queries.getBytesIn() ).isGreaterThan( 0 );
+
+    metrics.reset();
+    assertThat( metrics.getStats() ).isEmpty();
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.AsyncCouchDatabase;
+import com.cedarsoft.couchdb.ConcurrencyLimiter;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.RequestExecutors;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.junit.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Verifies a high fan-out of get requests - both with a fixed thread pool and with (limited) virtual threads.
+ *
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RequestExecutorsTest extends CouchTest {
+  private static final int DOCS = 100;
+  private static final int REQUESTS = 2000;
+  private static final int CONCURRENCY = 16;
+
+  private CouchServer pooledServer;
+  private ConcurrencyRecorder recorder;
+
+  @Before
+  public void setUp() throws Exception {
+    recorder = new ConcurrencyRecorder();
+    pooledServer = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().maxTotal( CONCURRENCY ).maxPerRoute( CONCURRENCY ).maxConcurrentRequests( CONCURRENCY ), recorder );
+
+    List<CouchDoc<Foo>> docs = new ArrayList<>();
+    for ( int i = 0; i < DOCS; i++ ) {
+      docs.add( new CouchDoc<>( new DocId( "doc" + i ), new Foo( i, "description" + i ) ) );
+    }
+    db().putAll( docs, new Foo.Serializer() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pooledServer.close();
+  }
+
+  @Test
+  public void testFixedThreadPool() throws Exception {
+    ExecutorService fixed = Executors.newFixedThreadPool( CONCURRENCY );
+    try {
+      run( new AsyncCouchDatabase( pooledServer.getDatabase( db().getDbName() ), fixed ), null );
+    } finally {
+      fixed.shutdown();
+    }
+
+    //Bounded by the number of threads
+    assertThat( recorder.getPeak() ).isEqualTo( CONCURRENCY );
+
+    assertThat( pooledServer.getPoolStats().getLeased() ).isEqualTo( 0 );
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    ExecutorService virtual = RequestExecutors.newVirtualThreadExecutor();
+    try {
+      AsyncCouchDatabase asyncDb = pooledServer.getAsyncDatabase( db().getDbName(), virtual );
+      ConcurrencyLimiter limiter = asyncDb.getLimiter();
+      assertThat( limiter ).isNotNull();
+      assertThat( limiter.getMaxConcurrent() ).isEqualTo( CONCURRENCY );
+
+      int maxWaiting = run( asyncDb, limiter );
+      assertThat( limiter.getInFlight() ).isEqualTo( 0 );
+
+      //The requests have been throttled: There are more threads than permits
+      assertThat( recorder.getPeak() ).isEqualTo( CONCURRENCY );
+      assertThat( maxWaiting ).isGreaterThan( 0 );
+    } finally {
+      virtual.shutdown();
+    }
+
+    assertThat( pooledServer.getPoolStats().getLeased() ).isEqualTo( 0 );
+  }
+
+  /**
+   * Fires all requests at once and verifies the results.
+   * If a limiter is given, the number of waiting callers is sampled until all requests have finished.
+   *
+   * @return the max number of waiting callers that has been sampled
+   */
+  private static int run( @Nonnull AsyncCouchDatabase asyncDb, @Nullable ConcurrencyLimiter limiter ) throws Exception {
+    List<ListenableFuture<CouchDoc<Foo>>> futures = new ArrayList<>();
+    for ( int i = 0; i < REQUESTS; i++ ) {
+      futures.add( asyncDb.getAsync( new DocId( "doc" + ( i % DOCS ) ), new Foo.Serializer() ) );
+    }
+
+    ListenableFuture<List<CouchDoc<Foo>>> all = Futures.allAsList( futures );
+    int maxWaiting = 0;
+    if ( limiter != null ) {
+      while ( !all.isDone() ) {
+        maxWaiting = Math.max( maxWaiting, limiter.getWaiting() );
+        Thread.sleep( 1 );
+      }
+    }
+
+    List<CouchDoc<Foo>> docs = all.get( 60, TimeUnit.SECONDS );
+    assertThat( docs ).hasSize( REQUESTS );
+    for ( int i = 0; i < REQUESTS; i++ ) {
+      CouchDoc<Foo> doc = docs.get( i );
+      assertThat( doc.getId() ).isEqualTo( new DocId( "doc" + ( i % DOCS ) ) );
+      assertThat( doc.getObject().getaValue() ).isEqualTo( i % DOCS );
+    }
+
+    return maxWaiting;
+  }
+
+  /**
+   * Records the peak number of requests that are executed concurrently
+   */
+  private static class ConcurrencyRecorder extends ClientFilter {
+    @Nonnull
+    private final AtomicInteger current = new AtomicInteger();
+    @Nonnull
+    private final AtomicInteger peak = new AtomicInteger();
+
+    @Override
+    public ClientResponse handle( ClientRequest cr ) throws ClientHandlerException {
+      int concurrent = current.incrementAndGet();
+      try {
+        int currentPeak;
+        do {
+          currentPeak = peak.get();
+        } while ( concurrent > currentPeak && !peak.compareAndSet( currentPeak, concurrent ) );
+
+        //Hold each request for a moment - therefore the requests overlap
+        Thread.sleep( 2 );
+        return getNext().handle( cr );
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new ClientHandlerException( e );
+      } finally {
+        current.decrementAndGet();
+      }
+    }
+
+    public int getPeak() {
+      return peak.get();
+    }
+  }
+}
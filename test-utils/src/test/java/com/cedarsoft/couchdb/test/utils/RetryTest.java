@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.metrics.InMemoryCouchMetrics;
+import com.cedarsoft.couchdb.metrics.OperationStats;
+import com.cedarsoft.couchdb.metrics.OperationType;
+import com.cedarsoft.couchdb.retry.RetryPolicy;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.junit.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class RetryTest extends CouchTest {
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicInteger attempts = new AtomicInteger();
+  private InMemoryCouchMetrics metrics;
+  private CouchServer server;
+  private CouchDatabase db;
+
+  @Before
+  public void setUp() throws Exception {
+    metrics = new InMemoryCouchMetrics();
+    RetryPolicy policy = new RetryPolicy().maxRetries( 3 ).backoff( 1, 10, TimeUnit.MILLISECONDS ).budget( 0.1, 3 );
+
+    server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().metrics( metrics ).retryPolicy( policy ), new ClientFilter() {
+      @Override
+      public ClientResponse handle( ClientRequest cr ) throws ClientHandlerException {
+        attempts.incrementAndGet();
+        if ( failures.getAndDecrement() > 0 ) {
+          throw new ClientHandlerException( new SocketException( "Connection reset" ) );
+        }
+        return getNext().handle( cr );
+      }
+    } );
+    db = server.getDatabase( db().getDbName() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testRetryGet() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+
+    failures.set( 2 );
+    assertThat( db.get( new DocId( "a" ), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 1, "one" ) );
+    assertThat( attempts.get() ).isEqualTo( 3 );
+
+    @Nullable OperationStats stats = metrics.getStats( OperationType.GET );
+    assertThat( stats ).isNotNull();
+    assert stats != null;
+    assertThat( stats.getRetries() ).isEqualTo( 2 );
+  }
+
+  @Test
+  public void testRetryUpdate() throws Exception {
+    CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) );
+    db.put( doc, new Foo.Serializer() );
+    assertThat( doc.getRev() ).isNotNull();
+
+    //Updates with a revision are retried
+    failures.set( 1 );
+    attempts.set( 0 );
+    CouchDoc<Foo> updated = new CouchDoc<>( doc.getId(), doc.getRev(), new Foo( 2, "two" ) );
+    db.put( updated, new Foo.Serializer() );
+    assertThat( attempts.get() ).isEqualTo( 2 );
+    assertThat( db().get( doc.getId(), new Foo.Serializer() ).getObject() ).isEqualTo( new Foo( 2, "two" ) );
+  }
+
+  @Test
+  public void testNoRetryForCreate() throws Exception {
+    failures.set( 1 );
+    try {
+      db.put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+      fail( "Where is the Exception" );
+    } catch ( ClientHandlerException e ) {
+      assertThat( e.getCause() ).isInstanceOf( IOException.class );
+    }
+    assertThat( attempts.get() ).isEqualTo( 1 );
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+
+    //The budget allows 3 retries (and earns 0.1 retries for each request)
+    failures.set( 100 );
+    for ( int i = 0; i < 3; i++ ) {
+      try {
+        db.get( new DocId( "a" ), new Foo.Serializer() );
+        fail( "Where is the Exception" );
+      } catch ( ClientHandlerException ignore ) {
+      }
+    }
+
+    //1 + 3 retries for the first request - the budget is exhausted afterwards
+    assertThat( attempts.get() ).isEqualTo( 6 );
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.Row;
+import com.cedarsoft.couchdb.io.RowIterator;
+import com.cedarsoft.couchdb.test.utils.foo.Views;
+import com.cedarsoft.couchdb.trace.RequestTrace;
+import com.cedarsoft.couchdb.trace.RequestTracer;
+import com.cedarsoft.couchdb.update.DesignDocumentsProvider;
+import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.cedarsoft.serialization.jackson.StringSerializer;
+import com.cedarsoft.version.Version;
+import org.junit.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class TracingTest extends CouchTest {
+  private final List<String> events = new ArrayList<>();
+  private final List<RequestTrace> completed = new ArrayList<>();
+  private CouchServer server;
+  private CouchDatabase db;
+
+  @Override
+  protected DesignDocumentsProvider getDesignDocumentsProvider() {
+    @Nullable URL resource = getClass().getResource( "foo/doc1/aView.map.js" );
+    assertThat( resource ).isNotNull();
+    return new FileBasedDesignDocumentsProvider( resource, Version.valueOf( 1, 0, 0 ) );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().tracer( new RequestTracer() {
+      @Override
+      public void requestStarted( @Nonnull RequestTrace trace ) {
+        events.add( "started " + trace.getMethod() );
+      }
+
+      @Override
+      public void firstByte( @Nonnull RequestTrace trace ) {
+        events.add( "firstByte " + trace.getStatus() );
+      }
+
+      @Override
+      public void requestCompleted( @Nonnull RequestTrace trace ) {
+        events.add( "completed" );
+        completed.add( trace );
+      }
+    } ) );
+    db = server.getDatabase( db().getDbName() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testPhases() throws Exception {
+    db.put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+    assertThat( events ).containsExactly( "started PUT", "firstByte 201", "completed" );
+
+    RequestTrace trace = completed.get( 0 );
+    assertThat( trace.getFailure() ).isNull();
+    assertThat( trace.getOptions() ).isNull();
+    assertThat( trace.getRowCount() ).isEqualTo( -1 );
+    assertThat( trace.getTimeToFirstByte() ).isGreaterThan( 0 );
+    assertThat( trace.getLatency() ).isGreaterThanOrEqualTo( trace.getTimeToFirstByte() );
+  }
+
+  @Test
+  public void testQuery() throws Exception {
+    db.put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+    db.put( new CouchDoc<>( new DocId( "b" ), new Foo( 2, "two" ) ), new Foo.Serializer() );
+    db.put( new CouchDoc<>( new DocId( "c" ), new Foo( 3, "three" ) ), new Foo.Serializer() );
+    completed.clear();
+
+    Options options = new Options().limit( 2 );
+    assertThat( db.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), options ).getRows() ).hasSize( 2 );
+
+    assertThat( completed ).hasSize( 1 );
+    assertThat( completed.get( 0 ).getOptions() ).isSameAs( options );
+    assertThat( completed.get( 0 ).getRowCount() ).isEqualTo( 2 );
+    assertThat( completed.get( 0 ).getUri().getPath() ).endsWith( "/_view/aView" );
+  }
+
+  @Test
+  public void testStreamedQuery() throws Exception {
+    db.put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+    db.put( new CouchDoc<>( new DocId( "b" ), new Foo( 2, "two" ) ), new Foo.Serializer() );
+    completed.clear();
+
+    try ( RowIterator<List<? extends Object>, String, Void> iterator = db.queryStream( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null ) ) {
+      Row<List<? extends Object>, String, Void> row = iterator.next();
+      assertThat( row ).isNotNull();
+    }
+
+    //Closed after the first row
+    assertThat( completed ).hasSize( 1 );
+    assertThat( completed.get( 0 ).getRowCount() ).isEqualTo( 1 );
+  }
+}
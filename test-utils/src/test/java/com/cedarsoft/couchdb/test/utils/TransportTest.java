@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.ConnectionPoolStats;
+import com.cedarsoft.couchdb.CouchDatabase;
+import com.cedarsoft.couchdb.CouchServer;
+import com.cedarsoft.couchdb.TransportConfig;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class TransportTest extends CouchTest {
+  private CouchServer pooledServer;
+
+  @Before
+  public void setUp() throws Exception {
+    pooledServer = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().maxTotal( 16 ).maxPerRoute( 8 ).readTimeout( 30, TimeUnit.SECONDS ) );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pooledServer.close();
+  }
+
+  @Test
+  public void testSharedPool() throws Exception {
+    final CouchDatabase db = pooledServer.getDatabase( db().getDbName() );
+    assertThat( db.getTransport() ).isSameAs( pooledServer.getTransport() );
+    assertThat( db.getURI() ).isEqualTo( db().getURI() );
+
+    ExecutorService executor = Executors.newFixedThreadPool( 16 );
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for ( int i = 0; i < 64; i++ ) {
+        final int index = i;
+        futures.add( executor.submit( new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            CouchDoc<Foo> doc = new CouchDoc<>( new DocId( "doc" + index ), new Foo( index, "description" ) );
+            db.put( doc, new Foo.Serializer() );
+            return db.get( doc.getId(), new Foo.Serializer() );
+          }
+        } ) );
+      }
+
+      for ( Future<?> future : futures ) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    ConnectionPoolStats stats = pooledServer.getPoolStats();
+    assertThat( stats.getMax() ).isEqualTo( 16 );
+    assertThat( stats.getLeased() ).isEqualTo( 0 );
+    assertThat( stats.getPending() ).isEqualTo( 0 );
+    assertThat( stats.getAvailable() ).isGreaterThan( 0 ).isLessThanOrEqualTo( 8 );
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    CouchServer server = CouchServer.create( getCouchDbRule().getCurrentServerURI(), new TransportConfig().idleTimeout( 1, TimeUnit.MILLISECONDS ).evictionInterval( 0, TimeUnit.MILLISECONDS ) );
+    try {
+      CouchDatabase db = server.getDatabase( db().getDbName() );
+      db.put( new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "asdf" ) ), new Foo.Serializer() );
+      assertThat( server.getPoolStats().getAvailable() ).isEqualTo( 1 );
+
+      Thread.sleep( 10 );
+      server.getTransport().evictConnections();
+      assertThat( server.getPoolStats().getAvailable() ).isEqualTo( 0 );
+    } finally {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testOwnedTransport() throws Exception {
+    CouchDatabase db = CouchDatabase.create( db().getURI(), new TransportConfig().maxTotal( 1 ) );
+    assertThat( db.getTransport() ).isNotNull();
+    try {
+      db.put( new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "asdf" ) ), new Foo.Serializer() );
+      assertThat( db.getTransport().getStats().getAvailable() ).isEqualTo( 1 );
+    } finally {
+      db.close();
+    }
+
+    //The pool has been shut down
+    try {
+      db.get( new DocId( "daId" ), new Foo.Serializer() );
+      fail( "Where is the Exception" );
+    } catch ( RuntimeException ignore ) {
+    }
+  }
+
+  @Test
+  public void testSharedTransportNotClosed() throws Exception {
+    CouchDatabase db = pooledServer.getDatabase( db().getDbName() );
+    db.put( new CouchDoc<>( new DocId( "daId" ), new Foo( 1, "asdf" ) ), new Foo.Serializer() );
+    db.close();
+
+    //Still usable
+    assertThat( pooledServer.getDatabase( db().getDbName() ).get( new DocId( "daId" ), new Foo.Serializer() ).getObject().getDescription() ).isEqualTo( "asdf" );
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.cache.ViewCache;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Key;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.ViewResponse;
+import com.cedarsoft.couchdb.test.utils.foo.Views;
+import com.cedarsoft.couchdb.update.DesignDocumentsProvider;
+import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.cedarsoft.serialization.jackson.StringSerializer;
+import com.cedarsoft.version.Version;
+import org.junit.*;
+
+import javax.annotation.Nullable;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ViewCacheTest extends CouchTest {
+  private ViewCache cache;
+
+  @Override
+  protected DesignDocumentsProvider getDesignDocumentsProvider() {
+    @Nullable URL resource = getClass().getResource( "foo/doc1/aView.map.js" );
+    assertThat( resource ).isNotNull();
+    return new FileBasedDesignDocumentsProvider( resource, Version.valueOf( 1, 0, 0 ) );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new ViewCache( db(), 1024 * 1024 );
+  }
+
+  @Test
+  public void testRevalidation() throws Exception {
+    db().put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+
+    ViewResponse<List<? extends Object>, String, Void> response = cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty() );
+    assertThat( response.getRows() ).hasSize( 1 );
+    assertThat( cache.getStats().getMisses() ).isEqualTo( 1 );
+
+    //Not modified
+    response = cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty() );
+    assertThat( response.getRows() ).hasSize( 1 );
+    assertThat( cache.getStats().getHits() ).isEqualTo( 1 );
+    assertThat( cache.getStats().getRevalidations() ).isEqualTo( 1 );
+
+    //Updating the index changes the ETag
+    db().put( new CouchDoc<>( new DocId( "b" ), new Foo( 2, "two" ) ), new Foo.Serializer() );
+    response = cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty() );
+    assertThat( response.getRows() ).hasSize( 2 );
+    assertThat( cache.getStats().getMisses() ).isEqualTo( 2 );
+    assertThat( cache.getStats().getRevalidations() ).isEqualTo( 2 );
+  }
+
+  @Test
+  public void testParamOrder() throws Exception {
+    cache.revalidateAfter( 1, TimeUnit.HOURS );
+    db().put( new CouchDoc<>( new DocId( "a" ), new Foo( 1, "one" ) ), new Foo.Serializer() );
+
+    cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty().limit( 5 ).startKey( Key.array( 0, "" ) ) );
+    cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty().startKey( Key.array( 0, "" ) ).limit( 5 ) );
+
+    assertThat( cache.getStats().getMisses() ).isEqualTo( 1 );
+    assertThat( cache.getStats().getHits() ).isEqualTo( 1 );
+    assertThat( cache.getStats().getRevalidations() ).isEqualTo( 0 );
+
+    //Other options
+    cache.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty().limit( 6 ) );
+    assertThat( cache.getStats().getMisses() ).isEqualTo( 2 );
+    assertThat( cache.getStats().getSize() ).isEqualTo( 2 );
+
+    cache.invalidate( Views.Doc1.A_VIEW );
+    assertThat( cache.getStats().getSize() ).isEqualTo( 0 );
+  }
+
+  @Test
+  public void testWeight() throws Exception {
+    ViewCache small = new ViewCache( db(), 10 );
+    small.query( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty() );
+    assertThat( small.getStats().getSize() ).isEqualTo( 0 );
+  }
+}
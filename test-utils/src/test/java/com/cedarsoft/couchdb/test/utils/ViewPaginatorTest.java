@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.ViewPaginator;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.Row;
+import com.cedarsoft.couchdb.core.ViewPage;
+import com.cedarsoft.couchdb.test.utils.foo.Views;
+import com.cedarsoft.couchdb.update.DesignDocumentsProvider;
+import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.cedarsoft.serialization.jackson.StringSerializer;
+import com.cedarsoft.version.Version;
+import org.junit.*;
+
+import javax.annotation.Nullable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ViewPaginatorTest extends CouchTest {
+  @Override
+  protected DesignDocumentsProvider getDesignDocumentsProvider() {
+    @Nullable URL resource = getClass().getResource( "foo/doc1/aView.map.js" );
+    assertThat( resource ).isNotNull();
+    return new FileBasedDesignDocumentsProvider( resource, Version.valueOf( 1, 0, 0 ) );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    //Several docs share the same key
+    List<CouchDoc<Foo>> docs = new ArrayList<>();
+    for ( int i = 0; i < 22; i++ ) {
+      docs.add( new CouchDoc<>( new DocId( "foo" + i ), new Foo( i % 5, "desc" ) ) );
+    }
+    db().putAll( docs, new Foo.Serializer() );
+  }
+
+  @Test
+  public void testPages() throws Exception {
+    ViewPaginator<List<? extends Object>, String, Void> paginator = db().paginate( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null, 4 );
+
+    Set<DocId> ids = new HashSet<>();
+    List<ViewPage<List<? extends Object>, String, Void>> pages = new ArrayList<>();
+    while ( paginator.hasNext() ) {
+      ViewPage<List<? extends Object>, String, Void> page = paginator.next();
+      pages.add( page );
+      for ( Row<List<? extends Object>, String, Void> row : page.getRows() ) {
+        assertThat( ids.add( row.getId() ) ).isTrue();
+      }
+    }
+
+    assertThat( ids ).hasSize( 22 );
+    assertThat( pages ).hasSize( 6 );
+    assertThat( pages.get( 0 ).getRows() ).hasSize( 4 );
+    assertThat( pages.get( 0 ).hasNext() ).isTrue();
+    assertThat( pages.get( 5 ).getRows() ).hasSize( 2 );
+    assertThat( pages.get( 5 ).hasNext() ).isFalse();
+    assertThat( pages.get( 5 ).getIndex() ).isEqualTo( 5 );
+  }
+
+  @Test
+  public void testExactPages() throws Exception {
+    ViewPaginator<List<? extends Object>, String, Foo> paginator = db().paginate( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), new Foo.Serializer(), Options.empty(), 11 );
+
+    ViewPage<List<? extends Object>, String, Foo> first = paginator.next();
+    assertThat( first.getRows() ).hasSize( 11 );
+    assertThat( first.getRows().get( 0 ).getDoc() ).isNotNull();
+
+    ViewPage<List<? extends Object>, String, Foo> second = paginator.next();
+    assertThat( second.getRows() ).hasSize( 11 );
+    assertThat( second.hasNext() ).isFalse();
+    assertThat( paginator.hasNext() ).isFalse();
+  }
+
+  @Test
+  public void testStartAt() throws Exception {
+    ViewPage<List<? extends Object>, String, Void> first = db().paginate( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null, 10 ).next();
+    assertThat( first.getNextStartKey() ).isNotNull();
+
+    ViewPaginator<List<? extends Object>, String, Void> continued = db().paginate( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null, 10 );
+    continued.startAt( first.getNextStartKey(), first.getNextStartKeyDocId() );
+
+    ViewPage<List<? extends Object>, String, Void> second = continued.next();
+    assertThat( second.getRows() ).hasSize( 10 );
+    assertThat( second.getRows().get( 0 ).getId() ).isNotEqualTo( first.getRows().get( 9 ).getId() );
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    try {
+      db().paginate( Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), Options.empty().skip( 10 ), 10 );
+      fail( "Where is the Exception" );
+    } catch ( IllegalArgumentException e ) {
+      assertThat( e ).hasMessage( "skip is not supported" );
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) cedarsoft GmbH.
+ *
+ * Licensed under the GNU General Public License version 3 (the "License")
+ * with Classpath Exception; you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *         http://www.cedarsoft.org/gpl3ce
+ *         (GPL 3 with Classpath Exception)
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation. cedarsoft GmbH designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by cedarsoft GmbH in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 3 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 3 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact cedarsoft GmbH, 72810 Gomaringen, Germany,
+ * or visit www.cedarsoft.com if you need additional information or
+ * have any questions.
+ */
+
+package com.cedarsoft.couchdb.test.utils;
+
+import com.cedarsoft.couchdb.RowConsumer;
+import com.cedarsoft.couchdb.ViewScanner;
+import com.cedarsoft.couchdb.core.ActionFailedException;
+import com.cedarsoft.couchdb.core.CouchDoc;
+import com.cedarsoft.couchdb.core.DocId;
+import com.cedarsoft.couchdb.core.Key;
+import com.cedarsoft.couchdb.core.Options;
+import com.cedarsoft.couchdb.core.Row;
+import com.cedarsoft.couchdb.test.utils.foo.Views;
+import com.cedarsoft.couchdb.update.DesignDocumentsProvider;
+import com.cedarsoft.serialization.jackson.ListSerializer;
+import com.cedarsoft.serialization.jackson.StringSerializer;
+import com.cedarsoft.version.Version;
+import org.junit.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * @author Johannes Schneider (<a href="mailto:js@cedarsoft.com">js@cedarsoft.com</a>)
+ */
+public class ViewScannerTest extends CouchTest {
+  private ExecutorService executor;
+  private ViewScanner<List<? extends Object>, String> scanner;
+
+  @Override
+  protected DesignDocumentsProvider getDesignDocumentsProvider() {
+    @Nullable URL resource = getClass().getResource( "foo/doc1/aView.map.js" );
+    assertThat( resource ).isNotNull();
+    return new FileBasedDesignDocumentsProvider( resource, Version.valueOf( 1, 0, 0 ) );
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool( 4 );
+    scanner = new ViewScanner<List<? extends Object>, String>( db(), Views.Doc1.A_VIEW, new ListSerializer(), new StringSerializer(), null, executor );
+
+    List<CouchDoc<Foo>> docs = new ArrayList<>();
+    for ( int i = 0; i < 100; i++ ) {
+      docs.add( new CouchDoc<>( new DocId( "foo" + i ), new Foo( i, "desc" + i ) ) );
+    }
+    db().putAll( docs, new Foo.Serializer() );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRanges() throws Exception {
+    List<Options> ranges = scanner.createRanges( Collections.singletonList( Key.array( 50 ) ) );
+    assertThat( ranges ).hasSize( 2 );
+    assertThat( ranges.get( 0 ).get( Options.STARTKEY ) ).isNull();
+    assertThat( ranges.get( 0 ).get( Options.ENDKEY ) ).isEqualTo( "[50]" );
+    assertThat( ranges.get( 0 ).get( Options.INCLUSIVE_END ) ).isEqualTo( "false" );
+    assertThat( ranges.get( 1 ).get( Options.STARTKEY ) ).isEqualTo( "[50]" );
+    assertThat( ranges.get( 1 ).get( Options.ENDKEY ) ).isNull();
+  }
+
+  @Test
+  public void testOrdered() throws Exception {
+    List<Key> splitPoints = scanner.sampleSplitPoints( 4 );
+    assertThat( splitPoints ).hasSize( 3 );
+
+    final List<Object> values = new ArrayList<>();
+    long count = scanner.scanOrdered( splitPoints, new RowConsumer<List<? extends Object>, String>() {
+      @Override
+      public void consume( @Nonnull Row<List<? extends Object>, String, Void> row ) {
+        values.add( row.getKey().get( 0 ) );
+      }
+    } );
+
+    assertThat( count ).isEqualTo( 100 );
+    assertThat( values ).hasSize( 100 );
+    for ( int i = 0; i < 100; i++ ) {
+      assertThat( values.get( i ) ).isEqualTo( i );
+    }
+  }
+
+  @Test
+  public void testUnordered() throws Exception {
+    final List<Object> values = Collections.synchronizedList( new ArrayList<>() );
+    long count = scanner.scanUnordered( Collections.singletonList( Key.array( 33 ) ), new RowConsumer<List<? extends Object>, String>() {
+      @Override
+      public void consume( @Nonnull Row<List<? extends Object>, String, Void> row ) {
+        values.add( row.getKey().get( 0 ) );
+      }
+    } );
+
+    assertThat( count ).isEqualTo( 100 );
+    assertThat( values ).hasSize( 100 ).doesNotHaveDuplicates();
+  }
+
+  @Test
+  public void testConsumerFails() throws Exception {
+    try {
+      scanner.scanOrdered( Collections.singletonList( Key.array( 50 ) ), new RowConsumer<List<? extends Object>, String>() {
+        @Override
+        public void consume( @Nonnull Row<List<? extends Object>, String, Void> row ) throws IOException {
+          throw new IOException( "failed" );
+        }
+      } );
+      fail( "Where is the Exception" );
+    } catch ( IOException e ) {
+      assertThat( e ).hasMessage( "failed" );
+    }
+  }
+
+  /**
+   * Workers that are blocked on a full queue must finish when the consumer fails
+   */
+  @Test
+  public void testConsumerFailsReleasesWorkers() throws Exception {
+    scanner.queueSize( 1 );
+    try {
+      scanner.scanOrdered( Arrays.asList( Key.array( 25 ), Key.array( 50 ), Key.array( 75 ) ), new RowConsumer<List<? extends Object>, String>() {
+        @Override
+        public void consume( @Nonnull Row<List<? extends Object>, String, Void> row ) throws IOException {
+          throw new IOException( "failed" );
+        }
+      } );
+      fail( "Where is the Exception" );
+    } catch ( IOException e ) {
+      assertThat( e ).hasMessage( "failed" );
+    }
+
+    //All threads of the executor must be available again
+    final CountDownLatch latch = new CountDownLatch( 4 );
+    List<Future<Boolean>> futures = new ArrayList<>();
+    for ( int i = 0; i < 4; i++ ) {
+      futures.add( executor.submit( new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          latch.countDown();
+          return latch.await( 10, TimeUnit.SECONDS );
+        }
+      } ) );
+    }
+    for ( Future<Boolean> future : futures ) {
+      assertThat( future.get( 20, TimeUnit.SECONDS ) ).isTrue();
+    }
+  }
+
+  @Test
+  public void testRangeFails() throws Exception {
+    //The split points are not sorted: The second range is invalid
+    try {
+      scanner.scanOrdered( Arrays.asList( Key.array( 50 ), Key.array( 10 ) ), new RowConsumer<List<? extends Object>, String>() {
+        @Override
+        public void consume( @Nonnull Row<List<? extends Object>, String, Void> row ) {
+        }
+      } );
+      fail( "Where is the Exception" );
+    } catch ( ActionFailedException e ) {
+      assertThat( e.getStatus() ).isEqualTo( 400 );
+    }
+  }
+}